@@ -18,28 +18,51 @@
 
 package org.wildfly.deployer;
 
+import java.util.concurrent.CompletionStage;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 final class Action<T, U> implements Runnable {
     private final BiConsumer<T, U> consumer;
+    private final BiFunction<T, U, ? extends CompletionStage<?>> function;
     private final T parameter1;
     private final U parameter2;
+    private final int cost;
 
-    Action(final BiConsumer<T, U> consumer, final T parameter1, final U parameter2) {
+    Action(final BiConsumer<T, U> consumer, final T parameter1, final U parameter2, final int cost) {
         this.consumer = consumer;
+        this.function = null;
         this.parameter1 = parameter1;
         this.parameter2 = parameter2;
+        this.cost = cost;
+    }
+
+    Action(final BiFunction<T, U, ? extends CompletionStage<?>> function, final T parameter1, final U parameter2, final int cost) {
+        this.consumer = null;
+        this.function = function;
+        this.parameter1 = parameter1;
+        this.parameter2 = parameter2;
+        this.cost = cost;
     }
 
     public void run() {
-        try {
-            consumer.accept(parameter1, parameter2);
-        } catch (Throwable t) {
-            Messages.log.actionFailed(t);
-        }
+        consumer.accept(parameter1, parameter2);
+    }
+
+    /**
+     * Start an asynchronous action.
+     *
+     * @return the stage which completes when the action does, or {@code null} if the action completed synchronously
+     */
+    CompletionStage<?> start() {
+        return function.apply(parameter1, parameter2);
+    }
+
+    boolean isAsync() {
+        return function != null;
     }
 
     BiConsumer<T, U> getConsumer() {
@@ -54,5 +77,9 @@ final class Action<T, U> implements Runnable {
         return parameter2;
     }
 
+    int getCost() {
+        return cost;
+    }
+
     static final Action<?, ?>[] NO_ACTIONS = new Action[0];
 }
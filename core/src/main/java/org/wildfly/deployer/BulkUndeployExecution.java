@@ -19,9 +19,10 @@
 package org.wildfly.deployer;
 
 /**
- * The result of an undeploy operation.
+ * An undeploy execution which may span several deployments.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
-public interface UndeployResult extends Result {
+public interface BulkUndeployExecution extends UndeployExecution {
+    BulkUndeployResult getUndeployResult() throws IllegalStateException;
 }
@@ -18,19 +18,20 @@
 
 package org.wildfly.deployer;
 
-import java.util.concurrent.Executor;
+import java.util.List;
 
 /**
- * The final result of any completed deployment operation.
+ * The result of an undeploy operation which may span several deployments.  The duration is the time taken to
+ * undeploy all of the deployments.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
-public interface DeploymentResult extends Result {
+public interface BulkUndeployResult extends UndeployResult {
     /**
-     * Commence undeployment.
+     * Get the results for each of the undeployed deployments, in the order that the deployments were given.  The
+     * duration of each result is the time from the start of the bulk undeploy until that deployment was complete.
      *
-     * @param executor the executor to use for the undeploy operation (must not be {@code null})
-     * @throws IllegalStateException if the deployment was already undeployed
+     * @return the per-deployment results (not {@code null})
      */
-    UndeployExecution undeploy(Executor executor) throws IllegalStateException;
+    List<UndeployResult> getDeploymentResults();
 }
@@ -0,0 +1,184 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.CLASS;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Declare a deployer of one or more {@linkplain DeployerChainDefinition precompiled chains}.  The annotated type must
+ * be a public, non-abstract {@link Deployer} class with a public no-argument constructor, which is instantiated once
+ * each time a chain is built.  Precompiled deployers cannot be {@linkplain DeployerBuilder#cacheable(Fingerprint) cacheable}
+ * or {@linkplain DeployerBuilder#activeWhen(String, java.util.function.Predicate) conditional}, since fingerprints and
+ * conditions are instances which cannot be declared in an annotation.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+@Documented
+@Retention(CLASS)
+@Target(TYPE)
+public @interface ChainDeployer {
+
+    /**
+     * The chains that this deployer belongs to; each must be annotated with {@link DeployerChainDefinition}.
+     *
+     * @return the chain definition types
+     */
+    Class<?>[] chain();
+
+    /**
+     * The identity of this deployer within its chains.  The default is the binary name of the annotated type.
+     *
+     * @return the identity, or an empty string for the default
+     * @see DeployerBuilder#identifiedBy(String)
+     */
+    String identity() default "";
+
+    /**
+     * The resources this deployer produces.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#produces(String)
+     */
+    String[] produces() default {};
+
+    /**
+     * The multiple resources this deployer contributes to.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#contributesTo(String)
+     */
+    String[] contributesTo() default {};
+
+    /**
+     * The resources this deployer consumes.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#consumes(String)
+     */
+    String[] consumes() default {};
+
+    /**
+     * The resources this deployer optionally consumes.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#consumesOptionally(String)
+     */
+    String[] consumesOptionally() default {};
+
+    /**
+     * The multiple resources this deployer consumes as streams.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#consumesStream(String)
+     */
+    String[] consumesStream() default {};
+
+    /**
+     * The resources this deployer transforms.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#transforms(String)
+     */
+    String[] transforms() default {};
+
+    /**
+     * The resources this deployer destroys.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#destroys(String)
+     */
+    String[] destroys() default {};
+
+    /**
+     * The resources this deployer destroys, which must be produced in the chain.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#destroysMandatory(String)
+     */
+    String[] destroysMandatory() default {};
+
+    /**
+     * The resources before whose production this deployer runs.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#beforeProduce(String)
+     */
+    String[] beforeProduce() default {};
+
+    /**
+     * The resources before whose consumption this deployer runs.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#beforeConsume(String)
+     */
+    String[] beforeConsume() default {};
+
+    /**
+     * The resources before whose consumption this deployer runs, which must have consumers.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#beforeConsumeRequired(String)
+     */
+    String[] beforeConsumeRequired() default {};
+
+    /**
+     * The resources after whose production this deployer runs.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#afterProduce(String)
+     */
+    String[] afterProduce() default {};
+
+    /**
+     * The resources after whose production this deployer runs, which must have producers.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#afterProduceRequired(String)
+     */
+    String[] afterProduceRequired() default {};
+
+    /**
+     * The resources after whose consumption this deployer runs.
+     *
+     * @return the resource names
+     * @see DeployerBuilder#afterConsume(String)
+     */
+    String[] afterConsume() default {};
+
+    /**
+     * The claims of this deployer.
+     *
+     * @return the claim names
+     * @see DeployerBuilder#claims(String)
+     */
+    String[] claims() default {};
+
+    /**
+     * Whether this deployer is side-effect free.
+     *
+     * @return {@code true} if the deployer is side-effect free
+     * @see DeployerBuilder#sideEffectFree()
+     */
+    boolean sideEffectFree() default false;
+}
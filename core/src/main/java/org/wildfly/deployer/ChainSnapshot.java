@@ -0,0 +1,313 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The binary snapshot of a built deployer chain.  The snapshot holds the complete deployer graph and resource
+ * table, keyed by a hash of the declarations it was built from; deployers are stored by their
+ * {@linkplain DeployerBuilder#identifiedBy(String) identity} and bound to their instances when the snapshot is read.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class ChainSnapshot {
+    static final int VERSION = 1;
+
+    static final int HASH_SIZE = 32;
+
+    private static final int MAGIC = 0x57464443;
+
+    private ChainSnapshot() {
+    }
+
+    /**
+     * Write the snapshot of a chain.  The file is replaced atomically.
+     *
+     * @param path the snapshot file
+     * @param hash the declaration hash
+     * @param chain the chain
+     * @throws IOException if writing failed
+     */
+    static void write(final Path path, final byte[] hash, final DeployerChainImpl chain) throws IOException {
+        final Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tempPath))) {
+            write(os, hash, chain);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Write the snapshot of a chain to a stream.  The stream is not closed.
+     *
+     * @param stream the output stream
+     * @param hash the declaration hash
+     * @param chain the chain
+     * @throws IOException if writing failed
+     */
+    static void write(final OutputStream stream, final byte[] hash, final DeployerChainImpl chain) throws IOException {
+        assert hash.length == HASH_SIZE;
+        final DataOutputStream os = new DataOutputStream(stream);
+        os.writeInt(MAGIC);
+        os.writeInt(VERSION);
+        os.write(hash);
+        final int resourceCount = chain.getResourceCount();
+        final Map<String, Integer> streamedResources = chain.getStreamedResources();
+        final int[] readerCounts = chain.getReaderCounts();
+        os.writeInt(resourceCount);
+        for (int id = 0; id < resourceCount; id ++) {
+            final String name = chain.getResourceName(id);
+            os.writeUTF(name);
+            os.writeInt(readerCounts[id]);
+            os.writeBoolean(chain.isDiscarded(name));
+            final Integer contributors = streamedResources.get(name);
+            os.writeInt(contributors == null ? -1 : contributors.intValue());
+        }
+        final Map<String, Multiplicity> initialResources = chain.getInitialResources();
+        os.writeInt(initialResources.size());
+        for (Map.Entry<String, Multiplicity> entry : initialResources.entrySet()) {
+            os.writeInt(chain.getResourceId(entry.getKey()));
+            os.writeByte(entry.getValue().ordinal());
+        }
+        final int finalResourceCount = chain.getFinalResourceCount();
+        os.writeInt(finalResourceCount);
+        for (int i = 0; i < finalResourceCount; i ++) {
+            os.writeInt(chain.getResourceId(chain.getFinalResourceName(i)));
+            os.writeBoolean(chain.isFinalResourceMultiple(i));
+        }
+        final int deployerCount = chain.getDeployerCount();
+        os.writeInt(deployerCount);
+        for (int id = 0; id < deployerCount; id ++) {
+            final DeployerInfo deployerInfo = chain.getDeployer(id);
+            os.writeUTF(deployerInfo.getIdentity());
+            writeResources(os, chain, deployerInfo.getConsumed());
+            writeResources(os, chain, deployerInfo.getProduced());
+            writeResourceIds(os, chain, deployerInfo.getStreamed());
+            writeResourceIds(os, chain, deployerInfo.getStreamsFed());
+            final Set<String> claims = deployerInfo.getClaims();
+            os.writeInt(claims.size());
+            for (String claim : claims) {
+                os.writeUTF(claim);
+            }
+            final Set<DeployerInfo> dependencies = deployerInfo.getDependencies();
+            os.writeInt(dependencies.size());
+            for (DeployerInfo dependency : dependencies) {
+                os.writeInt(dependency.getId());
+            }
+            final int[] releases = deployerInfo.getReleases();
+            os.writeInt(releases.length);
+            for (int release : releases) {
+                os.writeInt(release);
+            }
+        }
+        os.flush();
+    }
+
+    private static void writeResources(final DataOutputStream os, final DeployerChainImpl chain, final Map<String, Multiplicity> resources) throws IOException {
+        os.writeInt(resources.size());
+        for (Map.Entry<String, Multiplicity> entry : resources.entrySet()) {
+            os.writeInt(chain.getResourceId(entry.getKey()));
+            os.writeByte(entry.getValue().ordinal());
+        }
+    }
+
+    private static void writeResourceIds(final DataOutputStream os, final DeployerChainImpl chain, final Set<String> names) throws IOException {
+        os.writeInt(names.size());
+        for (String name : names) {
+            os.writeInt(chain.getResourceId(name));
+        }
+    }
+
+    /**
+     * Read the snapshot of a chain.
+     *
+     * @param path the snapshot file
+     * @param hash the expected declaration hash
+     * @param buildersByIdentity the deployer builders of the current declarations, by identity
+     * @param resultCache the result cache of the chain, or {@code null} for none
+     * @return the chain, or {@code null} if the file does not exist or was written for other declarations
+     * @throws IOException if reading failed
+     */
+    static DeployerChainImpl read(final Path path, final byte[] hash, final Map<String, DeployerBuilderImpl> buildersByIdentity, final ResultCache resultCache) throws IOException {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+            return read(is, hash, identity -> {
+                final DeployerBuilderImpl builder = buildersByIdentity.get(identity);
+                return builder == null ? null : builder.getDeployer();
+            }, identity -> buildersByIdentity.get(identity).getFingerprint(), resultCache);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the snapshot of a chain from a stream.  The stream is not closed.
+     *
+     * @param stream the input stream
+     * @param hash the expected declaration hash, or {@code null} to accept any
+     * @param deployers the function which returns the deployer instance for each identity, or {@code null} if unknown
+     * @param fingerprints the function which returns the fingerprint for each identity
+     * @param resultCache the result cache of the chain, or {@code null} for none
+     * @return the chain, or {@code null} if the snapshot is not valid, was written for other declarations, or refers
+     *      to an unknown deployer
+     * @throws IOException if reading failed
+     */
+    static DeployerChainImpl read(final InputStream stream, final byte[] hash, final Function<String, Deployer> deployers, final Function<String, Fingerprint> fingerprints, final ResultCache resultCache) throws IOException {
+        final DataInputStream is = new DataInputStream(stream);
+        if (is.readInt() != MAGIC || is.readInt() != VERSION) {
+            return null;
+        }
+        final byte[] fileHash = new byte[HASH_SIZE];
+        is.readFully(fileHash);
+        if (hash != null && ! Arrays.equals(hash, fileHash)) {
+            return null;
+        }
+        final int resourceCount = is.readInt();
+        final String[] resourceNames = new String[resourceCount];
+        final Map<String, Integer> resourceIds = new HashMap<>(resourceCount);
+        final int[] readerCounts = new int[resourceCount];
+        final Set<String> discardedResources = new HashSet<>();
+        Map<String, Integer> streamedResources = emptyMap();
+        for (int id = 0; id < resourceCount; id ++) {
+            final String name = is.readUTF();
+            resourceNames[id] = name;
+            resourceIds.put(name, Integer.valueOf(id));
+            readerCounts[id] = is.readInt();
+            if (is.readBoolean()) {
+                discardedResources.add(name);
+            }
+            final int contributors = is.readInt();
+            if (contributors != -1) {
+                if (streamedResources.isEmpty()) {
+                    streamedResources = new HashMap<>();
+                }
+                streamedResources.put(name, Integer.valueOf(contributors));
+            }
+        }
+        final Multiplicity[] multiplicities = Multiplicity.values();
+        final int initialResourceCount = is.readInt();
+        final Map<String, Multiplicity> initialResources = new HashMap<>(initialResourceCount);
+        for (int i = 0; i < initialResourceCount; i ++) {
+            initialResources.put(resourceNames[is.readInt()], multiplicities[is.readByte()]);
+        }
+        final int finalResourceCount = is.readInt();
+        final String[] finalResourceNames = new String[finalResourceCount];
+        final boolean[] finalResourceMultiple = new boolean[finalResourceCount];
+        for (int i = 0; i < finalResourceCount; i ++) {
+            finalResourceNames[i] = resourceNames[is.readInt()];
+            finalResourceMultiple[i] = is.readBoolean();
+        }
+        final int deployerCount = is.readInt();
+        final DeployerInfo[] deployerInfos = new DeployerInfo[deployerCount];
+        final int[][] dependencyIds = new int[deployerCount][];
+        for (int id = 0; id < deployerCount; id ++) {
+            final String identity = is.readUTF();
+            final Deployer deployer = deployers.apply(identity);
+            if (deployer == null) {
+                return null;
+            }
+            final Map<String, Multiplicity> consumed = readResources(is, resourceNames, multiplicities);
+            final Map<String, Multiplicity> produced = readResources(is, resourceNames, multiplicities);
+            final Set<String> streamed = readResourceNames(is, resourceNames);
+            final Set<String> streamsFed = readResourceNames(is, resourceNames);
+            final int claimCount = is.readInt();
+            Set<String> claims = emptySet();
+            for (int i = 0; i < claimCount; i ++) {
+                if (claims.isEmpty()) {
+                    claims = new HashSet<>();
+                }
+                claims.add(is.readUTF());
+            }
+            final int[] dependencies = new int[is.readInt()];
+            for (int i = 0; i < dependencies.length; i ++) {
+                dependencies[i] = is.readInt();
+            }
+            dependencyIds[id] = dependencies;
+            final DeployerInfo deployerInfo = new DeployerInfo(deployer, consumed, produced, streamed, streamsFed, claims, fingerprints.apply(identity), identity, new HashSet<>(), new HashSet<>());
+            deployerInfo.setId(id);
+            final int releaseCount = is.readInt();
+            for (int i = 0; i < releaseCount; i ++) {
+                deployerInfo.addRelease(is.readInt());
+            }
+            deployerInfos[id] = deployerInfo;
+        }
+        final Set<DeployerInfo> initialDeployers = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<DeployerInfo> finalDeployers = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int id = 0; id < deployerCount; id ++) {
+            final DeployerInfo deployerInfo = deployerInfos[id];
+            for (int dependencyId : dependencyIds[id]) {
+                deployerInfo.getDependencies().add(deployerInfos[dependencyId]);
+                deployerInfos[dependencyId].getDependents().add(deployerInfo);
+            }
+        }
+        for (DeployerInfo deployerInfo : deployerInfos) {
+            if (deployerInfo.getDependents().isEmpty()) {
+                finalDeployers.add(deployerInfo);
+            }
+            if (deployerInfo.getDependencies().isEmpty()) {
+                initialDeployers.add(deployerInfo);
+            }
+        }
+        return new DeployerChainImpl(initialResources, finalResourceNames, finalResourceMultiple, streamedResources, resourceNames, resourceIds, readerCounts, discardedResources, deployerInfos, initialDeployers, finalDeployers, resultCache);
+    }
+
+    private static Map<String, Multiplicity> readResources(final DataInputStream is, final String[] resourceNames, final Multiplicity[] multiplicities) throws IOException {
+        final int count = is.readInt();
+        if (count == 0) {
+            return emptyMap();
+        }
+        final Map<String, Multiplicity> resources = new HashMap<>(count);
+        for (int i = 0; i < count; i ++) {
+            resources.put(resourceNames[is.readInt()], multiplicities[is.readByte()]);
+        }
+        return resources;
+    }
+
+    private static Set<String> readResourceNames(final DataInputStream is, final String[] resourceNames) throws IOException {
+        final int count = is.readInt();
+        if (count == 0) {
+            return emptySet();
+        }
+        final Set<String> names = new HashSet<>(count);
+        for (int i = 0; i < count; i ++) {
+            names.add(resourceNames[is.readInt()]);
+        }
+        return names;
+    }
+}
@@ -22,11 +22,11 @@ package org.wildfly.deployer;
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 interface Dependent {
-    void dependencyDone(Dependency dependency);
+    void dependencyDone();
 
-    void dependencyFailed(Dependency dependency);
+    void dependencyFailed();
 
-    void dependencyCancelled(Dependency dependency);
+    void dependencyCancelled();
 
     void cancelRequested();
 }
@@ -18,6 +18,8 @@
 
 package org.wildfly.deployer;
 
+import java.util.function.Predicate;
+
 /**
  * A builder for deployer chains.
  *
@@ -115,6 +117,19 @@ public interface DeployerBuilder {
      */
     DeployerBuilder consumesOptionally(String name);
 
+    /**
+     * This deployer consumes the values contributed to the given resource as they are produced.  Unlike
+     * {@link #consumes(String)}, the deployer does not wait for the contributors of the resource to complete; instead
+     * it may start as soon as its other dependencies are satisfied and
+     * {@linkplain DeploymentContext#consumeStream(String) iterate} the values while the contributors are still
+     * running.  The resource must have multiplicity.  If no producer exists, the chain will not be constructed;
+     * instead, an error will be raised.
+     *
+     * @param name the name of the consumed resource (must not be {@code null})
+     * @return this builder
+     */
+    DeployerBuilder consumesStream(String name);
+
     /**
      * Similar to {@link #destroysMandatory(String)} except that if the resource is not produced, no error is raised.
      *
@@ -143,4 +158,71 @@ public interface DeployerBuilder {
      * @return this builder
      */
     DeployerBuilder transforms(String name);
+
+    /**
+     * Declare that this deployer claims an exclusive resource which exists outside of the deployment, such as a
+     * network port or a file.  When a deployment is {@linkplain DeployerExecutionBuilder#redeploy(DeploymentResult, java.util.concurrent.Executor) redeployed},
+     * the new deployment runs alongside the undeployment of the previous one; however this deployer does not start
+     * until the undeploy actions of every deployer of the previous deployment which claimed the same name are complete.
+     * Claims have no effect on the ordering of deployers within a single deployment.
+     *
+     * @param name the claim name (must not be {@code null})
+     * @return this builder
+     */
+    DeployerBuilder claims(String name);
+
+    /**
+     * Declare that this deployer is pure: what it produces depends only on the values of the resources it consumes,
+     * and it has no other effects.  Each time the deployer is to run, the given fingerprint is computed for every
+     * resource it consumes; if an earlier execution of the same chain ran the deployer with equal fingerprints, the
+     * deployer is not run again and the resources it produced in that execution are produced again instead.  Results
+     * are only cached if the deployer succeeded without registering any undeploy actions or
+     * {@linkplain DeploymentContext#produceLazily(String, java.util.function.Supplier) producing lazily}.  Cached values
+     * are shared by every execution which replays them, so they must be immutable.  The size of the cache is
+     * given by {@link DeployerChainBuilder#setResultCacheSize(int)}.  A deployer which consumes a stream cannot be
+     * cacheable.
+     *
+     * @param fingerprint the fingerprint function for the consumed resources (must not be {@code null})
+     * @return this builder
+     */
+    DeployerBuilder cacheable(Fingerprint fingerprint);
+
+    /**
+     * Give this deployer an identity which is stable across chains and restarts.  The results of a
+     * {@linkplain #cacheable(Fingerprint) cacheable} deployer are only written to the chain's
+     * {@linkplain DeployerChainBuilder#setPersistentResultStore(PersistentResultStore) persistent store} if it has an
+     * identity, and the identity must change whenever the deployer's behavior changes, for example by including a
+     * version number.
+     *
+     * @param identity the deployer identity (must not be {@code null})
+     * @return this builder
+     */
+    DeployerBuilder identifiedBy(String identity);
+
+    /**
+     * Declare that this deployer has no effects other than producing, transforming and destroying the resources it
+     * declares.  If the chain {@linkplain DeployerChainBuilder#setPruneUnusedDeployers(boolean) prunes unused deployers},
+     * such a deployer is left out of the chain unless something it contributes to can reach a final resource or a
+     * deployer which has side effects.  {@linkplain #cacheable(Fingerprint) Cacheable} deployers are always side-effect
+     * free.
+     *
+     * @return this builder
+     */
+    DeployerBuilder sideEffectFree();
+
+    /**
+     * Declare that this deployer only applies to executions whose value for the given initial resource satisfies a
+     * condition, for example because a descriptor was found.  The condition is evaluated when the execution starts,
+     * against the item {@linkplain DeployerExecutionBuilder#provide(String, Object) provided} for a single resource or
+     * the list of items provided for a multiple resource.  An inactive deployer is not run, and nothing it would have
+     * produced is available to the deployers which follow it.  If the chain
+     * {@linkplain DeployerChainBuilder#setPruneUnusedDeployers(boolean) prunes unused deployers}, the side-effect free
+     * deployers which are only needed by inactive deployers are not run either.  If this method is called more than
+     * once, every condition must be satisfied.
+     *
+     * @param name the name of the initial resource (must not be {@code null})
+     * @param condition the condition on the provided value (must not be {@code null})
+     * @return this builder
+     */
+    DeployerBuilder activeWhen(String name, Predicate<Object> condition);
 }
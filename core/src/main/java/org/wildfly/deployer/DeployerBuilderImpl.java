@@ -19,7 +19,10 @@
 package org.wildfly.deployer;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 
 import org.wildfly.common.Assert;
 
@@ -30,10 +33,45 @@ final class DeployerBuilderImpl implements DeployerBuilder {
     private final DeployerChainBuilderImpl deployerChainBuilder;
     private final Deployer deployer;
     private final Map<String, Phase> resources = new HashMap<>();
+    private final Map<String, Mode> modes = new HashMap<>();
+    private final Map<String, Multiplicity> multiplicities = new HashMap<>();
+    private final Set<String> streamed = new HashSet<>();
+    private final Set<String> claims = new HashSet<>();
+    // initial resource name -> activation condition
+    private final Map<String, Predicate<Object>> conditions = new HashMap<>();
+    private Fingerprint fingerprint;
+    private String identity;
+    private boolean sideEffectFree;
+    // the id of the deployer this builder was copied from in the chain its builder was derived from, or -1
+    private final int baseId;
 
     DeployerBuilderImpl(final DeployerChainBuilderImpl deployerChainBuilder, final Deployer deployer) {
         this.deployerChainBuilder = deployerChainBuilder;
         this.deployer = deployer;
+        baseId = -1;
+    }
+
+    /**
+     * Copy a deployer builder into a derived chain builder, so that later changes to either one do not affect the
+     * other.  The copy is not registered with the derived chain builder.
+     *
+     * @param deployerChainBuilder the derived chain builder
+     * @param original the builder to copy
+     * @param baseId the id of the deployer in the chain being derived from, or -1 if it was pruned from that chain
+     */
+    DeployerBuilderImpl(final DeployerChainBuilderImpl deployerChainBuilder, final DeployerBuilderImpl original, final int baseId) {
+        this.deployerChainBuilder = deployerChainBuilder;
+        deployer = original.deployer;
+        resources.putAll(original.resources);
+        modes.putAll(original.modes);
+        multiplicities.putAll(original.multiplicities);
+        streamed.addAll(original.streamed);
+        claims.addAll(original.claims);
+        conditions.putAll(original.conditions);
+        fingerprint = original.fingerprint;
+        identity = original.identity;
+        sideEffectFree = original.sideEffectFree;
+        this.baseId = baseId;
     }
 
     public DeployerBuilder beforeProduce(final String name) {
@@ -96,6 +134,13 @@ final class DeployerBuilderImpl implements DeployerBuilder {
         return this;
     }
 
+    public DeployerBuilder consumesStream(final String name) {
+        Assert.checkNotNullParam("name", name);
+        addResource(name, Phase.CONSUME, Multiplicity.MULTIPLE, Mode.MANDATORY);
+        streamed.add(name);
+        return this;
+    }
+
     public DeployerBuilder destroysMandatory(final String name) {
         Assert.checkNotNullParam("name", name);
         addResource(name, Phase.DESTROY, Multiplicity.AUTOMATIC, Mode.MANDATORY);
@@ -114,6 +159,36 @@ final class DeployerBuilderImpl implements DeployerBuilder {
         return this;
     }
 
+    public DeployerBuilder claims(final String name) {
+        Assert.checkNotNullParam("name", name);
+        claims.add(name);
+        return this;
+    }
+
+    public DeployerBuilder cacheable(final Fingerprint fingerprint) {
+        Assert.checkNotNullParam("fingerprint", fingerprint);
+        this.fingerprint = fingerprint;
+        return this;
+    }
+
+    public DeployerBuilder identifiedBy(final String identity) {
+        Assert.checkNotNullParam("identity", identity);
+        this.identity = identity;
+        return this;
+    }
+
+    public DeployerBuilder sideEffectFree() {
+        sideEffectFree = true;
+        return this;
+    }
+
+    public DeployerBuilder activeWhen(final String name, final Predicate<Object> condition) {
+        Assert.checkNotNullParam("name", name);
+        Assert.checkNotNullParam("condition", condition);
+        conditions.merge(name, condition, Predicate::and);
+        return this;
+    }
+
     private void addResource(String name, Phase phase, Multiplicity multiplicity, Mode mode) {
         resources.compute(name, (s, existing) -> {
             if (existing != null && existing != phase) {
@@ -121,14 +196,53 @@ final class DeployerBuilderImpl implements DeployerBuilder {
             }
             // if this fails then neither this map nor the main map is updated
             deployerChainBuilder.addResource(name, phase, multiplicity, mode, this);
+            modes.merge(name, mode, Mode::max);
+            multiplicities.merge(name, multiplicity, (m1, m2) -> m1.combineWith(name, m2));
             return phase;
         });
     }
 
+    Mode getMode(String name) {
+        return modes.get(name);
+    }
+
+    Multiplicity getMultiplicity(String name) {
+        return multiplicities.get(name);
+    }
+
     Map<String, Phase> getResources() {
         return resources;
     }
 
+    Set<String> getStreamed() {
+        return streamed;
+    }
+
+    Set<String> getClaims() {
+        return claims;
+    }
+
+    Fingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    Map<String, Predicate<Object>> getConditions() {
+        return conditions;
+    }
+
+    boolean isSideEffectFree() {
+        // a cacheable deployer is pure by definition
+        return sideEffectFree || fingerprint != null;
+    }
+
+    String getIdentity() {
+        return identity;
+    }
+
+    int getBaseId() {
+        return baseId;
+    }
+
     Deployer getDeployer() {
         return deployer;
     }
@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Function;
+
+import org.wildfly.common.Assert;
+
+/**
+ * A deployer chain.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public interface DeployerChain {
+
+    /**
+     * Create a new execution builder for this deployer chain.
+     *
+     * @param name the name of the deployment for diagnostic purposes (must not be {@code null})
+     * @return the new deployer execution builder (not {@code null})
+     */
+    DeployerExecutionBuilder createExecutionBuilder(String name);
+
+    /**
+     * Analyze the shape of the dependency graph of this chain, for example to size the executors which run it.  The
+     * analysis is weighted by the durations which the deployers took in the executions of this chain so far.
+     *
+     * @return the analysis (not {@code null})
+     */
+    DeployerChainAnalysis analyze();
+
+    /**
+     * Get a simulator which predicts how this chain performs on a given number of cores, using declared or recorded
+     * deployer costs, without running any deployer.
+     *
+     * @return the simulator (not {@code null})
+     */
+    DeployerChainSimulator simulator();
+
+    /**
+     * Get a new deployer chain builder which is seeded with the declarations of this chain.  Deployers may be added to
+     * or {@linkplain DeployerChainBuilder#removeDeployer(Deployer) removed} from the returned builder; when it is
+     * built, only the deployers which declare a resource whose declarations changed, and the deployers which follow
+     * them, are linked again.  This chain is not affected.
+     *
+     * @return the deployer chain builder (not {@code null})
+     * @throws IllegalStateException if this chain was {@linkplain #load(InputStream, Function) loaded} without its
+     *      declarations
+     */
+    DeployerChainBuilder derive();
+
+    /**
+     * Get a new deployer chain builder.
+     *
+     * @return the deployer chain builder (not {@code null})
+     */
+    static DeployerChainBuilder builder() {
+        return new DeployerChainBuilderImpl();
+    }
+
+    /**
+     * Load a precompiled deployer chain from a snapshot, such as the ones written by
+     * {@link DeployerChainBuilder#writeSnapshot(java.io.OutputStream)} or {@link DeployerChainBuilder#build(java.nio.file.Path)}.  The graph
+     * of the chain is read as-is, without being reconstructed or validated.  Results of
+     * {@linkplain DeployerBuilder#cacheable(Fingerprint) cacheable} deployers are not cached by a loaded chain.
+     *
+     * @param snapshot the snapshot stream (must not be {@code null}); it is not closed
+     * @param deployers the function which returns the deployer instance of each {@linkplain DeployerBuilder#identifiedBy(String) identity},
+     *      or {@code null} if the identity is unknown (must not be {@code null})
+     * @return the deployer chain (not {@code null})
+     * @throws IOException if the snapshot could not be read, is not valid, or refers to an unknown deployer
+     */
+    static DeployerChain load(InputStream snapshot, Function<String, Deployer> deployers) throws IOException {
+        Assert.checkNotNullParam("snapshot", snapshot);
+        Assert.checkNotNullParam("deployers", deployers);
+        final DeployerChainImpl chain = ChainSnapshot.read(snapshot, null, deployers, identity -> null, null);
+        if (chain == null) {
+            throw Messages.log.invalidSnapshot();
+        }
+        return chain;
+    }
+}
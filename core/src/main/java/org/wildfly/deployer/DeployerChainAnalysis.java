@@ -0,0 +1,403 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import static java.lang.Math.max;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The shape of the dependency graph of a {@linkplain DeployerChain#analyze() deployer chain}.  Deployers are grouped
+ * into levels, where the level of a deployer is the length of the longest chain of deployers which it must follow, so
+ * that the deployers of a level may always run at the same time.  A deployer which consumes a stream follows the
+ * contributors of the stream, since it cannot complete before them, but its duration overlaps theirs.  Durations are
+ * the moving averages of the times the deployers of the chain took to succeed in earlier executions; deployers which
+ * never ran count as taking no time.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public final class DeployerChainAnalysis {
+    private final int deployerCount;
+    private final int dependencyCount;
+    private final int[] levelWidths;
+    private final List<HotSpot> fanInHotSpots;
+    private final List<HotSpot> fanOutHotSpots;
+    private final List<Deployer> criticalPath;
+    private final List<Deployer> weightedCriticalPath;
+    private final long criticalPathDuration;
+    private final long totalDuration;
+    private final int timedDeployerCount;
+
+    /**
+     * The maximum number of deployers reported as fan-in or fan-out hot spots.
+     */
+    public static final int HOT_SPOT_COUNT = 10;
+
+    DeployerChainAnalysis(final int deployerCount, final int dependencyCount, final int[] levelWidths, final List<HotSpot> fanInHotSpots, final List<HotSpot> fanOutHotSpots, final List<Deployer> criticalPath, final List<Deployer> weightedCriticalPath, final long criticalPathDuration, final long totalDuration, final int timedDeployerCount) {
+        this.deployerCount = deployerCount;
+        this.dependencyCount = dependencyCount;
+        this.levelWidths = levelWidths;
+        this.fanInHotSpots = fanInHotSpots;
+        this.fanOutHotSpots = fanOutHotSpots;
+        this.criticalPath = criticalPath;
+        this.weightedCriticalPath = weightedCriticalPath;
+        this.criticalPathDuration = criticalPathDuration;
+        this.totalDuration = totalDuration;
+        this.timedDeployerCount = timedDeployerCount;
+    }
+
+    /**
+     * Get the number of deployers in the chain.
+     *
+     * @return the number of deployers
+     */
+    public int getDeployerCount() {
+        return deployerCount;
+    }
+
+    /**
+     * Get the number of direct dependencies between deployers, after redundant dependencies have been removed.
+     *
+     * @return the number of dependencies
+     */
+    public int getDependencyCount() {
+        return dependencyCount;
+    }
+
+    /**
+     * Get the number of levels of the chain, which is also the number of deployers on its
+     * {@linkplain #getCriticalPath() critical path}.
+     *
+     * @return the depth, or 0 if the chain has no deployers
+     */
+    public int getDepth() {
+        return levelWidths.length;
+    }
+
+    /**
+     * Get the number of deployers in each level.
+     *
+     * @return the level widths, indexed by level (not {@code null})
+     */
+    public int[] getLevelWidths() {
+        return levelWidths.clone();
+    }
+
+    /**
+     * Get the number of deployers in the widest level.  This many deployers can always run at once, so it is a lower
+     * bound of the largest number of deployers which can.
+     *
+     * @return the maximum width
+     */
+    public int getMaxWidth() {
+        int maxWidth = 0;
+        for (int width : levelWidths) {
+            maxWidth = max(maxWidth, width);
+        }
+        return maxWidth;
+    }
+
+    /**
+     * Get the deployers which directly follow the most other deployers, most first.
+     *
+     * @return the hot spots, at most {@value #HOT_SPOT_COUNT} (not {@code null})
+     */
+    public List<HotSpot> getFanInHotSpots() {
+        return fanInHotSpots;
+    }
+
+    /**
+     * Get the deployers which are directly followed by the most other deployers, most first.
+     *
+     * @return the hot spots, at most {@value #HOT_SPOT_COUNT} (not {@code null})
+     */
+    public List<HotSpot> getFanOutHotSpots() {
+        return fanOutHotSpots;
+    }
+
+    /**
+     * Get the longest chain of deployers which must run one after another, from first to last.
+     *
+     * @return the critical path (not {@code null})
+     */
+    public List<Deployer> getCriticalPath() {
+        return criticalPath;
+    }
+
+    /**
+     * Get the chain of deployers which must run one after another and takes the longest time, from first to last.
+     * No execution of the chain can complete faster than this path.
+     *
+     * @return the weighted critical path (not {@code null})
+     */
+    public List<Deployer> getWeightedCriticalPath() {
+        return weightedCriticalPath;
+    }
+
+    /**
+     * Get the time taken by the deployers of the {@linkplain #getWeightedCriticalPath() weighted critical path}.
+     *
+     * @param timeUnit the time unit to return
+     * @return the time
+     */
+    public long getCriticalPathDuration(TimeUnit timeUnit) {
+        return timeUnit.convert(criticalPathDuration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the time taken by all of the deployers, one after another.
+     *
+     * @param timeUnit the time unit to return
+     * @return the time
+     */
+    public long getTotalDuration(TimeUnit timeUnit) {
+        return timeUnit.convert(totalDuration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the number of deployers which have a recorded duration.
+     *
+     * @return the number of timed deployers
+     */
+    public int getTimedDeployerCount() {
+        return timedDeployerCount;
+    }
+
+    /**
+     * Get the recommended number of threads of an executor which runs this chain.  With recorded durations, this is
+     * the total duration divided by the critical path duration, rounded, which is the average number of deployers that can
+     * keep busy while the critical path runs, but never more than the {@linkplain #getMaxWidth() maximum width};
+     * otherwise it is the maximum width.  Deployers which block on external work may warrant more threads.
+     *
+     * @return the recommended parallelism, at least 1
+     */
+    public int getRecommendedParallelism() {
+        final int maxWidth = getMaxWidth();
+        if (criticalPathDuration == 0L) {
+            return max(1, maxWidth);
+        }
+        final long average = (totalDuration + criticalPathDuration / 2) / criticalPathDuration;
+        return (int) max(1L, Math.min(maxWidth, average));
+    }
+
+    public String toString() {
+        final StringBuilder b = new StringBuilder();
+        b.append("Deployer chain analysis: ").append(deployerCount).append(" deployers, ");
+        b.append(dependencyCount).append(" dependencies, depth ").append(getDepth());
+        b.append(", maximum width ").append(getMaxWidth());
+        if (timedDeployerCount > 0) {
+            b.append(", critical path ").append(getCriticalPathDuration(TimeUnit.MILLISECONDS)).append("ms of ");
+            b.append(getTotalDuration(TimeUnit.MILLISECONDS)).append("ms total");
+        }
+        b.append(", recommended parallelism ").append(getRecommendedParallelism());
+        return b.toString();
+    }
+
+    /**
+     * A deployer with many direct dependencies or dependents.
+     */
+    public static final class HotSpot {
+        private final Deployer deployer;
+        private final String identity;
+        private final int count;
+
+        HotSpot(final Deployer deployer, final String identity, final int count) {
+            this.deployer = deployer;
+            this.identity = identity;
+            this.count = count;
+        }
+
+        /**
+         * Get the deployer.
+         *
+         * @return the deployer (not {@code null})
+         */
+        public Deployer getDeployer() {
+            return deployer;
+        }
+
+        /**
+         * Get the {@linkplain DeployerBuilder#identifiedBy(String) identity} of the deployer.
+         *
+         * @return the identity, or {@code null} if the deployer has none
+         */
+        public String getIdentity() {
+            return identity;
+        }
+
+        /**
+         * Get the number of direct dependencies or dependents of the deployer.
+         *
+         * @return the count
+         */
+        public int getCount() {
+            return count;
+        }
+
+        public String toString() {
+            return (identity == null ? deployer.toString() : identity) + " (" + count + ")";
+        }
+    }
+
+    /**
+     * Analyze a chain.  Every measure is computed in a single pass over the deployers in dependency order.
+     *
+     * @param chain the chain
+     * @return the analysis
+     */
+    static DeployerChainAnalysis analyze(final DeployerChainImpl chain) {
+        final int count = chain.getDeployerCount();
+        final ExecutionPlan plan = chain.getExecutionPlan();
+        // sort the deployers in dependency order, placing every stream consumer after the contributors it waits for
+        final int[] order = new int[count];
+        final int[] remaining = new int[count];
+        int dependencyCount = 0;
+        int tail = 0;
+        for (int id = 0; id < count; id ++) {
+            final int dependencies = chain.getDeployer(id).getDependencies().size();
+            dependencyCount += dependencies;
+            remaining[id] = dependencies + plan.getStreamContributorCount(id);
+            if (remaining[id] == 0) {
+                order[tail ++] = id;
+            }
+        }
+        for (int head = 0; head < tail; head ++) {
+            for (DeployerInfo dependent : chain.getDeployer(order[head]).getDependents()) {
+                if (-- remaining[dependent.getId()] == 0) {
+                    order[tail ++] = dependent.getId();
+                }
+            }
+            for (int consumerId : plan.getStreamConsumerIds(order[head])) {
+                if (-- remaining[consumerId] == 0) {
+                    order[tail ++] = consumerId;
+                }
+            }
+        }
+        // longest paths, by deployer count and by duration, ending at each deployer
+        final int[] levels = new int[count];
+        final int[] previous = new int[count];
+        final long[] finish = new long[count];
+        final int[] weightedPrevious = new int[count];
+        // the same, through the contributors of the streams each deployer consumes
+        final int[] streamLevels = new int[count];
+        final int[] streamPrevious = new int[count];
+        final long[] streamFinish = new long[count];
+        final int[] streamWeightedPrevious = new int[count];
+        Arrays.fill(streamPrevious, -1);
+        Arrays.fill(streamWeightedPrevious, -1);
+        long totalDuration = 0L;
+        int timedDeployerCount = 0;
+        int depth = 0;
+        int last = -1;
+        int weightedLast = -1;
+        for (int id : order) {
+            final DeployerInfo deployerInfo = chain.getDeployer(id);
+            int level = 0;
+            long start = 0L;
+            previous[id] = -1;
+            weightedPrevious[id] = -1;
+            for (DeployerInfo dependency : deployerInfo.getDependencies()) {
+                final int dependencyId = dependency.getId();
+                if (levels[dependencyId] + 1 > level) {
+                    level = levels[dependencyId] + 1;
+                    previous[id] = dependencyId;
+                }
+                if (weightedPrevious[id] == -1 || finish[dependencyId] > start) {
+                    start = finish[dependencyId];
+                    weightedPrevious[id] = dependencyId;
+                }
+            }
+            final long duration = deployerInfo.getAverageDuration();
+            if (duration != 0L) {
+                timedDeployerCount ++;
+                totalDuration += duration;
+            }
+            // a stream consumer follows its contributors, since it cannot complete before the last of them
+            if (streamPrevious[id] != -1 && streamLevels[id] > level) {
+                level = streamLevels[id];
+                previous[id] = streamPrevious[id];
+            }
+            long end = start + duration;
+            // ... but it runs alongside them, so it finishes with its own work or its last contributor, whichever is later
+            if (streamWeightedPrevious[id] != -1 && streamFinish[id] > end) {
+                end = streamFinish[id];
+                weightedPrevious[id] = streamWeightedPrevious[id];
+            }
+            levels[id] = level;
+            finish[id] = end;
+            for (int consumerId : plan.getStreamConsumerIds(id)) {
+                if (streamPrevious[consumerId] == -1 || level + 1 > streamLevels[consumerId]) {
+                    streamLevels[consumerId] = level + 1;
+                    streamPrevious[consumerId] = id;
+                }
+                if (streamWeightedPrevious[consumerId] == -1 || end > streamFinish[consumerId]) {
+                    streamFinish[consumerId] = end;
+                    streamWeightedPrevious[consumerId] = id;
+                }
+            }
+            if (last == -1 || level > levels[last]) {
+                last = id;
+            }
+            if (weightedLast == -1 || finish[id] > finish[weightedLast]) {
+                weightedLast = id;
+            }
+            depth = max(depth, level + 1);
+        }
+        final int[] levelWidths = new int[depth];
+        for (int id = 0; id < count; id ++) {
+            levelWidths[levels[id]] ++;
+        }
+        return new DeployerChainAnalysis(count, dependencyCount, levelWidths,
+            findHotSpots(chain, false), findHotSpots(chain, true),
+            tracePath(chain, previous, last), tracePath(chain, weightedPrevious, weightedLast),
+            weightedLast == -1 ? 0L : finish[weightedLast], totalDuration, timedDeployerCount);
+    }
+
+    private static List<Deployer> tracePath(final DeployerChainImpl chain, final int[] previous, final int last) {
+        final List<Deployer> path = new ArrayList<>();
+        for (int id = last; id != -1; id = previous[id]) {
+            path.add(chain.getDeployer(id).getDeployer());
+        }
+        Collections.reverse(path);
+        return Collections.unmodifiableList(path);
+    }
+
+    private static List<HotSpot> findHotSpots(final DeployerChainImpl chain, final boolean fanOut) {
+        final int count = chain.getDeployerCount();
+        final Integer[] ids = new Integer[count];
+        final int[] degrees = new int[count];
+        for (int id = 0; id < count; id ++) {
+            final DeployerInfo deployerInfo = chain.getDeployer(id);
+            ids[id] = Integer.valueOf(id);
+            degrees[id] = fanOut ? deployerInfo.getDependents().size() : deployerInfo.getDependencies().size();
+        }
+        Arrays.sort(ids, Comparator.comparingInt(id -> - degrees[id.intValue()]));
+        final List<HotSpot> hotSpots = new ArrayList<>();
+        for (int i = 0; i < count && hotSpots.size() < HOT_SPOT_COUNT && degrees[ids[i].intValue()] > 0; i ++) {
+            final DeployerInfo deployerInfo = chain.getDeployer(ids[i].intValue());
+            hotSpots.add(new HotSpot(deployerInfo.getDeployer(), deployerInfo.getIdentity(), degrees[ids[i].intValue()]));
+        }
+        return Collections.unmodifiableList(hotSpots);
+    }
+}
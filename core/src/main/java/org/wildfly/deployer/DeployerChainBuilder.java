@@ -0,0 +1,173 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * A deployer chain builder.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public interface DeployerChainBuilder {
+
+    /**
+     * Add a deployer to the chain.  The configuration in the deployer builder at the time that the chain is built is
+     * the configuration that will apply to the deployer in the final chain.  Any subsequent changes will be ignored.
+     *
+     * @param deployer the deployer instance
+     * @return the builder for the deployer
+     */
+    DeployerBuilder addDeployer(Deployer deployer);
+
+    /**
+     * Remove every registration of a deployer from this builder, along with its resource declarations.
+     *
+     * @param deployer the deployer instance (must not be {@code null})
+     * @return this builder
+     */
+    DeployerChainBuilder removeDeployer(Deployer deployer);
+
+    /**
+     * Declare a deployer by its identity alone, without an instance.  A chain with declared deployers cannot be built;
+     * it can only be {@linkplain #writeSnapshot(OutputStream) written as a snapshot}, whose deployer instances are
+     * supplied when it is {@linkplain DeployerChain#load(java.io.InputStream, java.util.function.Function) loaded}.
+     *
+     * @param identity the deployer identity (must not be {@code null})
+     * @return the builder for the deployer, which is {@linkplain DeployerBuilder#identifiedBy(String) identified} by the given identity
+     */
+    DeployerBuilder declareDeployer(String identity);
+
+    /**
+     * Declare an initial resource that will be provided to deployers in the chain.  Note that if this method is called,
+     * no deployers will be allowed to produce this resource.
+     *
+     * @param name the resource name (must not be {@code null})
+     * @return this builder
+     * @throws IllegalArgumentException if the resource name is {@code null}
+     */
+    DeployerChainBuilder addInitialResource(String name);
+
+    /**
+     * Declare an initial resource (with multiplicity) that will be provided to deployers in the chain.  Note that if
+     * this method is called, no deployers will be allowed to produce this resource.
+     *
+     * @param name the resource name (must not be {@code null})
+     * @return this builder
+     * @throws IllegalArgumentException if the resource name is {@code null}
+     */
+    DeployerChainBuilder addInitialMultiResource(String name);
+
+    /**
+     * Declare a final resource that will be consumable after the deployer chain completes.  This may be any resource
+     * that is produced in the chain.
+     *
+     * @param name the resource name (must not be {@code null})
+     * @return this builder
+     * @throws IllegalArgumentException if the resource name is {@code null}
+     */
+    DeployerChainBuilder addFinalResource(String name);
+
+    /**
+     * Set the maximum number of {@linkplain DeployerBuilder#cacheable(Fingerprint) cacheable} deployer results which
+     * are retained by the chain.  Once the cache is full, the least recently used result is evicted.  A size of zero
+     * disables the in-memory cache.  The default is {@value #DEFAULT_RESULT_CACHE_SIZE}.
+     *
+     * @param size the maximum number of cached results
+     * @return this builder
+     * @throws IllegalArgumentException if the size is negative
+     */
+    DeployerChainBuilder setResultCacheSize(int size);
+
+    /**
+     * Set the store in which the results of {@linkplain DeployerBuilder#cacheable(Fingerprint) cacheable} deployers
+     * are kept across restarts.  A result is only stored if its deployer is
+     * {@linkplain DeployerBuilder#identifiedBy(String) identified}, every fingerprint of its run is a {@code String} or
+     * a {@code byte[]}, and every resource it produced has a {@linkplain #setResourceCodec(String, ResourceCodec) codec}.
+     * Results are looked up in the store when they are
+     * not in the in-memory cache.  The store is not closed by the chain.
+     *
+     * @param store the store, or {@code null} for none
+     * @return this builder
+     */
+    DeployerChainBuilder setPersistentResultStore(PersistentResultStore store);
+
+    /**
+     * Set the codec used to write the values of a resource to the {@linkplain #setPersistentResultStore(PersistentResultStore) persistent result store}.
+     *
+     * @param name the resource name (must not be {@code null})
+     * @param codec the codec (must not be {@code null})
+     * @return this builder
+     */
+    DeployerChainBuilder setResourceCodec(String name, ResourceCodec<?> codec);
+
+    /**
+     * Set whether {@linkplain DeployerBuilder#sideEffectFree() side-effect free} deployers which cannot contribute to
+     * any final resource or to any deployer with side effects are left out of the built chain.  Declarations are
+     * still validated as a whole before pruning.  Pruning is disabled by default.
+     *
+     * @param prune {@code true} to prune unused deployers, {@code false} to run every deployer
+     * @return this builder
+     */
+    DeployerChainBuilder setPruneUnusedDeployers(boolean prune);
+
+    /**
+     * The default maximum number of cached deployer results.
+     */
+    int DEFAULT_RESULT_CACHE_SIZE = 256;
+
+    /**
+     * Build the deployer chain from the current builder configuration.
+     *
+     * @return the constructed deployer chain
+     * @throws DeployerChainBuildException if the chain could not be built
+     * @throws IllegalStateException if a deployer is only {@linkplain #declareDeployer(String) declared}
+     */
+    DeployerChain build() throws DeployerChainBuildException;
+
+    /**
+     * Build the deployer chain from the current builder configuration, reusing a snapshot of a previous build of the
+     * same configuration if one exists.  The snapshot is keyed by a hash of all the resource and deployer declarations;
+     * if it is missing or was written for different declarations, the chain is built normally and the snapshot is
+     * (re)written.  Every deployer must be {@linkplain DeployerBuilder#identifiedBy(String) identified} by a unique
+     * identity, which is used to bind the deployer instances to the snapshot; otherwise the snapshot is not used.
+     * Failures to read or write the snapshot are logged and do not prevent the chain from being built.
+     *
+     * @param snapshot the path of the snapshot file (must not be {@code null})
+     * @return the constructed deployer chain
+     * @throws DeployerChainBuildException if the chain could not be built
+     * @throws IllegalStateException if a deployer is only {@linkplain #declareDeployer(String) declared}
+     */
+    DeployerChain build(Path snapshot) throws DeployerChainBuildException;
+
+    /**
+     * Build the deployer chain from the current builder configuration and write its snapshot to a stream, from which
+     * the chain can be {@linkplain DeployerChain#load(java.io.InputStream, java.util.function.Function) loaded} later.
+     * Every deployer must be {@linkplain DeployerBuilder#identifiedBy(String) identified} by a unique identity.
+     * Activation conditions and fingerprints are not part of the snapshot.
+     *
+     * @param os the stream to write the snapshot to (must not be {@code null}); it is not closed
+     * @throws DeployerChainBuildException if the chain could not be built
+     * @throws IllegalStateException if a deployer has no unique identity
+     * @throws IOException if the snapshot could not be written
+     */
+    void writeSnapshot(OutputStream os) throws DeployerChainBuildException, IOException;
+}
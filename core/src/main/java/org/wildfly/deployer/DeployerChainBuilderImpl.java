@@ -0,0 +1,1031 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import static java.util.Collections.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.wildfly.common.Assert;
+
+/**
+ * Main entry point.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class DeployerChainBuilderImpl implements DeployerChainBuilder {
+    static {
+        Messages.log.logVersion(Version.getVersion());
+    }
+
+    private final Map<String, ResourceInfo> allResources;
+    private final Queue<DeployerBuilderImpl> allDeployerBuilders;
+    private final Set<String> initialResources;
+    private final Set<String> finalResources;
+    private volatile int resultCacheSize = DEFAULT_RESULT_CACHE_SIZE;
+    private volatile PersistentResultStore persistentResultStore;
+    private volatile boolean pruneUnusedDeployers;
+    private final Map<String, ResourceCodec<?>> resourceCodecs = new ConcurrentHashMap<>();
+    // the chain this builder was derived from, or null
+    private final DeployerChainImpl base;
+    // the resources whose declarations changed since derivation, or null if not derived
+    private final Set<String> changedResources;
+
+    DeployerChainBuilderImpl() {
+        finalResources = newSetFromMap(new ConcurrentHashMap<>());
+        initialResources = newSetFromMap(new ConcurrentHashMap<>());
+        allDeployerBuilders = new ConcurrentLinkedQueue<>();
+        allResources = new ConcurrentHashMap<>();
+        base = null;
+        changedResources = null;
+    }
+
+    DeployerChainBuilderImpl(final DeployerChainImpl base) {
+        finalResources = newSetFromMap(new ConcurrentHashMap<>());
+        initialResources = newSetFromMap(new ConcurrentHashMap<>());
+        allDeployerBuilders = new ConcurrentLinkedQueue<>();
+        allResources = new ConcurrentHashMap<>();
+        this.base = base;
+        changedResources = newSetFromMap(new ConcurrentHashMap<>());
+        final Seed seed = base.getSeed();
+        for (Map.Entry<String, Multiplicity> entry : seed.initialResources.entrySet()) {
+            getOrAddResource(entry.getKey()).setInitial(entry.getValue());
+            initialResources.add(entry.getKey());
+        }
+        for (String name : seed.finalResources) {
+            addFinalResource(name);
+        }
+        resultCacheSize = seed.resultCacheSize;
+        persistentResultStore = seed.persistentResultStore;
+        pruneUnusedDeployers = seed.pruneUnusedDeployers;
+        resourceCodecs.putAll(seed.resourceCodecs);
+        // the builders of the original chain may still be changed by their owner, so they are copied
+        for (int id = 0; id < seed.builders.length; id ++) {
+            addCopy(seed.builders[id], id);
+        }
+        for (DeployerBuilderImpl builder : seed.pruned) {
+            addCopy(builder, -1);
+        }
+    }
+
+    private void addCopy(final DeployerBuilderImpl original, final int baseId) {
+        final DeployerBuilderImpl copy = new DeployerBuilderImpl(this, original, baseId);
+        allDeployerBuilders.add(copy);
+        for (Map.Entry<String, Phase> entry : copy.getResources().entrySet()) {
+            final String name = entry.getKey();
+            getOrAddResource(name).setMultiplicity(copy.getMultiplicity(name)).add(entry.getValue(), copy.getMode(name), copy);
+        }
+    }
+
+    public DeployerBuilder addDeployer(final Deployer deployer) {
+        final DeployerBuilderImpl deployerBuilder = new DeployerBuilderImpl(this, deployer);
+        allDeployerBuilders.add(deployerBuilder);
+        return deployerBuilder;
+    }
+
+    public DeployerBuilder declareDeployer(final String identity) {
+        Assert.checkNotNullParam("identity", identity);
+        return addDeployer(new DeclaredDeployer(identity)).identifiedBy(identity);
+    }
+
+    public DeployerChainBuilder addInitialResource(final String name) {
+        getOrAddResource(name).setInitial(Multiplicity.SINGLE);
+        initialResources.add(name);
+        return this;
+    }
+
+    public DeployerChainBuilder addInitialMultiResource(final String name) {
+        getOrAddResource(name).setInitial(Multiplicity.MULTIPLE);
+        initialResources.add(name);
+        return this;
+    }
+
+    public DeployerChainBuilder addFinalResource(final String name) {
+        getOrAddResource(name);
+        finalResources.add(name);
+        return this;
+    }
+
+    public DeployerChainBuilder setResultCacheSize(final int size) {
+        Assert.checkMinimumParameter("size", 0, size);
+        resultCacheSize = size;
+        return this;
+    }
+
+    public DeployerChainBuilder setPersistentResultStore(final PersistentResultStore store) {
+        persistentResultStore = store;
+        return this;
+    }
+
+    public DeployerChainBuilder setResourceCodec(final String name, final ResourceCodec<?> codec) {
+        Assert.checkNotNullParam("name", name);
+        Assert.checkNotNullParam("codec", codec);
+        resourceCodecs.put(name, codec);
+        return this;
+    }
+
+    public DeployerChainBuilder setPruneUnusedDeployers(final boolean prune) {
+        pruneUnusedDeployers = prune;
+        return this;
+    }
+
+    public DeployerChainBuilder removeDeployer(final Deployer deployer) {
+        Assert.checkNotNullParam("deployer", deployer);
+        final Iterator<DeployerBuilderImpl> iterator = allDeployerBuilders.iterator();
+        while (iterator.hasNext()) {
+            final DeployerBuilderImpl builder = iterator.next();
+            if (builder.getDeployer() == deployer) {
+                iterator.remove();
+                for (Map.Entry<String, Phase> entry : builder.getResources().entrySet()) {
+                    final String name = entry.getKey();
+                    allResources.get(name).remove(entry.getValue(), builder);
+                    if (changedResources != null) {
+                        changedResources.add(name);
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    ResourceInfo addResource(final String name, final Phase phase, final Multiplicity multiplicity, final Mode mode, final DeployerBuilderImpl builder) {
+        if (changedResources != null) {
+            // a deployer declared since derivation; copied deployers are registered directly
+            changedResources.add(name);
+        }
+        return getOrAddResource(name).setMultiplicity(multiplicity).add(phase, mode, builder);
+    }
+
+    private ResourceInfo getOrAddResource(final String name) {
+        // avoid locking the map for resources which are already known
+        final ResourceInfo resourceInfo = allResources.get(name);
+        return resourceInfo != null ? resourceInfo : allResources.computeIfAbsent(name, ResourceInfo::new);
+    }
+
+    private boolean requiredFailed(ResourceInfo resourceInfo, Phase source, Phase target) {
+        return resourceInfo.getMode(source) == Mode.MANDATORY && resourceInfo.getDeployersByPhase(target).isEmpty();
+    }
+
+    /**
+     * Check that the mandatory relationships of a resource are satisfied.
+     *
+     * @param resourceInfo the resource
+     * @return the problem, or {@code null} if there is none
+     */
+    private DeployerChainBuildException validate(final ResourceInfo resourceInfo) {
+        final String name = resourceInfo.getName();
+
+        // Ensure there's a producer for every required producer predecessor
+        if (requiredFailed(resourceInfo, Phase.PRE_PRODUCE, Phase.PRODUCE)) {
+            return Messages.log.noProducerForMandatoryInitializer(name);
+        }
+
+        // Ensure there's a producer for every required transformer
+        if (requiredFailed(resourceInfo, Phase.TRANSFORM, Phase.PRODUCE)) {
+            return Messages.log.noProducerForMandatoryTransformer(name);
+        }
+
+        // Ensure there's a consumer for every required producer
+        if (requiredFailed(resourceInfo, Phase.PRODUCE, Phase.CONSUME)) {
+            return Messages.log.noConsumerForMandatoryProducer(name);
+        }
+
+        // Ensure there's a consumer for every required transformer producer
+        if (requiredFailed(resourceInfo, Phase.TRANSFORM, Phase.CONSUME)) {
+            return Messages.log.noProducerForMandatoryTransformer(name);
+        }
+
+        // Ensure there's a producer for every required consumer; initial resources are produced by the caller
+        if (requiredFailed(resourceInfo, Phase.CONSUME, Phase.PRODUCE) && ! initialResources.contains(name)) {
+            return Messages.log.noProducerForMandatoryConsumer(name);
+        }
+        return null;
+    }
+
+    private static <T> Stream<T> stream(final Collection<T> collection, final boolean parallel) {
+        return parallel ? collection.parallelStream() : collection.stream();
+    }
+
+    private static IntStream range(final int size, final boolean parallel) {
+        final IntStream stream = IntStream.range(0, size);
+        return parallel ? stream.parallel() : stream;
+    }
+
+    @SuppressWarnings("serial")
+    public DeployerChain build() throws DeployerChainBuildException {
+        checkNotDeclared();
+        return buildChain();
+    }
+
+    private DeployerChainImpl buildChain() throws DeployerChainBuildException {
+        final long startTime = System.nanoTime();
+        Map<String, ResourceInfo> allResources = this.allResources;
+
+        // match producers with consumers
+
+        final List<DeployerBuilderImpl> allBuilders = new ArrayList<>(allDeployerBuilders);
+        // the initial resources which activate deployers, which are retained so that incremental redeploys see them
+        final Set<String> activationResources = new HashSet<>();
+        final boolean parallel = allBuilders.size() >= PARALLEL_BUILD_THRESHOLD;
+
+        // resources are validated in name order, so that the same problem is reported whichever finds it first
+        final Optional<DeployerChainBuildException> problem = stream(new TreeMap<>(allResources).values(), parallel).map(this::validate).filter(Objects::nonNull).findFirst();
+        if (problem.isPresent()) {
+            throw problem.get();
+        }
+
+        for (DeployerBuilderImpl builder : allBuilders) {
+            final Set<String> streamed = builder.getStreamed();
+            if (builder.getFingerprint() != null && ! streamed.isEmpty()) {
+                throw Messages.log.cannotCacheStreamConsumer(builder.getDeployer(), streamed.iterator().next());
+            }
+            for (String name : builder.getConditions().keySet()) {
+                if (! initialResources.contains(name)) {
+                    throw Messages.log.activationResourceNotInitial(builder.getDeployer(), name);
+                }
+                activationResources.add(name);
+            }
+        }
+
+        // leave out the side-effect free deployers which nothing needs
+
+        final List<DeployerBuilderImpl> builders = pruneUnusedDeployers ? findUsedDeployers(allBuilders) : allBuilders;
+        final int builderCount = builders.size();
+
+        // mark the resources which are consumed as streams
+
+        for (ResourceInfo resourceInfo : allResources.values()) {
+            resourceInfo.setStreamed(false);
+        }
+        for (DeployerBuilderImpl builder : builders) {
+            for (String name : builder.getStreamed()) {
+                allResources.get(name).setStreamed(true);
+            }
+        }
+
+        // Find the deployers which each deployer must follow, and sort them into levels which only depend on earlier levels
+
+        final Map<DeployerBuilderImpl, Integer> builderIndexes = new IdentityHashMap<>(builderCount);
+        for (int i = 0; i < builderCount; i ++) {
+            builderIndexes.put(builders.get(i), Integer.valueOf(i));
+        }
+        // in a derived chain, only the deployers which declare a changed resource are linked again
+        final DeployerChainImpl base = this.base;
+        final Seed seed = base == null ? null : base.getSeed();
+        final int[] oldToNew;
+        if (base == null) {
+            oldToNew = null;
+        } else {
+            oldToNew = new int[seed.builders.length];
+            Arrays.fill(oldToNew, -1);
+            for (int i = 0; i < builderCount; i ++) {
+                final int oldId = builders.get(i).getBaseId();
+                if (oldId != -1) {
+                    oldToNew[oldId] = i;
+                }
+            }
+        }
+        final boolean[] relinked = new boolean[builderCount];
+        final int[][] candidates = new int[builderCount][];
+        range(builderCount, parallel).forEach(i -> {
+            final DeployerBuilderImpl builder = builders.get(i);
+            final int oldId = builder.getBaseId();
+            relinked[i] = oldId == -1 || declaresAny(builder, changedResources);
+            if (relinked[i] || seed.candidates == null) {
+                candidates[i] = findCandidates(builder, builderIndexes);
+            } else {
+                // a removed deployer shares a changed resource with each deployer that followed it
+                candidates[i] = remap(seed.candidates[oldId], oldToNew);
+            }
+        });
+        final List<int[]> levels = computeLevels(builders, candidates);
+        checkStreamLoops(builders, candidates, builderIndexes);
+
+        // Construct deployer infos level by level, optimizing dependencies where possible; the reduced dependencies
+        // of a derived deployer are reused unless it or one of its predecessors was linked again
+
+        final DeployerInfo[] deployers = new DeployerInfo[builderCount];
+        for (int[] level : levels) {
+            range(level.length, parallel && level.length > 1).forEach(i -> {
+                final int index = level[i];
+                final int[] myCandidates = candidates[index];
+                boolean dirty = relinked[index];
+                for (int j = 0; ! dirty && j < myCandidates.length; j ++) {
+                    dirty = relinked[myCandidates[j]];
+                }
+                relinked[index] = dirty;
+                final Set<DeployerInfo> dependencies = new HashSet<>();
+                if (dirty) {
+                    for (int candidate : myCandidates) {
+                        addDependency(deployers[candidate], dependencies);
+                    }
+                } else {
+                    for (DeployerInfo dependency : base.getDeployer(builders.get(index).getBaseId()).getDependencies()) {
+                        dependencies.add(deployers[oldToNew[dependency.getId()]]);
+                    }
+                }
+                deployers[index] = createOne(builders.get(index), dependencies);
+            });
+        }
+
+        final Set<DeployerInfo> initialDeployers = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<DeployerInfo> finalDeployers = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean cacheable = false;
+        for (int deployerId = 0; deployerId < builderCount; deployerId ++) {
+            final DeployerInfo deployerInfo = deployers[deployerId];
+            deployerInfo.setId(deployerId);
+            cacheable |= deployerInfo.getFingerprint() != null;
+            for (DeployerInfo dependency : deployerInfo.getDependencies()) {
+                dependency.getDependents().add(deployerInfo);
+            }
+        }
+        for (DeployerInfo deployerInfo : deployers) {
+            if (deployerInfo.getDependents().isEmpty()) {
+                finalDeployers.add(deployerInfo);
+            }
+            if (deployerInfo.getDependencies().isEmpty()) {
+                initialDeployers.add(deployerInfo);
+            }
+        }
+
+        // Compute resource lifetimes; a resource can be released once its last readers are complete
+
+        final int resourceCount = allResources.size();
+        final String[] resourceNames = new String[resourceCount];
+        final Map<String, Integer> resourceIds = new HashMap<>(resourceCount);
+        final int[] readerCounts = new int[resourceCount];
+        final Set<String> discardedResources = new HashSet<>();
+        final Map<String, List<DeployerInfo>> readersByName = new HashMap<>();
+        for (DeployerInfo deployerInfo : deployers) {
+            for (String name : deployerInfo.getConsumed().keySet()) {
+                readersByName.computeIfAbsent(name, DeployerExecutionImpl::newArrayList).add(deployerInfo);
+            }
+        }
+        final ResourceInfo[] resourceInfos = allResources.values().toArray(new ResourceInfo[0]);
+        @SuppressWarnings("unchecked")
+        final List<DeployerInfo>[] lastReadersById = new List[resourceCount];
+        range(resourceCount, parallel).forEach(id -> {
+            final ResourceInfo resourceInfo = resourceInfos[id];
+            final String name = resourceInfo.getName();
+            if (! finalResources.contains(name) && ! activationResources.contains(name) && resourceInfo.getMultiplicity().in(Multiplicity.SINGLE, Multiplicity.MULTIPLE)) {
+                lastReadersById[id] = findLastReaders(readersByName.getOrDefault(name, emptyList()));
+            }
+        });
+        for (int id = 0; id < resourceCount; id ++) {
+            final ResourceInfo resourceInfo = resourceInfos[id];
+            final String name = resourceInfo.getName();
+            resourceNames[id] = name;
+            resourceIds.put(name, Integer.valueOf(id));
+            final List<DeployerInfo> lastReaders = lastReadersById[id];
+            if (lastReaders == null) {
+                continue;
+            }
+            if (lastReaders.isEmpty()) {
+                // nobody will ever look at it
+                discardedResources.add(name);
+            } else {
+                for (DeployerInfo reader : lastReaders) {
+                    reader.addRelease(id);
+                }
+                int count = lastReaders.size();
+                if (resourceInfo.isStreamed() && ! resourceInfo.getDeployersByPhase(Phase.PRODUCE).isEmpty()) {
+                    // the stream itself holds the resource until its last contributor is done
+                    count ++;
+                }
+                readerCounts[id] = count;
+            }
+        }
+
+        if (builderCount < allBuilders.size()) {
+            Messages.log.prunedDeployers(allBuilders.size() - builderCount);
+        }
+        Messages.log.constructed(resourceCount, builderCount, Math.max(0L, System.nanoTime() - startTime) / 1000000L);
+
+        Map<String, Multiplicity> initialResourcesMap = new HashMap<>(initialResources.size());
+        for (String name : initialResources) {
+            initialResourcesMap.put(name, allResources.get(name).getMultiplicity());
+        }
+
+        Map<String, Integer> streamedResourcesMap = emptyMap();
+        for (ResourceInfo resourceInfo : allResources.values()) {
+            if (resourceInfo.isStreamed()) {
+                if (streamedResourcesMap.isEmpty()) {
+                    streamedResourcesMap = new HashMap<>();
+                }
+                streamedResourcesMap.put(resourceInfo.getName(), Integer.valueOf(resourceInfo.getDeployersByPhase(Phase.PRODUCE).size()));
+            }
+        }
+
+        final String[] finalResourceNames = finalResources.toArray(new String[0]);
+        final boolean[] finalResourceMultiple = new boolean[finalResourceNames.length];
+        for (int i = 0; i < finalResourceNames.length; i ++) {
+            finalResourceMultiple[i] = allResources.get(finalResourceNames[i]).getMultiplicity() == Multiplicity.MULTIPLE;
+        }
+
+        final DeployerChainImpl chain = new DeployerChainImpl(initialResourcesMap, finalResourceNames, finalResourceMultiple, streamedResourcesMap, resourceNames, resourceIds, readerCounts, discardedResources, deployers, initialDeployers, finalDeployers, createResultCache(cacheable));
+        chain.setSeed(newSeed(builders.toArray(new DeployerBuilderImpl[builderCount]), candidates, initialResourcesMap));
+        return chain;
+    }
+
+    public DeployerChain build(final Path snapshot) throws DeployerChainBuildException {
+        Assert.checkNotNullParam("snapshot", snapshot);
+        checkNotDeclared();
+        final long startTime = System.nanoTime();
+        final Map<String, DeployerBuilderImpl> buildersByIdentity = new TreeMap<>();
+        final DeployerBuilderImpl unidentified = getBuildersByIdentity(buildersByIdentity);
+        if (unidentified != null) {
+            Messages.log.snapshotNotUsable(snapshot, unidentified.getDeployer());
+            return build();
+        }
+        boolean cacheable = false;
+        for (DeployerBuilderImpl builder : buildersByIdentity.values()) {
+            cacheable |= builder.getFingerprint() != null;
+        }
+        final byte[] hash;
+        try {
+            hash = declarationHash(buildersByIdentity);
+            final DeployerChainImpl chain = ChainSnapshot.read(snapshot, hash, buildersByIdentity, createResultCache(cacheable));
+            if (chain != null) {
+                final DeployerBuilderImpl[] builders = new DeployerBuilderImpl[chain.getDeployerCount()];
+                for (int id = 0; id < builders.length; id ++) {
+                    builders[id] = buildersByIdentity.get(chain.getDeployer(id).getIdentity());
+                }
+                for (int id = 0; id < builders.length; id ++) {
+                    setActivation(chain.getDeployer(id), builders[id]);
+                }
+                chain.setSeed(newSeed(builders, null, chain.getInitialResources()));
+                Messages.log.loadedFromSnapshot(snapshot, chain.getResourceCount(), chain.getDeployerCount(), Math.max(0L, System.nanoTime() - startTime) / 1000000L);
+                return chain;
+            }
+        } catch (IOException e) {
+            Messages.log.snapshotReadFailed(snapshot, e);
+            return build();
+        }
+        final DeployerChainImpl chain = buildChain();
+        try {
+            ChainSnapshot.write(snapshot, hash, chain);
+        } catch (IOException e) {
+            Messages.log.snapshotWriteFailed(snapshot, e);
+        }
+        return chain;
+    }
+
+    public void writeSnapshot(final OutputStream os) throws DeployerChainBuildException, IOException {
+        Assert.checkNotNullParam("os", os);
+        final Map<String, DeployerBuilderImpl> buildersByIdentity = new TreeMap<>();
+        final DeployerBuilderImpl unidentified = getBuildersByIdentity(buildersByIdentity);
+        if (unidentified != null) {
+            throw Messages.log.snapshotRequiresIdentity(unidentified.getDeployer());
+        }
+        ChainSnapshot.write(os, declarationHash(buildersByIdentity), buildChain());
+    }
+
+    private void checkNotDeclared() {
+        for (DeployerBuilderImpl builder : allDeployerBuilders) {
+            if (builder.getDeployer() instanceof DeclaredDeployer) {
+                throw Messages.log.declaredDeployerNotBuildable(builder.getIdentity());
+            }
+        }
+    }
+
+    /**
+     * Collect the deployer builders by their identity.
+     *
+     * @param buildersByIdentity the map to populate
+     * @return the first builder without a unique identity, or {@code null} if all identities are unique
+     */
+    private DeployerBuilderImpl getBuildersByIdentity(final Map<String, DeployerBuilderImpl> buildersByIdentity) {
+        for (DeployerBuilderImpl builder : allDeployerBuilders) {
+            final String identity = builder.getIdentity();
+            if (identity == null || buildersByIdentity.putIfAbsent(identity, builder) != null) {
+                return builder;
+            }
+        }
+        return null;
+    }
+
+    private Seed newSeed(final DeployerBuilderImpl[] builders, final int[][] candidates, final Map<String, Multiplicity> initialResources) {
+        // keep the pruned deployers so that a derived chain can bring them back
+        final Set<DeployerBuilderImpl> used = newSetFromMap(new IdentityHashMap<>(builders.length));
+        used.addAll(Arrays.asList(builders));
+        final List<DeployerBuilderImpl> pruned = new ArrayList<>();
+        for (DeployerBuilderImpl builder : allDeployerBuilders) {
+            if (! used.contains(builder)) {
+                pruned.add(builder);
+            }
+        }
+        return new Seed(builders, pruned.toArray(new DeployerBuilderImpl[pruned.size()]), candidates, initialResources, new HashSet<>(finalResources), resultCacheSize, persistentResultStore, pruneUnusedDeployers, new HashMap<>(resourceCodecs));
+    }
+
+    private ResultCache createResultCache(final boolean cacheable) {
+        final int resultCacheSize = this.resultCacheSize;
+        final PersistentResultStore persistentResultStore = this.persistentResultStore;
+        return cacheable && (resultCacheSize > 0 || persistentResultStore != null) ? new ResultCache(resultCacheSize, persistentResultStore, new HashMap<>(resourceCodecs)) : null;
+    }
+
+    /**
+     * Compute the hash of everything which determines the shape of the built chain, in a canonical order.
+     */
+    private byte[] declarationHash(final Map<String, DeployerBuilderImpl> buildersByIdentity) throws IOException {
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream os = new DataOutputStream(baos)) {
+            os.writeInt(ChainSnapshot.VERSION);
+            writeNames(os, new TreeSet<>(initialResources));
+            writeNames(os, new TreeSet<>(finalResources));
+            os.writeBoolean(pruneUnusedDeployers);
+            final Map<String, ResourceInfo> resources = new TreeMap<>(allResources);
+            os.writeInt(resources.size());
+            for (ResourceInfo resourceInfo : resources.values()) {
+                os.writeUTF(resourceInfo.getName());
+                os.writeByte(resourceInfo.getMultiplicity().ordinal());
+                for (Phase phase : Phase.values()) {
+                    final Mode mode = resourceInfo.getMode(phase);
+                    os.writeByte(mode == null ? -1 : mode.ordinal());
+                }
+            }
+            os.writeInt(buildersByIdentity.size());
+            for (DeployerBuilderImpl builder : buildersByIdentity.values()) {
+                os.writeUTF(builder.getIdentity());
+                final Map<String, Phase> builderResources = new TreeMap<>(builder.getResources());
+                final Set<String> streamed = builder.getStreamed();
+                os.writeInt(builderResources.size());
+                for (Map.Entry<String, Phase> entry : builderResources.entrySet()) {
+                    os.writeUTF(entry.getKey());
+                    os.writeByte(entry.getValue().ordinal());
+                    os.writeBoolean(streamed.contains(entry.getKey()));
+                }
+                writeNames(os, new TreeSet<>(builder.getClaims()));
+                os.writeBoolean(builder.getFingerprint() != null);
+                os.writeBoolean(builder.isSideEffectFree());
+                writeNames(os, new TreeSet<>(builder.getConditions().keySet()));
+            }
+        }
+        return messageDigest.digest(baos.toByteArray());
+    }
+
+    private static void writeNames(final DataOutputStream os, final Set<String> names) throws IOException {
+        os.writeInt(names.size());
+        for (String name : names) {
+            os.writeUTF(name);
+        }
+    }
+
+    /**
+     * The number of deployers from which the chain is built in parallel, using the common fork/join pool.
+     */
+    private static final int PARALLEL_BUILD_THRESHOLD = 2048;
+
+    /**
+     * The maximum number of readers of a resource for which the readers which are implied by other readers are
+     * eliminated.  Beyond this size, every reader counts down the resource, which is correct but slightly more costly
+     * at run time.
+     */
+    private static final int MAX_READER_REDUCTION = 64;
+
+    private static List<DeployerInfo> findLastReaders(final List<DeployerInfo> readers) {
+        final int size = readers.size();
+        if (size == 1 || size > MAX_READER_REDUCTION) {
+            return readers;
+        }
+        final List<DeployerInfo> lastReaders = new ArrayList<>(size);
+        outer: for (DeployerInfo reader : readers) {
+            for (DeployerInfo other : readers) {
+                if (other != reader && other.implies(reader)) {
+                    // the other reader always completes after this one
+                    continue outer;
+                }
+            }
+            lastReaders.add(reader);
+        }
+        return lastReaders;
+    }
+
+    /**
+     * Find the deployers which have side effects or contribute to a final resource, along with every deployer which
+     * they must follow.
+     *
+     * @param builders all deployer builders, in registration order
+     * @return the used deployer builders, in registration order
+     */
+    private List<DeployerBuilderImpl> findUsedDeployers(final List<DeployerBuilderImpl> builders) {
+        final Set<DeployerBuilderImpl> used = newSetFromMap(new IdentityHashMap<>(builders.size()));
+        final ArrayDeque<DeployerBuilderImpl> queue = new ArrayDeque<>();
+        for (DeployerBuilderImpl builder : builders) {
+            if (! builder.isSideEffectFree()) {
+                used.add(builder);
+                queue.add(builder);
+            }
+        }
+        for (String name : finalResources) {
+            for (Phase phase : Phase.values()) {
+                for (DeployerBuilderImpl builder : allResources.get(name).getDeployersByPhase(phase)) {
+                    if (used.add(builder)) {
+                        queue.add(builder);
+                    }
+                }
+            }
+        }
+        DeployerBuilderImpl builder;
+        while ((builder = queue.poll()) != null) {
+            // unlike findCandidates, a stream consumer needs every producer of its stream
+            for (Map.Entry<String, Phase> entry : builder.getResources().entrySet()) {
+                final ResourceInfo resourceInfo = allResources.get(entry.getKey());
+                for (Phase targetPhase = entry.getValue().previous(); targetPhase != null; targetPhase = targetPhase.previous()) {
+                    for (DeployerBuilderImpl dependency : resourceInfo.getDeployersByPhase(targetPhase)) {
+                        if (used.add(dependency)) {
+                            queue.add(dependency);
+                        }
+                    }
+                }
+            }
+        }
+        if (used.size() == builders.size()) {
+            return builders;
+        }
+        final List<DeployerBuilderImpl> list = new ArrayList<>(used.size());
+        for (DeployerBuilderImpl candidate : builders) {
+            if (used.contains(candidate)) {
+                list.add(candidate);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Find the deployers which must complete before the given deployer can run, before any reduction.
+     */
+    private int[] findCandidates(final DeployerBuilderImpl builder, final Map<DeployerBuilderImpl, Integer> builderIndexes) {
+        final Set<Integer> candidates = new LinkedHashSet<>();
+        final Set<String> streamed = builder.getStreamed();
+        for (Map.Entry<String, Phase> entry : builder.getResources().entrySet()) {
+            final String name = entry.getKey();
+            final ResourceInfo resourceInfo = allResources.get(name);
+            // a stream consumer only waits for the deployers which precede the producers
+            final Phase startPhase = streamed.contains(name) ? Phase.PRODUCE : entry.getValue();
+            for (Phase targetPhase = startPhase.previous(); targetPhase != null; targetPhase = targetPhase.previous()) {
+                for (DeployerBuilderImpl dependency : resourceInfo.getDeployersByPhase(targetPhase)) {
+                    candidates.add(builderIndexes.get(dependency));
+                }
+            }
+        }
+        final int[] array = new int[candidates.size()];
+        int i = 0;
+        for (Integer candidate : candidates) {
+            array[i ++] = candidate.intValue();
+        }
+        return array;
+    }
+
+    /**
+     * Sort the deployers into levels, such that every deployer only depends on deployers of earlier levels.
+     */
+    private List<int[]> computeLevels(final List<DeployerBuilderImpl> builders, final int[][] candidates) throws DeployerChainBuildException {
+        final int count = builders.size();
+        final int[] remaining = new int[count];
+        final int[] dependentCounts = new int[count];
+        for (int i = 0; i < count; i ++) {
+            remaining[i] = candidates[i].length;
+            for (int candidate : candidates[i]) {
+                dependentCounts[candidate] ++;
+            }
+        }
+        // the reverse edges
+        final int[][] dependents = new int[count][];
+        for (int i = 0; i < count; i ++) {
+            dependents[i] = new int[dependentCounts[i]];
+            dependentCounts[i] = 0;
+        }
+        for (int i = 0; i < count; i ++) {
+            for (int candidate : candidates[i]) {
+                dependents[candidate][dependentCounts[candidate] ++] = i;
+            }
+        }
+        final List<int[]> levels = new ArrayList<>();
+        int[] level = new int[count];
+        int levelSize = 0;
+        for (int i = 0; i < count; i ++) {
+            if (remaining[i] == 0) {
+                level[levelSize ++] = i;
+            }
+        }
+        int placed = 0;
+        while (levelSize > 0) {
+            final int[] current = Arrays.copyOf(level, levelSize);
+            levels.add(current);
+            placed += levelSize;
+            levelSize = 0;
+            for (int i : current) {
+                for (int dependent : dependents[i]) {
+                    if (-- remaining[dependent] == 0) {
+                        level[levelSize ++] = dependent;
+                    }
+                }
+            }
+        }
+        if (placed < count) {
+            // only the deployers which could not be placed can be on a loop
+            final boolean[] unplaced = new boolean[count];
+            for (int i = 0; i < count; i ++) {
+                unplaced[i] = remaining[i] > 0;
+            }
+            throw loopsDetected(builders, LoopFinder.findLoops(candidates, unplaced));
+        }
+        return levels;
+    }
+
+    /**
+     * Ensure that no contributor to a stream must follow a consumer of the stream.  A stream consumer does not wait
+     * for the contributors, so such a loop is not found when the deployers are leveled, but the stream would never be
+     * complete.
+     */
+    private void checkStreamLoops(final List<DeployerBuilderImpl> builders, final int[][] candidates, final Map<DeployerBuilderImpl, Integer> builderIndexes) throws DeployerChainBuildException {
+        final int count = builders.size();
+        int[][] edges = null;
+        for (int i = 0; i < count; i ++) {
+            final Set<String> streamed = builders.get(i).getStreamed();
+            if (streamed.isEmpty()) {
+                continue;
+            }
+            if (edges == null) {
+                edges = candidates.clone();
+            }
+            // the consumer needs every contributor to complete before it can
+            final Set<Integer> targets = new LinkedHashSet<>();
+            for (int candidate : candidates[i]) {
+                targets.add(Integer.valueOf(candidate));
+            }
+            for (String name : streamed) {
+                for (DeployerBuilderImpl contributor : allResources.get(name).getDeployersByPhase(Phase.PRODUCE)) {
+                    targets.add(builderIndexes.get(contributor));
+                }
+            }
+            final int[] array = new int[targets.size()];
+            int j = 0;
+            for (Integer target : targets) {
+                array[j ++] = target.intValue();
+            }
+            edges[i] = array;
+        }
+        if (edges != null) {
+            final boolean[] all = new boolean[count];
+            Arrays.fill(all, true);
+            final List<int[]> loops = LoopFinder.findLoops(edges, all);
+            if (! loops.isEmpty()) {
+                throw loopsDetected(builders, loops);
+            }
+        }
+    }
+
+    private DeployerChainBuildException loopsDetected(final List<DeployerBuilderImpl> builders, final List<int[]> loops) {
+        final StringBuilder b = new StringBuilder();
+        for (int[] loop : loops) {
+            if (b.length() > 0) {
+                b.append("; ");
+            }
+            for (int i = 0; i < loop.length; i ++) {
+                final DeployerBuilderImpl builder = builders.get(loop[i]);
+                final DeployerBuilderImpl next = builders.get(loop[(i + 1) % loop.length]);
+                b.append(describe(builder)).append(" --[").append(findLink(builder, next)).append("]--> ");
+            }
+            b.append(describe(builders.get(loop[0])));
+        }
+        return Messages.log.loopsDetected(loops.size(), b.toString());
+    }
+
+    private static String describe(final DeployerBuilderImpl builder) {
+        final String identity = builder.getIdentity();
+        return '"' + (identity == null ? builder.getDeployer().toString() : identity) + '"';
+    }
+
+    /**
+     * Find the resource through which a deployer must follow another.
+     */
+    private String findLink(final DeployerBuilderImpl builder, final DeployerBuilderImpl dependency) {
+        // a stream consumer must also wait for the contributors of the stream to complete
+        for (Map.Entry<String, Phase> entry : builder.getResources().entrySet()) {
+            final ResourceInfo resourceInfo = allResources.get(entry.getKey());
+            for (Phase targetPhase = entry.getValue().previous(); targetPhase != null; targetPhase = targetPhase.previous()) {
+                if (resourceInfo.getDeployersByPhase(targetPhase).contains(dependency)) {
+                    return entry.getKey();
+                }
+            }
+        }
+        // should not happen, but don't hide the loop itself
+        return "?";
+    }
+
+    private static boolean declaresAny(final DeployerBuilderImpl builder, final Set<String> names) {
+        for (String name : builder.getResources().keySet()) {
+            if (names.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] remap(final int[] oldIds, final int[] oldToNew) {
+        final int[] newIds = new int[oldIds.length];
+        for (int i = 0; i < oldIds.length; i ++) {
+            newIds[i] = oldToNew[oldIds[i]];
+            assert newIds[i] != -1;
+        }
+        return newIds;
+    }
+
+    private DeployerInfo createOne(final DeployerBuilderImpl builder, final Set<DeployerInfo> dependencies) {
+        // construct the (unwired) deployer info
+
+        Map<String, Multiplicity> produces = emptyMap();
+        Map<String, Multiplicity> consumes = emptyMap();
+        Set<String> streamsFed = emptySet();
+
+        final Map<String, Phase> resources = builder.getResources();
+        final Set<String> streamed = builder.getStreamed();
+        for (Map.Entry<String, Phase> entry : resources.entrySet()) {
+            final String name = entry.getKey();
+            final Phase phase = entry.getValue();
+            ResourceInfo resourceInfo = allResources.get(name);
+            final Multiplicity multiplicity = resourceInfo.getMultiplicity();
+            // calculate produces / consumes
+            if (multiplicity != Multiplicity.SYMBOLIC) {
+                if (phase == Phase.CONSUME || phase == Phase.DESTROY) {
+                    if (consumes.isEmpty()) {
+                        consumes = singletonMap(name, multiplicity);
+                    } else if (consumes.size() == 1) {
+                        consumes = new HashMap<>(consumes);
+                        consumes.put(name, multiplicity);
+                    } else {
+                        consumes.put(name, multiplicity);
+                    }
+                } else if (phase == Phase.PRODUCE) {
+                    assert multiplicity != Multiplicity.AUTOMATIC; // should be impossible
+                    if (produces.isEmpty()) {
+                        produces = singletonMap(name, multiplicity);
+                    } else if (produces.size() == 1) {
+                        produces = new HashMap<>(produces);
+                        produces.put(name, multiplicity);
+                    } else {
+                        produces.put(name, multiplicity);
+                    }
+                    if (resourceInfo.isStreamed()) {
+                        if (streamsFed.isEmpty()) {
+                            streamsFed = new HashSet<>();
+                        }
+                        streamsFed.add(name);
+                    }
+                }
+            }
+        }
+
+        final DeployerInfo deployerInfo = new DeployerInfo(
+            builder.getDeployer(),
+            consumes,
+            produces,
+            streamed.isEmpty() ? emptySet() : new HashSet<>(streamed),
+            streamsFed,
+            builder.getClaims().isEmpty() ? emptySet() : new HashSet<>(builder.getClaims()),
+            builder.getFingerprint(),
+            builder.getIdentity(),
+            dependencies,
+            new HashSet<>()
+        );
+        setActivation(deployerInfo, builder);
+        return deployerInfo;
+    }
+
+    private void setActivation(final DeployerInfo deployerInfo, final DeployerBuilderImpl builder) {
+        final Map<String, Predicate<Object>> conditions = builder.getConditions();
+        deployerInfo.setActivation(conditions.isEmpty() ? emptyMap() : new HashMap<>(conditions), isPrunable(builder));
+    }
+
+    /**
+     * Determine whether a deployer may be left out of an execution in which nothing needs it.
+     */
+    private boolean isPrunable(final DeployerBuilderImpl builder) {
+        if (! pruneUnusedDeployers || ! builder.isSideEffectFree()) {
+            return false;
+        }
+        for (String name : builder.getResources().keySet()) {
+            if (finalResources.contains(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addDependency(final DeployerInfo newDependency, final Set<DeployerInfo> dependencies) {
+        final Iterator<DeployerInfo> iterator = dependencies.iterator();
+        while (iterator.hasNext()) {
+            final DeployerInfo myDependency = iterator.next();
+            if (myDependency.implies(newDependency)) {
+                // an existing dependency already implies the new dependency
+                return;
+            } else if (newDependency.implies(myDependency)) {
+                // the new dependency is better because it also implies the existing one
+                iterator.remove();
+            }
+        }
+        dependencies.add(newDependency);
+    }
+
+    /**
+     * The declarations a chain was built from, from which new chains can be {@linkplain DeployerChain#derive() derived}.
+     */
+    static final class Seed {
+        // deployer id -> builder
+        final DeployerBuilderImpl[] builders;
+        // the builders which were pruned from the chain
+        final DeployerBuilderImpl[] pruned;
+        // deployer id -> unreduced dependency ids, or null if unknown
+        final int[][] candidates;
+        final Map<String, Multiplicity> initialResources;
+        final Set<String> finalResources;
+        final int resultCacheSize;
+        final PersistentResultStore persistentResultStore;
+        final boolean pruneUnusedDeployers;
+        final Map<String, ResourceCodec<?>> resourceCodecs;
+
+        Seed(final DeployerBuilderImpl[] builders, final DeployerBuilderImpl[] pruned, final int[][] candidates, final Map<String, Multiplicity> initialResources, final Set<String> finalResources, final int resultCacheSize, final PersistentResultStore persistentResultStore, final boolean pruneUnusedDeployers, final Map<String, ResourceCodec<?>> resourceCodecs) {
+            this.builders = builders;
+            this.pruned = pruned;
+            this.candidates = candidates;
+            this.initialResources = initialResources;
+            this.finalResources = finalResources;
+            this.resultCacheSize = resultCacheSize;
+            this.persistentResultStore = persistentResultStore;
+            this.pruneUnusedDeployers = pruneUnusedDeployers;
+            this.resourceCodecs = resourceCodecs;
+        }
+    }
+
+    /**
+     * The stand-in for a deployer which is only {@linkplain #declareDeployer(String) declared}; a chain which contains
+     * one is only ever written as a snapshot, and never executed.
+     */
+    private static final class DeclaredDeployer implements Deployer {
+        private final String identity;
+
+        DeclaredDeployer(final String identity) {
+            this.identity = identity;
+        }
+
+        public void deploy(final DeploymentContext context) {
+            throw Assert.unreachableCode();
+        }
+
+        public String toString() {
+            return identity;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.CLASS;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Declare a deployer chain which is precompiled by the chain processor of the {@code wildfly-deployer-processor}
+ * artifact, which must be on the annotation processor path.  The processor generates a class named after the annotated
+ * type with a {@code _Chain} suffix, in the same package, whose static {@code build()} method returns the chain formed
+ * by every {@link ChainDeployer} which names the annotated type.  The deployers of a chain must be compiled together
+ * with its definition.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+@Documented
+@Retention(CLASS)
+@Target(TYPE)
+public @interface DeployerChainDefinition {
+
+    /**
+     * The initial resources of the chain.
+     *
+     * @return the resource names
+     * @see DeployerChainBuilder#addInitialResource(String)
+     */
+    String[] initialResources() default {};
+
+    /**
+     * The initial multiple resources of the chain.
+     *
+     * @return the resource names
+     * @see DeployerChainBuilder#addInitialMultiResource(String)
+     */
+    String[] initialMultiResources() default {};
+
+    /**
+     * The final resources of the chain.
+     *
+     * @return the resource names
+     * @see DeployerChainBuilder#addFinalResource(String)
+     */
+    String[] finalResources() default {};
+
+    /**
+     * Whether unused side-effect free deployers are left out of the chain.
+     *
+     * @return {@code true} to prune unused deployers
+     * @see DeployerChainBuilder#setPruneUnusedDeployers(boolean)
+     */
+    boolean pruneUnusedDeployers() default false;
+}
@@ -0,0 +1,329 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.wildfly.common.Assert;
+
+/**
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class DeployerChainImpl implements DeployerChain {
+    private final Map<String, Multiplicity> initialResources;
+    private final String[] finalResourceNames;
+    private final Map<String, Integer> finalResourceIndexes;
+    private final boolean[] finalResourceMultiple;
+    // streamed resource name -> number of contributing deployers
+    private final Map<String, Integer> streamedResources;
+    private final String[] resourceNames;
+    private final Map<String, Integer> resourceIds;
+    // resource id -> number of last readers which must complete before the resource is released
+    private final int[] readerCounts;
+    // non-final resources which are never consumed
+    private final Set<String> discardedResources;
+    // deployer id -> deployer
+    private final DeployerInfo[] deployers;
+    private final Set<DeployerInfo> initialDeployers;
+    private final Set<DeployerInfo> finalDeployers;
+    // the results of cacheable deployers, or null if there are none
+    private final ResultCache resultCache;
+    // the declarations of the chain, or null if it was loaded without them; set before the chain is published
+    private DeployerChainBuilderImpl.Seed seed;
+    // the flattened execution plan, or null until the chain is first executed or simulated
+    private volatile ExecutionPlan executionPlan;
+    // the ids of the deployers which have activation conditions, or null if not yet known
+    private volatile int[] conditionalIds;
+
+    DeployerChainImpl(final Map<String, Multiplicity> initialResources, final String[] finalResourceNames, final boolean[] finalResourceMultiple, final Map<String, Integer> streamedResources, final String[] resourceNames, final Map<String, Integer> resourceIds, final int[] readerCounts, final Set<String> discardedResources, final DeployerInfo[] deployers, final Set<DeployerInfo> initialDeployers, final Set<DeployerInfo> finalDeployers, final ResultCache resultCache) {
+        this.initialResources = initialResources;
+        this.finalResourceNames = finalResourceNames;
+        this.finalResourceMultiple = finalResourceMultiple;
+        final Map<String, Integer> finalResourceIndexes = new HashMap<>(finalResourceNames.length);
+        for (int i = 0; i < finalResourceNames.length; i ++) {
+            finalResourceIndexes.put(finalResourceNames[i], Integer.valueOf(i));
+        }
+        this.finalResourceIndexes = finalResourceIndexes;
+        this.streamedResources = streamedResources;
+        this.resourceNames = resourceNames;
+        this.resourceIds = resourceIds;
+        this.readerCounts = readerCounts;
+        this.discardedResources = discardedResources;
+        this.deployers = deployers;
+        this.initialDeployers = initialDeployers;
+        this.finalDeployers = finalDeployers;
+        this.resultCache = resultCache;
+    }
+
+    Map<String, Multiplicity> getInitialResources() {
+        return initialResources;
+    }
+
+    int getFinalResourceCount() {
+        return finalResourceNames.length;
+    }
+
+    String getFinalResourceName(int index) {
+        return finalResourceNames[index];
+    }
+
+    int getFinalResourceIndex(String name) {
+        final Integer index = finalResourceIndexes.get(name);
+        return index == null ? -1 : index.intValue();
+    }
+
+    boolean isFinalResourceMultiple(int index) {
+        return finalResourceMultiple[index];
+    }
+
+    Map<String, Integer> getStreamedResources() {
+        return streamedResources;
+    }
+
+    String getResourceName(int id) {
+        return resourceNames[id];
+    }
+
+    int getResourceCount() {
+        return resourceNames.length;
+    }
+
+    int getResourceId(String name) {
+        return resourceIds.get(name).intValue();
+    }
+
+    int[] getReaderCounts() {
+        return readerCounts;
+    }
+
+    boolean isDiscarded(String name) {
+        return discardedResources.contains(name);
+    }
+
+    int getDeployerCount() {
+        return deployers.length;
+    }
+
+    DeployerInfo getDeployer(int id) {
+        return deployers[id];
+    }
+
+    /**
+     * Get the deployers which are affected by a change to the given initial resources.  These are the deployers which
+     * consume a changed resource or whose activation depends on one, the given additional deployers, and everything
+     * which depends on them.  Since the items of a multiple resource cannot be attributed to their contributors, every
+     * contributor to a multiple resource which is changed or is produced by an affected deployer is affected as well.
+     *
+     * @param changedResources the names of the changed initial resources
+     * @param added the deployers which are affected regardless of the changed resources, indexed by deployer id, or
+     *      {@code null} for none
+     * @return the affected deployers, indexed by deployer id
+     */
+    boolean[] getAffectedDeployers(Set<String> changedResources, boolean[] added) {
+        final DeployerInfo[] deployers = this.deployers;
+        final boolean[] affected = new boolean[deployers.length];
+        // multiple resource name -> contributing deployers
+        final Map<String, List<DeployerInfo>> contributors = new HashMap<>();
+        for (DeployerInfo deployerInfo : deployers) {
+            for (Map.Entry<String, Multiplicity> entry : deployerInfo.getProduced().entrySet()) {
+                if (entry.getValue() == Multiplicity.MULTIPLE) {
+                    contributors.computeIfAbsent(entry.getKey(), ignored -> new ArrayList<>()).add(deployerInfo);
+                }
+            }
+        }
+        final ArrayDeque<DeployerInfo> queue = new ArrayDeque<>();
+        for (DeployerInfo deployerInfo : deployers) {
+            if (added != null && added[deployerInfo.getId()]) {
+                markAffected(affected, queue, deployerInfo);
+                continue;
+            }
+            for (String name : deployerInfo.getConsumed().keySet()) {
+                if (changedResources.contains(name)) {
+                    markAffected(affected, queue, deployerInfo);
+                    break;
+                }
+            }
+            // an activation condition reads its resource without consuming it
+            for (String name : deployerInfo.getConditions().keySet()) {
+                if (changedResources.contains(name)) {
+                    markAffected(affected, queue, deployerInfo);
+                    break;
+                }
+            }
+        }
+        for (String name : changedResources) {
+            for (DeployerInfo contributor : contributors.getOrDefault(name, Collections.emptyList())) {
+                markAffected(affected, queue, contributor);
+            }
+        }
+        DeployerInfo deployerInfo;
+        while ((deployerInfo = queue.poll()) != null) {
+            for (DeployerInfo dependent : deployerInfo.getDependents()) {
+                markAffected(affected, queue, dependent);
+            }
+            for (String name : deployerInfo.getProduced().keySet()) {
+                for (DeployerInfo contributor : contributors.getOrDefault(name, Collections.emptyList())) {
+                    markAffected(affected, queue, contributor);
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Get the deployers which run in an execution with the given initial resources.  A deployer is inactive if one of
+     * its activation conditions does not hold.  A prunable deployer only runs if some deployer which is not prunable,
+     * other than an inactive one, must follow it.
+     *
+     * @param singleResources the provided single initial resources
+     * @param multiResources the provided multiple initial resources
+     * @return the deployers which run, indexed by deployer id, or {@code null} if every deployer runs
+     */
+    boolean[] getActiveDeployers(final Map<String, Object> singleResources, final Map<String, List<Object>> multiResources) {
+        int[] conditionalIds = this.conditionalIds;
+        if (conditionalIds == null) {
+            // racing threads compute the same ids
+            this.conditionalIds = conditionalIds = findConditionalIds();
+        }
+        final DeployerInfo[] deployers = this.deployers;
+        boolean[] inactive = null;
+        for (int id : conditionalIds) {
+            for (Map.Entry<String, Predicate<Object>> entry : deployers[id].getConditions().entrySet()) {
+                final String name = entry.getKey();
+                final Object value = initialResources.get(name) == Multiplicity.MULTIPLE ? multiResources.getOrDefault(name, Collections.emptyList()) : DeployerExecutionImpl.unwrap(singleResources.get(name));
+                if (! entry.getValue().test(value)) {
+                    if (inactive == null) {
+                        inactive = new boolean[deployers.length];
+                    }
+                    inactive[id] = true;
+                    break;
+                }
+            }
+        }
+        if (inactive == null) {
+            return null;
+        }
+        // walk back from the deployers which must run; the dependencies of an inactive deployer are still followed
+        // because they may have been reduced away from the deployers which need them
+        final boolean[] active = new boolean[deployers.length];
+        final boolean[] visited = new boolean[deployers.length];
+        final ArrayDeque<DeployerInfo> queue = new ArrayDeque<>();
+        for (DeployerInfo deployerInfo : deployers) {
+            final int id = deployerInfo.getId();
+            if (! deployerInfo.isPrunable() && ! inactive[id]) {
+                visited[id] = true;
+                queue.add(deployerInfo);
+            }
+        }
+        DeployerInfo deployerInfo;
+        while ((deployerInfo = queue.poll()) != null) {
+            active[deployerInfo.getId()] = ! inactive[deployerInfo.getId()];
+            for (DeployerInfo dependency : deployerInfo.getDependencies()) {
+                final int id = dependency.getId();
+                if (! visited[id]) {
+                    visited[id] = true;
+                    queue.add(dependency);
+                }
+            }
+        }
+        return active;
+    }
+
+    private int[] findConditionalIds() {
+        final DeployerInfo[] deployers = this.deployers;
+        int count = 0;
+        for (DeployerInfo deployerInfo : deployers) {
+            if (! deployerInfo.getConditions().isEmpty()) {
+                count ++;
+            }
+        }
+        final int[] ids = new int[count];
+        count = 0;
+        for (DeployerInfo deployerInfo : deployers) {
+            if (! deployerInfo.getConditions().isEmpty()) {
+                ids[count ++] = deployerInfo.getId();
+            }
+        }
+        return ids;
+    }
+
+    private static void markAffected(final boolean[] affected, final ArrayDeque<DeployerInfo> queue, final DeployerInfo deployerInfo) {
+        final int id = deployerInfo.getId();
+        if (! affected[id]) {
+            affected[id] = true;
+            queue.add(deployerInfo);
+        }
+    }
+
+    Set<DeployerInfo> getInitialDeployers() {
+        return initialDeployers;
+    }
+
+    Set<DeployerInfo> getFinalDeployers() {
+        return finalDeployers;
+    }
+
+    ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    DeployerChainBuilderImpl.Seed getSeed() {
+        return seed;
+    }
+
+    void setSeed(final DeployerChainBuilderImpl.Seed seed) {
+        this.seed = seed;
+    }
+
+    public DeployerChainBuilder derive() {
+        if (seed == null) {
+            throw Messages.log.cannotDerive();
+        }
+        return new DeployerChainBuilderImpl(this);
+    }
+
+    ExecutionPlan getExecutionPlan() {
+        ExecutionPlan executionPlan = this.executionPlan;
+        if (executionPlan == null) {
+            // racing compilations produce equivalent plans
+            this.executionPlan = executionPlan = ExecutionPlan.compile(this);
+        }
+        return executionPlan;
+    }
+
+    public DeployerChainAnalysis analyze() {
+        return DeployerChainAnalysis.analyze(this);
+    }
+
+    public DeployerChainSimulator simulator() {
+        return new DeployerChainSimulator(this);
+    }
+
+    public DeployerExecutionBuilder createExecutionBuilder(final String name) {
+        Assert.checkNotNullParam("name", name);
+        return new DeployerExecutionBuilderImpl(this, name);
+    }
+}
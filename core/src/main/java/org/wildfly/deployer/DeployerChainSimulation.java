@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The result of a {@linkplain DeployerChainSimulator simulated} run of a deployer chain.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public final class DeployerChainSimulation {
+    private final int cores;
+    private final DeployerChainSimulator.Policy policy;
+    private final int deployerCount;
+    private final long makespan;
+    private final long busyTime;
+    private final long totalWait;
+    private final long maxWait;
+    private final int maxReady;
+
+    DeployerChainSimulation(final int cores, final DeployerChainSimulator.Policy policy, final int deployerCount, final long makespan, final long busyTime, final long totalWait, final long maxWait, final int maxReady) {
+        this.cores = cores;
+        this.policy = policy;
+        this.deployerCount = deployerCount;
+        this.makespan = makespan;
+        this.busyTime = busyTime;
+        this.totalWait = totalWait;
+        this.maxWait = maxWait;
+        this.maxReady = maxReady;
+    }
+
+    /**
+     * Get the number of simulated cores.
+     *
+     * @return the number of cores
+     */
+    public int getCores() {
+        return cores;
+    }
+
+    /**
+     * Get the simulated scheduling policy.
+     *
+     * @return the policy (not {@code null})
+     */
+    public DeployerChainSimulator.Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Get the time from the start of the run until the last deployer completed.
+     *
+     * @param timeUnit the time unit to return
+     * @return the makespan
+     */
+    public long getMakespan(TimeUnit timeUnit) {
+        return timeUnit.convert(makespan, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the fraction of the available core time which was spent running deployers.
+     *
+     * @return the utilization, between 0 and 1; 0 if the run took no time
+     */
+    public double getUtilization() {
+        return makespan == 0L ? 0.0 : (double) busyTime / ((double) makespan * cores);
+    }
+
+    /**
+     * Get the average time a deployer spent ready to run while waiting for a free core.
+     *
+     * @param timeUnit the time unit to return
+     * @return the average queue wait
+     */
+    public long getAverageQueueWait(TimeUnit timeUnit) {
+        return deployerCount == 0 ? 0L : timeUnit.convert(totalWait / deployerCount, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the longest time a deployer spent ready to run while waiting for a free core.
+     *
+     * @param timeUnit the time unit to return
+     * @return the maximum queue wait
+     */
+    public long getMaxQueueWait(TimeUnit timeUnit) {
+        return timeUnit.convert(maxWait, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the largest number of deployers which were ready to run but waiting for a free core at once.
+     *
+     * @return the maximum queue length
+     */
+    public int getMaxQueueLength() {
+        return maxReady;
+    }
+
+    public String toString() {
+        return String.format("Simulated %d deployers on %d cores (%s): makespan %dms, utilization %.0f%%, average queue wait %dms, maximum queue wait %dms",
+            Integer.valueOf(deployerCount), Integer.valueOf(cores), policy, Long.valueOf(getMakespan(TimeUnit.MILLISECONDS)),
+            Double.valueOf(getUtilization() * 100.0), Long.valueOf(getAverageQueueWait(TimeUnit.MILLISECONDS)), Long.valueOf(getMaxQueueWait(TimeUnit.MILLISECONDS)));
+    }
+}
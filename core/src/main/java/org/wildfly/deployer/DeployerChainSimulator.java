@@ -0,0 +1,281 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.wildfly.common.Assert;
+
+/**
+ * A simulator which predicts how a {@linkplain DeployerChain#simulator() deployer chain} performs on a given number of
+ * cores, without running any deployer.  Each deployer occupies one core for its cost, and starts as soon as all of the
+ * deployers it follows are complete and a core is free; when more deployers are ready than cores are free, the
+ * {@linkplain Policy scheduling policy} decides which run first.  Time is virtual, and equal inputs always give equal
+ * results.  A deployer which consumes a stream holds its core until all of the stream's contributors are complete, so
+ * it finishes no earlier than the last of them.  Claims, undeploy actions and executor overhead are not modelled.
+ * <p>
+ * The cost of a deployer is the first of: the cost set for the deployer instance, the cost set for its
+ * {@linkplain DeployerBuilder#identifiedBy(String) identity}, the moving average of its recorded durations in earlier
+ * executions of the chain (unless disabled), and the default cost.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public final class DeployerChainSimulator {
+    private final DeployerChainImpl deployerChain;
+    private final Map<Deployer, Long> costsByDeployer = new IdentityHashMap<>();
+    private final Map<String, Long> costsByIdentity = new HashMap<>();
+    private long defaultCost;
+    private boolean useRecordedDurations = true;
+    private int cores = 1;
+    private Policy policy = Policy.FIFO;
+
+    DeployerChainSimulator(final DeployerChainImpl deployerChain) {
+        this.deployerChain = deployerChain;
+    }
+
+    /**
+     * The order in which ready deployers are given free cores.  Ties are broken by deployer registration order.
+     */
+    public enum Policy {
+        /**
+         * The deployer which became ready first runs first, which is how the chain's executions behave on a
+         * first-in, first-out executor.
+         */
+        FIFO,
+        /**
+         * The ready deployer with the highest cost runs first.
+         */
+        LONGEST_FIRST,
+        /**
+         * The ready deployer with the costliest path to the end of the chain, including itself, runs first.
+         */
+        CRITICAL_PATH_FIRST,
+        ;
+    }
+
+    /**
+     * Set the number of cores.  The default is 1.
+     *
+     * @param cores the number of cores (must be at least 1)
+     * @return this simulator
+     */
+    public DeployerChainSimulator setCores(int cores) {
+        Assert.checkMinimumParameter("cores", 1, cores);
+        this.cores = cores;
+        return this;
+    }
+
+    /**
+     * Set the scheduling policy.  The default is {@link Policy#FIFO}.
+     *
+     * @param policy the policy (must not be {@code null})
+     * @return this simulator
+     */
+    public DeployerChainSimulator setPolicy(Policy policy) {
+        Assert.checkNotNullParam("policy", policy);
+        this.policy = policy;
+        return this;
+    }
+
+    /**
+     * Set the cost of every registration of a deployer instance.
+     *
+     * @param deployer the deployer (must not be {@code null})
+     * @param cost the cost (must not be negative)
+     * @param timeUnit the time unit of the cost (must not be {@code null})
+     * @return this simulator
+     */
+    public DeployerChainSimulator setCost(Deployer deployer, long cost, TimeUnit timeUnit) {
+        Assert.checkNotNullParam("deployer", deployer);
+        costsByDeployer.put(deployer, Long.valueOf(toNanos(cost, timeUnit)));
+        return this;
+    }
+
+    /**
+     * Set the cost of the deployer with the given identity.
+     *
+     * @param identity the deployer identity (must not be {@code null})
+     * @param cost the cost (must not be negative)
+     * @param timeUnit the time unit of the cost (must not be {@code null})
+     * @return this simulator
+     */
+    public DeployerChainSimulator setCost(String identity, long cost, TimeUnit timeUnit) {
+        Assert.checkNotNullParam("identity", identity);
+        costsByIdentity.put(identity, Long.valueOf(toNanos(cost, timeUnit)));
+        return this;
+    }
+
+    /**
+     * Set the cost of the deployers which have no other cost.  The default is zero.
+     *
+     * @param cost the cost (must not be negative)
+     * @param timeUnit the time unit of the cost (must not be {@code null})
+     * @return this simulator
+     */
+    public DeployerChainSimulator setDefaultCost(long cost, TimeUnit timeUnit) {
+        defaultCost = toNanos(cost, timeUnit);
+        return this;
+    }
+
+    /**
+     * Establish whether the recorded durations of the deployers are used as their costs.  The default is {@code true}.
+     *
+     * @param useRecordedDurations {@code true} to use recorded durations, {@code false} to ignore them
+     * @return this simulator
+     */
+    public DeployerChainSimulator setUseRecordedDurations(boolean useRecordedDurations) {
+        this.useRecordedDurations = useRecordedDurations;
+        return this;
+    }
+
+    private static long toNanos(final long cost, final TimeUnit timeUnit) {
+        Assert.checkMinimumParameter("cost", 0L, cost);
+        Assert.checkNotNullParam("timeUnit", timeUnit);
+        return timeUnit.toNanos(cost);
+    }
+
+    private long getCost(final DeployerInfo deployerInfo) {
+        Long cost = costsByDeployer.get(deployerInfo.getDeployer());
+        if (cost == null && deployerInfo.getIdentity() != null) {
+            cost = costsByIdentity.get(deployerInfo.getIdentity());
+        }
+        if (cost != null) {
+            return cost.longValue();
+        }
+        final long recorded = useRecordedDurations ? deployerInfo.getAverageDuration() : 0L;
+        return recorded != 0L ? recorded : defaultCost;
+    }
+
+    /**
+     * Run the simulation with the current settings.
+     *
+     * @return the result (not {@code null})
+     */
+    public DeployerChainSimulation simulate() {
+        final DeployerChainImpl deployerChain = this.deployerChain;
+        final ExecutionPlan plan = deployerChain.getExecutionPlan();
+        final int count = deployerChain.getDeployerCount();
+        final long[] costs = new long[count];
+        for (int id = 0; id < count; id ++) {
+            costs[id] = getCost(deployerChain.getDeployer(id));
+        }
+        // the priority of each deployer, higher first
+        final long[] priorities = new long[count];
+        if (policy == Policy.LONGEST_FIRST) {
+            System.arraycopy(costs, 0, priorities, 0, count);
+        } else if (policy == Policy.CRITICAL_PATH_FIRST) {
+            // every dependent precedes its dependencies in creation order
+            for (int id : plan.getCreationOrder()) {
+                long tail = 0L;
+                for (int dependentId : plan.getDependentIds(id)) {
+                    tail = Math.max(tail, priorities[dependentId]);
+                }
+                priorities[id] = tail + costs[id];
+            }
+        }
+        final long[] readyTimes = new long[count];
+        final PriorityQueue<Integer> ready = new PriorityQueue<>(Math.max(1, count), (id1, id2) -> {
+            final int i1 = id1.intValue();
+            final int i2 = id2.intValue();
+            int res = Long.compare(priorities[i2], priorities[i1]);
+            if (res == 0) {
+                res = Long.compare(readyTimes[i1], readyTimes[i2]);
+            }
+            return res == 0 ? Integer.compare(i1, i2) : res;
+        });
+        final long[] finishTimes = new long[count];
+        final PriorityQueue<Integer> running = new PriorityQueue<>(Math.max(1, cores), (id1, id2) -> {
+            final int i1 = id1.intValue();
+            final int i2 = id2.intValue();
+            final int res = Long.compare(finishTimes[i1], finishTimes[i2]);
+            return res == 0 ? Integer.compare(i1, i2) : res;
+        });
+        final int[] remaining = new int[count];
+        for (int id = 0; id < count; id ++) {
+            remaining[id] = plan.getDependencyCount(id);
+        }
+        // deployer id -> number of stream contributors not yet complete
+        final int[] contributorsRemaining = new int[count];
+        for (int id = 0; id < count; id ++) {
+            contributorsRemaining[id] = plan.getStreamContributorCount(id);
+        }
+        final long[] startTimes = new long[count];
+        // deployers which have started but wait for the contributors of a stream
+        final boolean[] waiting = new boolean[count];
+        int waitingCount = 0;
+        for (int id : plan.getInitialIds()) {
+            ready.add(Integer.valueOf(id));
+        }
+        long now = 0L;
+        long busyTime = 0L;
+        long totalWait = 0L;
+        long maxWait = 0L;
+        int maxReady = 0;
+        int completed = 0;
+        while (completed < count) {
+            // give the free cores to the ready deployers
+            while (running.size() + waitingCount < cores && ! ready.isEmpty()) {
+                final int id = ready.poll().intValue();
+                final long wait = now - readyTimes[id];
+                totalWait += wait;
+                maxWait = Math.max(maxWait, wait);
+                busyTime += costs[id];
+                startTimes[id] = now;
+                if (contributorsRemaining[id] > 0) {
+                    waiting[id] = true;
+                    waitingCount ++;
+                } else {
+                    finishTimes[id] = now + costs[id];
+                    running.add(Integer.valueOf(id));
+                }
+            }
+            maxReady = Math.max(maxReady, ready.size());
+            if (running.isEmpty()) {
+                // only stream consumers hold the cores, and their contributors are still queued
+                throw Messages.log.simulationStalled(cores);
+            }
+            // complete everything which finishes next
+            now = finishTimes[running.peek().intValue()];
+            while (! running.isEmpty() && finishTimes[running.peek().intValue()] == now) {
+                final int id = running.poll().intValue();
+                completed ++;
+                for (int consumerId : plan.getStreamConsumerIds(id)) {
+                    if (-- contributorsRemaining[consumerId] == 0 && waiting[consumerId]) {
+                        // the stream is complete, so the consumer finishes its remaining work
+                        waiting[consumerId] = false;
+                        waitingCount --;
+                        finishTimes[consumerId] = Math.max(now, startTimes[consumerId] + costs[consumerId]);
+                        running.add(Integer.valueOf(consumerId));
+                    }
+                }
+                for (int dependentId : plan.getDependentIds(id)) {
+                    if (-- remaining[dependentId] == 0) {
+                        readyTimes[dependentId] = now;
+                        ready.add(Integer.valueOf(dependentId));
+                    }
+                }
+            }
+        }
+        return new DeployerChainSimulation(cores, policy, count, now, busyTime, totalWait, maxWait, maxReady);
+    }
+}
@@ -20,12 +20,15 @@ package org.wildfly.deployer;
 
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Set;
+import java.util.Iterator;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Supplier;
 
 import org.wildfly.common.Assert;
 
@@ -40,8 +43,13 @@ final class DeployerContextImpl implements DeploymentContext, Dependent {
     private final AtomicInteger stateAndCount;
     private final Dependent[] dependents;
     private final ConcurrentStack<Action<?, ?>> undeployActions = new ConcurrentStack<>();
-    private final ConcurrentStack<Dependency> dependencies = new ConcurrentStack<>();
     private final CopyOnWriteArraySet<Thread> runningThreads = new CopyOnWriteArraySet<>();
+    // the result cache key of this run, or null if the result is not to be cached
+    private volatile ResultCache.Key cacheKey;
+    // guarded by itself; the resources produced so far, as name and value pairs, if the result is to be cached
+    private ArrayList<Object> produced;
+    // the time at which the deployer was invoked, or 0 if its result was not computed by it
+    private volatile long startTime;
 
     private static final int STATE_WAITING      = 0;
     private static final int STATE_WAITING_FD   = 1;
@@ -52,12 +60,11 @@ final class DeployerContextImpl implements DeploymentContext, Dependent {
     private static final int STATE_CANCELLED    = 6;
     private static final int STATE_DONE         = 7;
 
-    DeployerContextImpl(final DeployerInfo deployerInfo, final DeployerExecutionImpl execution, final Dependent[] dependents) {
+    DeployerContextImpl(final DeployerInfo deployerInfo, final DeployerExecutionImpl execution, final Dependent[] dependents, final int dependencyCount) {
         this.deployerInfo = deployerInfo;
         this.execution = execution;
         this.dependents = dependents;
-        final Set<DeployerInfo> dependencies = deployerInfo.getDependencies();
-        stateAndCount = new AtomicInteger(encodeState(STATE_WAITING, dependencies.size()));
+        stateAndCount = new AtomicInteger(encodeState(STATE_WAITING, dependencyCount));
     }
 
     private static int encodeState(int state, int count) {
@@ -89,11 +96,77 @@ final class DeployerContextImpl implements DeploymentContext, Dependent {
                 assert multiplicity == Multiplicity.MULTIPLE;
                 execution.produceMulti(name, item);
             }
+            record(name, item);
         } else {
             throw Messages.log.cannotProduce(name);
         }
     }
 
+    public void produceLazily(final String name, final Supplier<?> supplier) {
+        Assert.checkNotNullParam("name", name);
+        Assert.checkNotNullParam("supplier", supplier);
+        checkValid();
+        final Multiplicity multiplicity = deployerInfo.getProduced().get(name);
+        if (multiplicity == null || multiplicity == Multiplicity.SYMBOLIC) {
+            throw Messages.log.cannotProduce(name);
+        } else if (multiplicity != Multiplicity.SINGLE) {
+            throw Messages.log.cannotProduceLazily(name);
+        }
+        if (execution.produceLazily(name, supplier) != null) {
+            // the supplier belongs to this run, so it cannot be replayed into another execution
+            cacheKey = null;
+        }
+    }
+
+    private void record(final String name, final Object item) {
+        if (cacheKey != null) {
+            final ArrayList<Object> produced = this.produced;
+            synchronized (produced) {
+                produced.add(name);
+                produced.add(item);
+            }
+        }
+    }
+
+    /**
+     * Store the result of this run in the result cache, if it is to be cached.
+     */
+    private void cacheResult() {
+        final ResultCache.Key cacheKey = this.cacheKey;
+        if (cacheKey == null || undeployActions.length() > 0) {
+            return;
+        }
+        final ArrayList<Object> produced = this.produced;
+        final String[] names;
+        final Object[] values;
+        synchronized (produced) {
+            final int count = produced.size() >> 1;
+            names = new String[count];
+            values = new Object[count];
+            for (int i = 0; i < count; i ++) {
+                names[i] = (String) produced.get(i << 1);
+                values[i] = produced.get((i << 1) + 1);
+            }
+        }
+        execution.getResultCache().put(deployerInfo, cacheKey, new ResultCache.Entry(names, values));
+    }
+
+    /**
+     * Produce the resources of a cached result again.
+     *
+     * @param entry the cached result
+     */
+    private void replay(final ResultCache.Entry entry) {
+        for (int i = 0; i < entry.getCount(); i ++) {
+            final String name = entry.getName(i);
+            if (deployerInfo.getProduced().get(name) == Multiplicity.MULTIPLE) {
+                execution.produceMulti(name, entry.getValue(i));
+            } else {
+                execution.produceSingle(name, entry.getValue(i));
+            }
+        }
+    }
+
     public Object consume(final String name) {
         Assert.checkNotNullParam("name", name);
         checkValid();
@@ -116,23 +189,47 @@ final class DeployerContextImpl implements DeploymentContext, Dependent {
             if (multiplicity != Multiplicity.MULTIPLE) {
                 throw Messages.log.cannotConsumeSingleResourceAsMultiple(name);
             }
+            if (deployerInfo.getStreamed().contains(name)) {
+                throw Messages.log.cannotConsumeStreamAsMultiple(name);
+            }
             return execution.consumeMulti(name);
         } else {
             throw Messages.log.cannotConsume(name);
         }
     }
 
+    public Iterator<?> consumeStream(final String name) throws IllegalArgumentException {
+        Assert.checkNotNullParam("name", name);
+        checkValid();
+        if (! deployerInfo.getStreamed().contains(name)) {
+            throw Messages.log.cannotConsumeAsStream(name);
+        }
+        return execution.consumeStream(name);
+    }
+
     public boolean isAvailableToConsume(final String name) {
         return deployerInfo.getConsumed().containsKey(name);
     }
 
     public boolean isRequiredToProduce(final String name) {
-        return deployerInfo.getProduced().containsKey(name);
+        return deployerInfo.getProduced().containsKey(name) && execution.isRequiredToProduce(name);
     }
 
     public <T, U> void addUndeployAction(final BiConsumer<T, U> consumer, final T parameter1, final U parameter2) {
+        addUndeployAction(consumer, parameter1, parameter2, UNDEPLOY_COST_TRIVIAL);
+    }
+
+    public <T, U> void addUndeployAction(final BiConsumer<T, U> consumer, final T parameter1, final U parameter2, final int cost) {
+        Assert.checkNotNullParam("consumer", consumer);
+        Assert.checkMinimumParameter("cost", 1, cost);
         checkValid();
-        undeployActions.push(new Action<>(consumer, parameter1, parameter2));
+        undeployActions.push(new Action<>(consumer, parameter1, parameter2, cost));
+    }
+
+    public <T, U> void addAsyncUndeployAction(final BiFunction<T, U, ? extends CompletionStage<?>> function, final T parameter1, final U parameter2) {
+        Assert.checkNotNullParam("function", function);
+        checkValid();
+        undeployActions.push(new Action<>(function, parameter1, parameter2, UNDEPLOY_COST_TRIVIAL));
     }
 
     public boolean isCancelRequested() {
@@ -172,16 +269,18 @@ final class DeployerContextImpl implements DeploymentContext, Dependent {
                 return false;
             }
         } while (! stateAndCount.compareAndSet(oldVal, encodeState(STATE_DONE, 0)));
+        final long startTime = this.startTime;
+        if (startTime != 0L) {
+            deployerInfo.recordDuration(Math.max(0L, System.nanoTime() - startTime));
+        }
+        cacheResult();
         sendDependencyDone();
         Messages.log.tracef("Deployer %s succeeded", deployerInfo.getDeployer());
         return true;
     }
 
-    private UndeployerContext createUndeployerContext() {
-        return new UndeployerContext(
-            undeployActions.popAll(size -> size == 0 ? Action.NO_ACTIONS : new Action<?, ?>[size]),
-            dependencies.popAll(size -> size == 0 ? Dependency.NO_DEPENDENCIES : new Dependency[size])
-        );
+    private Action<?, ?>[] takeUndeployActions() {
+        return undeployActions.popAll(size -> size == 0 ? Action.NO_ACTIONS : new Action<?, ?>[size]);
     }
 
     public boolean setFailed(final DeploymentException reason) {
@@ -194,6 +293,9 @@ final class DeployerContextImpl implements DeploymentContext, Dependent {
                 return false;
             }
         } while (! stateAndCount.compareAndSet(oldVal, encodeState(STATE_FAILED, 0)));
+        if (reason != null) {
+            execution.addProblem(reason);
+        }
         Messages.log.tracef("Deployer %s failed", deployerInfo.getDeployer());
         sendDependencyFailed();
         return true;
@@ -218,8 +320,7 @@ final class DeployerContextImpl implements DeploymentContext, Dependent {
         return true;
     }
 
-    public void dependencyDone(final Dependency dependency) {
-        dependencies.push(dependency);
+    public void dependencyDone() {
         final AtomicInteger stateAndCount = this.stateAndCount;
         int oldVal, oldState, oldCount, newVal;
         do {
@@ -283,8 +384,7 @@ final class DeployerContextImpl implements DeploymentContext, Dependent {
         }
     }
 
-    public void dependencyFailed(final Dependency dependency) {
-        dependencies.push(dependency);
+    public void dependencyFailed() {
         final AtomicInteger stateAndCount = this.stateAndCount;
         int oldVal, oldState, oldCount, newVal;
         do {
@@ -319,8 +419,7 @@ final class DeployerContextImpl implements DeploymentContext, Dependent {
         }
     }
 
-    public void dependencyCancelled(final Dependency dependency) {
-        dependencies.push(dependency);
+    public void dependencyCancelled() {
         final AtomicInteger stateAndCount = this.stateAndCount;
         int oldVal, oldState, oldCount, newVal;
         do {
@@ -383,23 +482,23 @@ final class DeployerContextImpl implements DeploymentContext, Dependent {
     }
 
     private void sendDependencyDone() {
-        Dependency dependency = createUndeployerContext();
+        execution.deployerFinished(deployerInfo, takeUndeployActions());
         for (Dependent dependent : dependents) {
-            dependent.dependencyDone(dependency);
+            dependent.dependencyDone();
         }
     }
 
     private void sendDependencyFailed() {
-        Dependency dependency = createUndeployerContext();
+        execution.deployerFinished(deployerInfo, takeUndeployActions());
         for (Dependent dependent : dependents) {
-            dependent.dependencyFailed(dependency);
+            dependent.dependencyFailed();
         }
     }
 
     private void sendDependencyCancelled() {
-        Dependency dependency = createUndeployerContext();
+        execution.deployerFinished(deployerInfo, takeUndeployActions());
         for (Dependent dependent : dependents) {
-            dependent.dependencyCancelled(dependency);
+            dependent.dependencyCancelled();
         }
     }
 
@@ -416,9 +515,26 @@ final class DeployerContextImpl implements DeploymentContext, Dependent {
             setSucceeded();
             return;
         }
+        execution.whenClaimsReleased(deployerInfo, this::submit);
+    }
+
+    private void submit() {
         try {
             execution.getExecutor().execute(() -> {
                 try {
+                    final ResultCache.Key cacheKey = execution.getCacheKey(deployerInfo);
+                    if (cacheKey != null) {
+                        final ResultCache.Entry cached = execution.getResultCache().get(deployerInfo, cacheKey);
+                        if (cached != null) {
+                            Messages.log.tracef("Deployer %s result taken from cache", deployerInfo.getDeployer());
+                            replay(cached);
+                            setSucceeded();
+                            return;
+                        }
+                        produced = new ArrayList<>();
+                        this.cacheKey = cacheKey;
+                    }
+                    startTime = System.nanoTime();
                     deployerInfo.getDeployer().deploy(DeployerContextImpl.this);
                 } catch (Throwable t) {
                     if (! setFailed(Messages.log.deploymentStepException(t))) {
@@ -0,0 +1,139 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.Collection;
+import java.util.concurrent.Executor;
+
+/**
+ * A builder for a deployer execution.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public interface DeployerExecutionBuilder {
+
+    /**
+     * Get the name of this deployment.  The resultant string is useful for diagnostic messages and does not have
+     * any other significance.
+     *
+     * @return the name of this deployment (not {@code null})
+     */
+    String getDeploymentName();
+
+    /**
+     * Provide an initial resource item.
+     *
+     * @param name the resource name (must not be {@code null})
+     * @param item the resource value
+     * @return this builder
+     * @throws IllegalArgumentException if this deployer chain was not declared to initially produce {@code name},
+     *      or if {@code name} is {@code null}, or if the resource does not allow multiplicity but this method is called
+     *      more than one time
+     */
+    DeployerExecutionBuilder provide(String name, Object item);
+
+    /**
+     * Provide multiple initial resource items.
+     *
+     * @param name the resource name (must not be {@code null})
+     * @param items the resource values (may be {@code null})
+     * @return this builder
+     * @throws IllegalArgumentException if this deployer chain was not declared to initially produce {@code name},
+     *      or if {@code name} is {@code null}, or if the resource does not allow multiplicity but this method is called
+     *      to provide more than one item
+     */
+    DeployerExecutionBuilder provideAll(String name, Collection<?> items);
+
+    /**
+     * Provide multiple initial resource items.
+     *
+     * @param name the resource name (must not be {@code null})
+     * @param items the resource values (may be {@code null})
+     * @return this builder
+     * @throws IllegalArgumentException if this deployer chain was not declared to initially produce {@code name},
+     *      or if {@code name} is {@code null}, or if the resource does not allow multiplicity but this method is called
+     *      to provide more than one item
+     */
+    DeployerExecutionBuilder provideAll(String name, Object... items);
+
+    /**
+     * Establish whether the deployment should be rolled back automatically if it fails.  If so, the undeploy actions of
+     * the deployers which ran are started as soon as the failure is detected, rather than waiting for the result to be
+     * {@linkplain DeploymentResult#undeploy(Executor) undeployed}.  A cancelled execution is not rolled back.  The
+     * default is {@code false}.
+     *
+     * @param rollbackOnFailure {@code true} to roll back on failure, {@code false} otherwise
+     * @return this builder
+     * @see FailedDeploymentResult#getRollback()
+     */
+    DeployerExecutionBuilder setRollbackOnFailure(boolean rollbackOnFailure);
+
+    /**
+     * Establish whether the result of the deployment may later be {@linkplain #redeployIncrementally(SuccessfulDeploymentResult, Executor) redeployed incrementally}.
+     * If so, the result retains every resource produced during the deployment, not just the final ones, for as long
+     * as it is deployed.  Results of incremental redeploys are always retained.  The default is {@code false}.
+     *
+     * @param incremental {@code true} to retain resources for incremental redeploy, {@code false} otherwise
+     * @return this builder
+     */
+    DeployerExecutionBuilder setIncremental(boolean incremental);
+
+    /**
+     * Construct and run the execution.
+     *
+     * @param executor the executor to run on (must not be {@code null})
+     * @return the execution
+     */
+    DeployerExecution execute(Executor executor);
+
+    /**
+     * Construct and run the execution as a replacement for a previous deployment.  The undeploy of {@code previous} is
+     * started immediately, and the new deployment runs alongside it.  A deployer which
+     * {@linkplain DeployerBuilder#claims(String) claims} a name does not start until every deployer of the previous
+     * deployment holding the same claim has finished undeploying; all other deployers proceed without waiting.  Since
+     * {@code previous} is then already being undeployed, it cannot be {@linkplain DeploymentResult#undeploy(Executor)
+     * undeployed} again.
+     *
+     * @param previous the result of the deployment being replaced (must not be {@code null})
+     * @param executor the executor to run on (must not be {@code null})
+     * @return the execution
+     * @throws IllegalArgumentException if {@code previous} was not produced by this framework
+     * @throws IllegalStateException if {@code previous} was already undeployed
+     */
+    DeployerExecution redeploy(DeploymentResult previous, Executor executor);
+
+    /**
+     * Construct and run the execution as an incremental redeploy of a previous deployment.  The initial resources
+     * provided to this builder are taken to be the ones which changed; all others keep the values they had in
+     * {@code previous}.  Only the deployers which consume a changed resource, directly or through other deployers,
+     * are undeployed and run again, and the resources produced by every other deployer are reused as-is.  The affected
+     * deployers start once their previous instances have been undeployed, which may be tracked through
+     * {@code previous.}{@link DeploymentResult#undeploy(Executor) undeploy()}.  The undeploy actions of the deployers
+     * which did not run again are carried over to the new result.
+     *
+     * @param previous the result of the deployment being replaced, which must have been produced by this deployer
+     *      chain with {@linkplain #setIncremental(boolean) incremental} enabled (must not be {@code null})
+     * @param executor the executor to run on (must not be {@code null})
+     * @return the execution
+     * @throws IllegalArgumentException if {@code previous} was not produced by this deployer chain or did not retain
+     *      its resources
+     * @throws IllegalStateException if {@code previous} was already undeployed
+     */
+    DeployerExecution redeployIncrementally(SuccessfulDeploymentResult previous, Executor executor);
+}
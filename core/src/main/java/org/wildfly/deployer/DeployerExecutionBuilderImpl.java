@@ -26,6 +26,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 
+import org.wildfly.common.Assert;
+
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
@@ -34,6 +36,8 @@ final class DeployerExecutionBuilderImpl implements DeployerExecutionBuilder {
     private final String name;
     private final Map<String, Object> initialSingleResources = new HashMap<>();
     private final Map<String, List<Object>> initialMultiResources = new HashMap<>();
+    private boolean rollbackOnFailure;
+    private boolean incremental;
 
     DeployerExecutionBuilderImpl(final DeployerChainImpl deployerChain, final String name) {
         this.deployerChain = deployerChain;
@@ -83,7 +87,47 @@ final class DeployerExecutionBuilderImpl implements DeployerExecutionBuilder {
         return this;
     }
 
+    public DeployerExecutionBuilder setRollbackOnFailure(final boolean rollbackOnFailure) {
+        this.rollbackOnFailure = rollbackOnFailure;
+        return this;
+    }
+
+    public DeployerExecutionBuilder setIncremental(final boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
     public DeployerExecution execute(final Executor executor) {
+        checkInitialResources();
+        return start(executor, null);
+    }
+
+    public DeployerExecution redeploy(final DeploymentResult previous, final Executor executor) {
+        Assert.checkNotNullParam("previous", previous);
+        Assert.checkNotNullParam("executor", executor);
+        if (! (previous instanceof DeployerExecutionImpl.ResultState)) {
+            throw Messages.log.unknownDeploymentResult(previous);
+        }
+        checkInitialResources();
+        return start(executor, ((DeployerExecutionImpl.ResultState) previous).startUndeploy(executor));
+    }
+
+    public DeployerExecution redeployIncrementally(final SuccessfulDeploymentResult previous, final Executor executor) {
+        Assert.checkNotNullParam("previous", previous);
+        Assert.checkNotNullParam("executor", executor);
+        if (! (previous instanceof DeployerExecutionImpl.SuccessState)) {
+            throw Messages.log.unknownDeploymentResult(previous);
+        }
+        return DeployerExecutionImpl.redeployIncrementally((DeployerExecutionImpl.SuccessState) previous, deployerChain, initialSingleResources, initialMultiResources, executor, rollbackOnFailure, name);
+    }
+
+    private DeployerExecution start(final Executor executor, final UndeployExecutionImpl previousUndeploy) {
+        final DeployerExecutionImpl deployerExecution = new DeployerExecutionImpl(deployerChain, executor, initialSingleResources, initialMultiResources, rollbackOnFailure, incremental, previousUndeploy, name);
+        deployerExecution.run();
+        return deployerExecution;
+    }
+
+    private void checkInitialResources() {
         final Map<String, Multiplicity> initialResources = deployerChain.getInitialResources();
         for (Map.Entry<String, Multiplicity> entry : initialResources.entrySet()) {
             final String name = entry.getKey();
@@ -98,8 +142,5 @@ final class DeployerExecutionBuilderImpl implements DeployerExecutionBuilder {
                 }
             }
         }
-        final DeployerExecutionImpl deployerExecution = new DeployerExecutionImpl(deployerChain, executor, initialSingleResources, initialMultiResources, name);
-        deployerExecution.run();
-        return deployerExecution;
     }
 }
@@ -0,0 +1,1128 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import static java.lang.Math.max;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.locks.LockSupport.park;
+import static java.util.concurrent.locks.LockSupport.unpark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import org.wildfly.common.Assert;
+
+/**
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class DeployerExecutionImpl implements DeployerExecution {
+    private final AtomicReference<State> stateRef;
+    private final String name;
+
+    private final DeployerChainImpl deployerChain;
+    private final ConcurrentMap<String, Object> singleResources;
+    private final ConcurrentMap<String, List<Object>> multiResources;
+    private final Map<String, ResourceStream> streams;
+    private final AtomicIntegerArray readersRemaining;
+    private final Executor executor;
+    private final boolean rollbackOnFailure;
+    private final boolean retainResources;
+    // deployer id -> whether the deployer runs in this execution; null if every deployer runs
+    private final boolean[] affected;
+    // deployer id -> whether the deployer ran in this execution or the ones it carries over; null if every deployer did
+    private final boolean[] ran;
+    // the undeploy of the deployment being replaced, if any; cleared once this execution completes
+    private volatile UndeployExecutionImpl previousUndeploy;
+    private final ConcurrentStack<DeploymentException> problems = new ConcurrentStack<>();
+    private final ConcurrentStack<LazyResource> lazyResources = new ConcurrentStack<>();
+    // deployer id -> undeploy actions registered by that deployer
+    private final Action<?, ?>[][] actionsById;
+    // deployer id -> ids of the resources it releases; null if every deployer runs, or resources are retained
+    private final int[][] releasesById;
+
+    DeployerExecutionImpl(final DeployerChainImpl deployerChain, final Executor executor, final Map<String, Object> initialSingleResources, final Map<String, List<Object>> initialMultiResources, final boolean rollbackOnFailure, final boolean retainResources, final UndeployExecutionImpl previousUndeploy, final String name) {
+        this(deployerChain, executor, initialSingleResources, initialMultiResources, new Action<?, ?>[deployerChain.getDeployerCount()][], deployerChain.getActiveDeployers(initialSingleResources, initialMultiResources), null, rollbackOnFailure, retainResources, previousUndeploy, name);
+    }
+
+    private DeployerExecutionImpl(final DeployerChainImpl deployerChain, final Executor executor, final Map<String, Object> initialSingleResources, final Map<String, List<Object>> initialMultiResources, final Action<?, ?>[][] actionsById, final boolean[] affected, final boolean[] ran, final boolean rollbackOnFailure, final boolean retainResources, final UndeployExecutionImpl previousUndeploy, final String name) {
+        this.deployerChain = deployerChain;
+        this.executor = executor;
+        this.rollbackOnFailure = rollbackOnFailure;
+        this.retainResources = retainResources;
+        this.affected = affected;
+        // a full execution runs exactly the deployers it affects
+        this.ran = ran == null ? affected : ran;
+        this.previousUndeploy = previousUndeploy;
+        this.name = name;
+        singleResources = new ConcurrentHashMap<>(initialSingleResources);
+        multiResources = new ConcurrentHashMap<>(initialMultiResources);
+        // initial resources which nobody reads need not be retained
+        singleResources.keySet().removeIf(deployerChain::isDiscarded);
+        multiResources.keySet().removeIf(deployerChain::isDiscarded);
+        this.actionsById = actionsById;
+        if (affected == null || retainResources) {
+            releasesById = null;
+            readersRemaining = new AtomicIntegerArray(deployerChain.getReaderCounts());
+        } else {
+            // the last readers of the chain may not run, so every running reader holds what it reads
+            releasesById = new int[affected.length][];
+            readersRemaining = new AtomicIntegerArray(countRunningReaders(releasesById));
+        }
+        final Map<String, Integer> streamedResources = deployerChain.getStreamedResources();
+        if (streamedResources.isEmpty()) {
+            streams = Collections.emptyMap();
+        } else {
+            streams = new ConcurrentHashMap<>(streamedResources.size());
+            for (Map.Entry<String, Integer> entry : streamedResources.entrySet()) {
+                final String resourceName = entry.getKey();
+                final List<Object> items = multiResources.computeIfAbsent(resourceName, DeployerExecutionImpl::newArrayList);
+                // a stream whose contributors do not run is already complete
+                final int contributors = affected == null ? entry.getValue().intValue() : countAffectedFeeders(resourceName);
+                streams.put(resourceName, new ResourceStream(resourceName, deployerChain.getResourceId(resourceName), items, contributors));
+            }
+        }
+        final int size = affected == null ? deployerChain.getFinalDeployers().size() : countAffectedFinalDeployers();
+        if (size == 0) {
+            final UndeployPlan undeployPlan = affected == null ? UndeployPlan.EMPTY : UndeployPlan.compile(deployerChain, actionsById);
+            stateRef = new AtomicReference<>(newSuccessState(0L, undeployPlan, Collections.emptySet()));
+            clearResources();
+            Messages.log.executionComplete(name, 0);
+        } else {
+            stateRef = new AtomicReference<>(new RunningState(size));
+        }
+        if (releasesById != null) {
+            // nothing which runs reads these
+            final int[] readerCounts = deployerChain.getReaderCounts();
+            for (int resourceId = 0; resourceId < readerCounts.length; resourceId ++) {
+                if (readerCounts[resourceId] > 0 && readersRemaining.get(resourceId) == 0) {
+                    release(resourceId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the running readers of each resource which the chain releases, and record the resources which each running
+     * deployer releases.
+     *
+     * @param releasesById the array to populate, indexed by deployer id
+     * @return the number of running readers of each resource, indexed by resource id
+     */
+    private int[] countRunningReaders(final int[][] releasesById) {
+        final DeployerChainImpl deployerChain = this.deployerChain;
+        final boolean[] affected = this.affected;
+        final int[] readerCounts = deployerChain.getReaderCounts();
+        final int[] counts = new int[readerCounts.length];
+        final int[] releases = new int[readerCounts.length];
+        for (int id = 0; id < affected.length; id ++) {
+            if (affected[id]) {
+                int size = 0;
+                for (String name : deployerChain.getDeployer(id).getConsumed().keySet()) {
+                    final int resourceId = deployerChain.getResourceId(name);
+                    if (readerCounts[resourceId] > 0) {
+                        releases[size ++] = resourceId;
+                        counts[resourceId] ++;
+                    }
+                }
+                releasesById[id] = Arrays.copyOf(releases, size);
+            }
+        }
+        for (Map.Entry<String, Integer> entry : deployerChain.getStreamedResources().entrySet()) {
+            final String resourceName = entry.getKey();
+            final int resourceId = deployerChain.getResourceId(resourceName);
+            if (readerCounts[resourceId] > 0 && countAffectedFeeders(resourceName) > 0) {
+                // the stream holds the resource until its last running contributor is done
+                counts[resourceId] ++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Start an incremental redeploy of a previous result.  Only the deployers affected by the changed initial resources
+     * are undeployed and run again; every other resource and undeploy action is carried over from the previous result.
+     * The affected deployers begin once the previous instances of the affected deployers have been undeployed.
+     *
+     * @param previous the previous result
+     * @param deployerChain the deployer chain
+     * @param changedSingleResources the new values of the changed single initial resources
+     * @param changedMultiResources the new values of the changed multiple initial resources
+     * @param executor the executor to use
+     * @param rollbackOnFailure {@code true} to roll back on failure
+     * @param name the deployment name
+     * @return the execution
+     */
+    static DeployerExecutionImpl redeployIncrementally(final SuccessState previous, final DeployerChainImpl deployerChain, final Map<String, Object> changedSingleResources, final Map<String, List<Object>> changedMultiResources, final Executor executor, final boolean rollbackOnFailure, final String name) {
+        if (previous.getDeployerChain() != deployerChain) {
+            throw Messages.log.differentDeployerChain(previous.getName());
+        }
+        // claim the previous result; from here on its remaining actions belong to the new one
+        final UndeployPlan previousPlan = previous.takeUndeployPlan();
+        final Retained retained = previous.takeRetained();
+        if (retained == null) {
+            previous.restoreUndeployPlan(previousPlan);
+            throw Messages.log.notIncremental(previous.getName());
+        }
+        final DeployerExecutionImpl execution;
+        final UndeployPlan undeployPlan;
+        try {
+            final Set<String> changed = new HashSet<>(changedSingleResources.keySet());
+            changed.addAll(changedMultiResources.keySet());
+            final Map<String, Object> singleResources = new HashMap<>(retained.singleResources);
+            final Map<String, List<Object>> multiResources = new HashMap<>(retained.multiResources);
+            singleResources.putAll(changedSingleResources);
+            multiResources.putAll(changedMultiResources);
+            final int deployerCount = deployerChain.getDeployerCount();
+            final boolean[] active = deployerChain.getActiveDeployers(singleResources, multiResources);
+            // the deployers which were left out last time but are needed now, such as the prunable deployers which
+            // only newly activated deployers need, must run as well
+            boolean[] needed = null;
+            if (retained.ran != null) {
+                for (int id = 0; id < deployerCount; id ++) {
+                    if (! retained.ran[id] && (active == null || active[id])) {
+                        if (needed == null) {
+                            needed = new boolean[deployerCount];
+                        }
+                        needed[id] = true;
+                    }
+                }
+            }
+            final boolean[] affected = deployerChain.getAffectedDeployers(changed, needed);
+            // activation is only evaluated again for the affected deployers
+            final boolean[] ran = new boolean[deployerCount];
+            boolean allRan = true;
+            final Action<?, ?>[][] undeployActions = new Action<?, ?>[deployerCount][];
+            final Action<?, ?>[][] keptActions = new Action<?, ?>[deployerCount][];
+            for (int id = 0; id < deployerCount; id ++) {
+                if (affected[id]) {
+                    undeployActions[id] = retained.actionsById[id];
+                    final Set<String> produced = deployerChain.getDeployer(id).getProduced().keySet();
+                    singleResources.keySet().removeAll(produced);
+                    multiResources.keySet().removeAll(produced);
+                    affected[id] = ran[id] = active == null || active[id];
+                } else {
+                    keptActions[id] = retained.actionsById[id];
+                    ran[id] = retained.ran == null || retained.ran[id];
+                }
+                allRan &= ran[id];
+            }
+            execution = new DeployerExecutionImpl(deployerChain, executor, singleResources, multiResources, keptActions, affected, allRan ? null : ran, rollbackOnFailure, true, null, name);
+            undeployPlan = UndeployPlan.compile(deployerChain, undeployActions);
+        } catch (Throwable t) {
+            // give the previous result back, so that it can still be undeployed
+            previous.restoreRetained(retained);
+            previous.restoreUndeployPlan(previousPlan);
+            throw t;
+        }
+        previous.startUndeploy(executor, undeployPlan).onComplete(execution::run);
+        return execution;
+    }
+
+    Dependent[] getBottomArray() {
+        return stateRef.get().dependentArray();
+    }
+
+    public String getDeploymentName() {
+        return name;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void cancel() {
+        stateRef.get().requestCancel();
+    }
+
+    public Status getStatus() {
+        return stateRef.get().getStatus();
+    }
+
+    public Status await() throws InterruptedException {
+        final AtomicReference<State> stateRef = this.stateRef;
+        State oldState = stateRef.get();
+        Status status = oldState.getStatus();
+        if (status == Status.EXECUTING) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            final Thread thread = Thread.currentThread();
+            if (! oldState.isWaitingFor(thread)) {
+                // CAS in our thread
+                State newState = new WaitingState(oldState, thread);
+                while (! stateRef.compareAndSet(oldState, newState)) {
+                    oldState = stateRef.get();
+                    status = oldState.getStatus();
+                    if (status != Status.EXECUTING) {
+                        return status;
+                    }
+                    assert ! oldState.isWaitingFor(thread);
+                    newState = new WaitingState(oldState, thread);
+                }
+            }
+            park(this);
+            oldState = stateRef.get();
+            status = oldState.getStatus();
+            while (status == Status.EXECUTING) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                park(this);
+                oldState = stateRef.get();
+                status = oldState.getStatus();
+            }
+        }
+        return status;
+    }
+
+    public SuccessfulDeploymentResult getSuccessfulResult() throws IllegalStateException {
+        return stateRef.get().getSuccessfulResult();
+    }
+
+    public FailedDeploymentResult getFailedResult() throws IllegalStateException {
+        return stateRef.get().getFailedResult();
+    }
+
+    public <T, U> void onComplete(final BiConsumer<T, U> consumer, final T param1, final U param2) {
+        final AtomicReference<State> stateRef = this.stateRef;
+        State oldState;
+        State newState;
+        Status status;
+        do {
+            oldState = stateRef.get();
+            status = oldState.getStatus();
+            if (status != Status.EXECUTING) {
+                executor.execute(() -> consumer.accept(param1, param2));
+                return;
+            }
+            newState = new OnCompleteState<>(oldState, consumer, param1, param2);
+        } while (! stateRef.compareAndSet(oldState, newState));
+    }
+
+    void run() {
+        final boolean[] affected = this.affected;
+        final DeployerChainImpl deployerChain = this.deployerChain;
+        final ExecutionPlan executionPlan = deployerChain.getExecutionPlan();
+        final DeployerContextImpl[] contexts = new DeployerContextImpl[deployerChain.getDeployerCount()];
+        final int[] roots;
+        int rootCount = 0;
+        if (affected == null) {
+            roots = executionPlan.getInitialIds();
+            rootCount = roots.length;
+        } else {
+            roots = new int[contexts.length];
+        }
+        // every dependent is created before its dependencies, so all contexts exist before the first one starts
+        for (int id : executionPlan.getCreationOrder()) {
+            if (affected != null && ! affected[id]) {
+                continue;
+            }
+            final int[] dependentIds = executionPlan.getDependentIds(id);
+            final int size = affected == null ? dependentIds.length : countAffected(dependentIds);
+            final Dependent[] dependents;
+            if (size == 0) {
+                dependents = getBottomArray();
+            } else {
+                dependents = new Dependent[size];
+                int i = 0;
+                for (int dependentId : dependentIds) {
+                    if (affected == null || affected[dependentId]) {
+                        dependents[i ++] = contexts[dependentId];
+                    }
+                }
+            }
+            final int dependencyCount;
+            if (affected == null) {
+                dependencyCount = executionPlan.getDependencyCount(id);
+            } else {
+                // in an incremental execution, dependencies which do not run again are already satisfied
+                dependencyCount = countAffected(deployerChain.getDeployer(id).getDependencies());
+                if (dependencyCount == 0) {
+                    roots[rootCount ++] = id;
+                }
+            }
+            contexts[id] = new DeployerContextImpl(deployerChain.getDeployer(id), this, dependents, dependencyCount);
+        }
+        for (int i = 0; i < rootCount; i ++) {
+            contexts[roots[i]].start();
+        }
+    }
+
+    private int countAffected(final int[] ids) {
+        final boolean[] affected = this.affected;
+        int count = 0;
+        for (int id : ids) {
+            if (affected[id]) {
+                count ++;
+            }
+        }
+        return count;
+    }
+
+    private int countAffected(final Set<DeployerInfo> deployerInfos) {
+        final boolean[] affected = this.affected;
+        if (affected == null) {
+            return deployerInfos.size();
+        }
+        int count = 0;
+        for (DeployerInfo deployerInfo : deployerInfos) {
+            if (affected[deployerInfo.getId()]) {
+                count ++;
+            }
+        }
+        return count;
+    }
+
+    private int countAffectedFinalDeployers() {
+        final boolean[] affected = this.affected;
+        int count = 0;
+        for (int id = 0; id < affected.length; id ++) {
+            if (affected[id] && countAffected(deployerChain.getDeployer(id).getDependents()) == 0) {
+                count ++;
+            }
+        }
+        return count;
+    }
+
+    private int countAffectedFeeders(final String resourceName) {
+        final boolean[] affected = this.affected;
+        int count = 0;
+        for (int id = 0; id < affected.length; id ++) {
+            if (affected[id] && deployerChain.getDeployer(id).getStreamsFed().contains(resourceName)) {
+                count ++;
+            }
+        }
+        return count;
+    }
+
+    static <T> ArrayList<T> newArrayList(String ignored) {
+        return new ArrayList<>();
+    }
+
+    void produceSingle(final String name, final Object item) {
+        if (deployerChain.isDiscarded(name)) {
+            return;
+        }
+        singleResources.putIfAbsent(name, item);
+    }
+
+    void produceMulti(final String name, final Object item) {
+        if (deployerChain.isDiscarded(name)) {
+            return;
+        }
+        final ResourceStream stream = streams.get(name);
+        if (stream != null) {
+            stream.add(item);
+        } else {
+            final List<Object> list = multiResources.computeIfAbsent(name, DeployerExecutionImpl::newArrayList);
+            synchronized (list) {
+                list.add(item);
+            }
+        }
+    }
+
+    LazyResource produceLazily(final String name, final Supplier<?> supplier) {
+        if (deployerChain.isDiscarded(name)) {
+            return null;
+        }
+        final LazyResource lazyResource = new LazyResource(name, supplier);
+        if (singleResources.putIfAbsent(name, lazyResource) == null) {
+            lazyResources.push(lazyResource);
+            return lazyResource;
+        }
+        return null;
+    }
+
+    Object consume(final String name) {
+        return unwrap(singleResources.get(name));
+    }
+
+    static Object unwrap(final Object value) {
+        return value instanceof LazyResource ? ((LazyResource) value).get() : value;
+    }
+
+    /**
+     * Report the lazily produced resources which were never consumed, other than final resources, which may still be.
+     *
+     * @return the names of the resources which were never consumed
+     */
+    Set<String> reportUnforcedLazyResources() {
+        Set<String> unforced = Collections.emptySet();
+        LazyResource lazyResource;
+        while ((lazyResource = lazyResources.pop()) != null) {
+            final String resourceName = lazyResource.getName();
+            if (! lazyResource.isForced() && deployerChain.getFinalResourceIndex(resourceName) == -1) {
+                Messages.log.lazyResourceNotForced(resourceName, name);
+                if (unforced.isEmpty()) {
+                    unforced = new HashSet<>();
+                }
+                unforced.add(resourceName);
+            }
+        }
+        return unforced.isEmpty() ? unforced : Collections.unmodifiableSet(unforced);
+    }
+
+    Collection<?> consumeMulti(final String name) {
+        return multiResources.getOrDefault(name, Collections.emptyList());
+    }
+
+    Iterator<?> consumeStream(final String name) {
+        return streams.get(name).iterator();
+    }
+
+    ResultCache getResultCache() {
+        return deployerChain.getResultCache();
+    }
+
+    /**
+     * Compute the result cache key of a deployer from the resources it consumes.
+     *
+     * @param deployerInfo the deployer
+     * @return the key, or {@code null} if the deployer is not cacheable or a resource could not be fingerprinted
+     */
+    ResultCache.Key getCacheKey(final DeployerInfo deployerInfo) {
+        final Fingerprint fingerprint = deployerInfo.getFingerprint();
+        if (fingerprint == null || deployerChain.getResultCache() == null) {
+            return null;
+        }
+        final String[] names = deployerInfo.getFingerprinted();
+        final Object[] fingerprints = new Object[names.length];
+        for (int i = 0; i < names.length; i ++) {
+            final String name = names[i];
+            final Object value = deployerInfo.getConsumed().get(name) == Multiplicity.MULTIPLE ? consumeMulti(name) : consume(name);
+            final Object result = fingerprint.fingerprint(name, value);
+            if (result == null) {
+                return null;
+            }
+            fingerprints[i] = result;
+        }
+        return new ResultCache.Key(deployerInfo.getId(), fingerprints);
+    }
+
+    boolean isRequiredToProduce(final String name) {
+        return ! deployerChain.isDiscarded(name);
+    }
+
+    /**
+     * Run a deployer's task once every claim of the deployer has been released by the deployment being replaced.
+     *
+     * @param deployerInfo the deployer
+     * @param task the task to run
+     */
+    void whenClaimsReleased(final DeployerInfo deployerInfo, final Runnable task) {
+        final Set<String> claims = deployerInfo.getClaims();
+        final UndeployExecutionImpl previousUndeploy = this.previousUndeploy;
+        if (previousUndeploy == null || claims.isEmpty()) {
+            task.run();
+            return;
+        }
+        final AtomicInteger remaining = new AtomicInteger(claims.size());
+        final Runnable countDown = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                task.run();
+            }
+        };
+        for (String claim : claims) {
+            previousUndeploy.whenClaimReleased(claim, countDown);
+        }
+    }
+
+    void addProblem(final DeploymentException problem) {
+        problems.push(problem);
+    }
+
+    void deployerFinished(final DeployerInfo deployerInfo, final Action<?, ?>[] undeployActions) {
+        if (undeployActions.length > 0) {
+            actionsById[deployerInfo.getId()] = undeployActions;
+        }
+        for (String name : deployerInfo.getStreamsFed()) {
+            final ResourceStream stream = streams.get(name);
+            if (stream.contributorDone()) {
+                readerDone(stream.getResourceId());
+            }
+        }
+        final int[][] releasesById = this.releasesById;
+        for (int resourceId : releasesById == null ? deployerInfo.getReleases() : releasesById[deployerInfo.getId()]) {
+            readerDone(resourceId);
+        }
+    }
+
+    private void readerDone(final int resourceId) {
+        if (readersRemaining.decrementAndGet(resourceId) == 0 && ! retainResources) {
+            // nobody will read this resource again
+            release(resourceId);
+        }
+    }
+
+    private void release(final int resourceId) {
+        final String name = deployerChain.getResourceName(resourceId);
+        singleResources.remove(name);
+        multiResources.remove(name);
+        streams.remove(name);
+    }
+
+    /**
+     * Capture the values of the chain's final resources, indexed by final resource index.  Multiple resources are
+     * captured as immutable lists.
+     *
+     * @return the final resource values
+     */
+    private Object[] snapshotFinalResources() {
+        final DeployerChainImpl deployerChain = this.deployerChain;
+        final int count = deployerChain.getFinalResourceCount();
+        if (count == 0) {
+            return NO_VALUES;
+        }
+        final Object[] values = new Object[count];
+        for (int i = 0; i < count; i ++) {
+            final String name = deployerChain.getFinalResourceName(i);
+            if (deployerChain.isFinalResourceMultiple(i)) {
+                final List<Object> list = multiResources.get(name);
+                values[i] = list == null || list.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(asList(list.toArray()));
+            } else {
+                values[i] = singleResources.get(name);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Create the success state of this execution.  If resources are retained, the resource maps are handed over to
+     * the result, along with the undeploy actions.
+     *
+     * @param duration the execution duration
+     * @param undeployPlan the compiled undeploy plan
+     * @return the success state
+     */
+    private SuccessState newSuccessState(final long duration, final UndeployPlan undeployPlan, final Set<String> unconsumedLazyResources) {
+        final Retained retained = retainResources ? new Retained(singleResources, multiResources, actionsById, ran) : null;
+        return new SuccessState(deployerChain, snapshotFinalResources(), duration, undeployPlan, retained, unconsumedLazyResources, name);
+    }
+
+    private void clearResources() {
+        if (retainResources) {
+            // owned by the result now
+            return;
+        }
+        singleResources.clear();
+        multiResources.clear();
+    }
+
+    private static final Object[] NO_VALUES = new Object[0];
+
+    static final int FLAG_CANCELLED = 1 << 30;
+    static final int FLAG_FAILED = 1 << 29;
+
+    static final int FLAG_MASK = FLAG_FAILED | FLAG_CANCELLED;
+
+    static abstract class State {
+
+        private static final State CANCELLED = new State() {
+            Status getStatus() {
+                return Status.CANCELLED;
+            }
+
+            boolean isWaitingFor(final Thread thread) {
+                return false;
+            }
+        };
+
+        State() {
+        }
+
+        abstract Status getStatus();
+
+        void signalCompletion() {}
+
+        void requestCancel() {}
+
+        boolean isWaitingFor(final Thread thread) {
+            return false;
+        }
+
+        SuccessfulDeploymentResult getSuccessfulResult() {
+            throw Messages.log.invalidDeploymentExecutionState();
+        }
+
+        FailedDeploymentResult getFailedResult() {
+            throw Messages.log.invalidDeploymentExecutionState();
+        }
+
+        Dependent[] dependentArray() {
+            throw Messages.log.invalidDeploymentExecutionState();
+        }
+    }
+
+    final class RunningState extends State implements Dependent {
+        private final AtomicInteger state;
+        private final long start = System.nanoTime();
+        private final Dependent[] array = new Dependent[] { this };
+
+        RunningState(int dependencyCount) {
+            state = new AtomicInteger(dependencyCount);
+        }
+
+        Status getStatus() {
+            return Status.EXECUTING;
+        }
+
+        Dependent[] dependentArray() {
+            return array;
+        }
+
+        public void dependencyDone() {
+            int oldVal, newVal;
+            do {
+                oldVal = state.get();
+                assert (oldVal & ~(FLAG_CANCELLED | FLAG_FAILED)) > 0;
+                newVal = oldVal - 1;
+            } while (! state.compareAndSet(oldVal, newVal));
+            if ((newVal & ~FLAG_MASK) == 0) {
+                finish();
+            }
+        }
+
+        public void dependencyFailed() {
+            int oldVal, newVal;
+            do {
+                oldVal = state.get();
+                assert (oldVal & ~(FLAG_CANCELLED | FLAG_FAILED)) > 0;
+                newVal = oldVal - 1 | FLAG_FAILED;
+            } while (! state.compareAndSet(oldVal, newVal));
+            if ((newVal & ~FLAG_MASK) == 0) {
+                finish();
+            }
+        }
+
+        public void dependencyCancelled() {
+            int oldVal, newVal;
+            do {
+                oldVal = state.get();
+                assert (oldVal & ~(FLAG_CANCELLED | FLAG_FAILED)) > 0;
+                newVal = oldVal - 1 | FLAG_CANCELLED;
+            } while (! state.compareAndSet(oldVal, newVal));
+            if ((newVal & ~FLAG_MASK) == 0) {
+                finish();
+            }
+        }
+
+        public void cancelRequested() {
+            // ignored
+        }
+
+        private void finish() {
+            final Set<String> unconsumedLazyResources = reportUnforcedLazyResources();
+            // every deployer is complete; keep only the compiled undeploy graph from here on
+            final UndeployPlan undeployPlan = UndeployPlan.compile(deployerChain, actionsById);
+            if (! retainResources) {
+                Arrays.fill(actionsById, null);
+            }
+            previousUndeploy = null;
+            final int val = state.get();
+            final long duration = max(0L, System.nanoTime() - start);
+            State oldState, newState;
+            if ((val & FLAG_CANCELLED) != 0) {
+                // a cancelled execution is never rolled back
+                newState = State.CANCELLED;
+            } else if ((val & FLAG_FAILED) != 0) {
+                final FailureState failureState = new FailureState(asList(problems.popAll(DeploymentException[]::new)), duration, undeployPlan, name);
+                Messages.log.executionFailed(name, duration / 1000000L);
+                if (rollbackOnFailure) {
+                    failureState.startRollback(executor);
+                }
+                newState = failureState;
+            } else {
+                newState = newSuccessState(duration, undeployPlan, unconsumedLazyResources);
+                Messages.log.executionComplete(name, duration / 1000000L);
+            }
+            clearResources();
+            do {
+                oldState = stateRef.get();
+            } while (! stateRef.compareAndSet(oldState, newState));
+            oldState.signalCompletion();
+        }
+    }
+
+    static BulkUndeployExecution undeployAll(final String name, final Collection<? extends DeploymentResult> results, final Executor executor, final int parallelism, final long timeout) {
+        final int size = results.size();
+        final ResultState[] resultStates = new ResultState[size];
+        int i = 0;
+        for (DeploymentResult result : results) {
+            Assert.checkNotNullArrayParam("results", i, result);
+            if (! (result instanceof ResultState)) {
+                throw Messages.log.unknownDeploymentResult(result);
+            }
+            resultStates[i ++] = (ResultState) result;
+        }
+        final UndeployPlan[] plans = new UndeployPlan[size];
+        final String[] names = new String[size];
+        for (i = 0; i < size; i ++) {
+            try {
+                plans[i] = resultStates[i].takeUndeployPlan();
+            } catch (IllegalStateException e) {
+                // put back the ones we took so that they can still be undeployed
+                while (i > 0) {
+                    i --;
+                    resultStates[i].restoreUndeployPlan(plans[i]);
+                }
+                throw e;
+            }
+            names[i] = resultStates[i].getName();
+        }
+        for (ResultState resultState : resultStates) {
+            resultState.undeployStarted();
+        }
+        final UndeployExecutionImpl undeployExecution = new UndeployExecutionImpl(UndeployPlan.merge(plans), new LimitedExecutor(executor, parallelism), timeout, name, names);
+        undeployExecution.run();
+        return undeployExecution;
+    }
+
+    static abstract class ResultState extends State implements DeploymentResult {
+        private static final Object TAKEN = new Object();
+
+        // the undeploy plan until it is taken; then either the rollback until a redeploy follows it, or TAKEN
+        private final AtomicReference<Object> undeployRef;
+        private final String name;
+        private final long duration;
+
+        ResultState(final UndeployPlan undeployPlan, final long duration, final String name) {
+            this.undeployRef = new AtomicReference<>(undeployPlan);
+            this.duration = duration;
+            this.name = name;
+        }
+
+        public final UndeployExecution undeploy(final Executor executor) {
+            Assert.checkNotNullParam("executor", executor);
+            return undeploy(executor, -1L);
+        }
+
+        public final UndeployExecution undeploy(final Executor executor, final long timeout, final TimeUnit timeUnit) {
+            Assert.checkNotNullParam("executor", executor);
+            Assert.checkMinimumParameter("timeout", 0L, timeout);
+            Assert.checkNotNullParam("timeUnit", timeUnit);
+            return undeploy(executor, timeUnit.toNanos(timeout));
+        }
+
+        private UndeployExecution undeploy(final Executor executor, final long timeout) {
+            // if a rollback or redeploy already took the plan, this throws rather than ignoring the given arguments
+            final UndeployPlan undeployPlan = takeUndeployPlan();
+            undeployStarted();
+            final UndeployExecutionImpl undeployExecution = new UndeployExecutionImpl(undeployPlan, executor, timeout, name);
+            undeployExecution.run();
+            return undeployExecution;
+        }
+
+        UndeployPlan takeUndeployPlan() {
+            final AtomicReference<Object> undeployRef = this.undeployRef;
+            Object oldVal;
+            do {
+                oldVal = undeployRef.get();
+                if (! (oldVal instanceof UndeployPlan)) {
+                    throw Messages.log.alreadyUndeployed();
+                }
+            } while (! undeployRef.compareAndSet(oldVal, TAKEN));
+            return (UndeployPlan) oldVal;
+        }
+
+        void restoreUndeployPlan(final UndeployPlan undeployPlan) {
+            undeployRef.set(undeployPlan);
+        }
+
+        /**
+         * Called once the undeploy plan of this result is taken for good by an undeploy, rollback or redeploy.
+         */
+        void undeployStarted() {
+        }
+
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Start the undeploy of this result on behalf of a redeploy.  If this result is being rolled back, the rollback
+         * is returned instead.  Either way, only one redeploy can replace this result; later calls to this method or to
+         * {@link #undeploy(Executor)} fail.
+         *
+         * @param executor the executor to use
+         * @return the undeploy execution
+         */
+        UndeployExecutionImpl startUndeploy(final Executor executor) {
+            final AtomicReference<Object> undeployRef = this.undeployRef;
+            Object oldVal;
+            do {
+                oldVal = undeployRef.get();
+                if (! (oldVal instanceof UndeployPlan) && ! (oldVal instanceof UndeployExecutionImpl)) {
+                    throw Messages.log.alreadyUndeployed();
+                }
+            } while (! undeployRef.compareAndSet(oldVal, TAKEN));
+            if (oldVal instanceof UndeployExecutionImpl) {
+                return (UndeployExecutionImpl) oldVal;
+            }
+            undeployStarted();
+            final UndeployExecutionImpl undeployExecution = new UndeployExecutionImpl((UndeployPlan) oldVal, executor, -1L, name);
+            undeployExecution.run();
+            return undeployExecution;
+        }
+
+        /**
+         * Start the rollback of this result, which a redeploy may still follow.
+         *
+         * @param executor the executor to use
+         * @return the undeploy execution
+         */
+        UndeployExecutionImpl startRollbackUndeploy(final Executor executor) {
+            final Object oldVal = undeployRef.get();
+            // the rollback starts before the result is published
+            assert oldVal instanceof UndeployPlan;
+            final UndeployExecutionImpl undeployExecution = new UndeployExecutionImpl((UndeployPlan) oldVal, executor, -1L, name);
+            undeployRef.set(undeployExecution);
+            undeployStarted();
+            undeployExecution.run();
+            return undeployExecution;
+        }
+
+        /**
+         * Start the undeploy of this result with a plan other than its own, on behalf of a redeploy which already
+         * {@linkplain #takeUndeployPlan() took} the original plan.
+         *
+         * @param executor the executor to use
+         * @param undeployPlan the plan to run
+         * @return the undeploy execution
+         */
+        UndeployExecutionImpl startUndeploy(final Executor executor, final UndeployPlan undeployPlan) {
+            assert undeployRef.get() == TAKEN;
+            final UndeployExecutionImpl undeployExecution = new UndeployExecutionImpl(undeployPlan, executor, -1L, name);
+            undeployExecution.run();
+            return undeployExecution;
+        }
+
+        public final long getDuration(final TimeUnit timeUnit) {
+            return timeUnit.convert(duration, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    static final class FailureState extends ResultState implements FailedDeploymentResult {
+        private final Collection<DeploymentException> problems;
+        private volatile UndeployExecution rollback;
+
+        FailureState(final Collection<DeploymentException> problems, final long duration, final UndeployPlan undeployPlan, final String name) {
+            super(undeployPlan, duration, name);
+            this.problems = problems;
+        }
+
+        Status getStatus() {
+            return Status.FAILED;
+        }
+
+        public Collection<DeploymentException> getExceptions() {
+            return problems;
+        }
+
+        public UndeployExecution getRollback() {
+            return rollback;
+        }
+
+        void startRollback(final Executor executor) {
+            rollback = startRollbackUndeploy(executor);
+        }
+
+        FailedDeploymentResult getFailedResult() {
+            return this;
+        }
+    }
+
+    static final class SuccessState extends ResultState implements SuccessfulDeploymentResult {
+        private final DeployerChainImpl deployerChain;
+        // indexed by final resource index
+        private final Object[] finalResources;
+        // null unless the execution retained its resources; cleared when taken by an incremental redeploy or undeployed
+        private volatile Retained retained;
+        private final Set<String> unconsumedLazyResources;
+
+        SuccessState(final DeployerChainImpl deployerChain, final Object[] finalResources, final long duration, final UndeployPlan undeployPlan, final Retained retained, final Set<String> unconsumedLazyResources, final String name) {
+            super(undeployPlan, duration, name);
+            this.deployerChain = deployerChain;
+            this.finalResources = finalResources;
+            this.retained = retained;
+            this.unconsumedLazyResources = unconsumedLazyResources;
+        }
+
+        public Set<String> getUnconsumedLazyResources() {
+            return unconsumedLazyResources;
+        }
+
+        DeployerChainImpl getDeployerChain() {
+            return deployerChain;
+        }
+
+        Retained takeRetained() {
+            final Retained retained = this.retained;
+            this.retained = null;
+            return retained;
+        }
+
+        void restoreRetained(final Retained retained) {
+            this.retained = retained;
+        }
+
+        void undeployStarted() {
+            // nothing can be redeployed incrementally from here on, so let go of the resources and actions
+            final Retained retained = this.retained;
+            this.retained = null;
+            if (retained != null) {
+                retained.clear();
+            }
+        }
+
+        Status getStatus() {
+            return Status.SUCCESSFUL;
+        }
+
+        public Object consume(final String name) {
+            Assert.checkNotNullParam("name", name);
+            final int index = deployerChain.getFinalResourceIndex(name);
+            if (index == -1) {
+                throw Messages.log.cannotConsume(name);
+            }
+            if (deployerChain.isFinalResourceMultiple(index)) {
+                throw Messages.log.cannotConsumeMultipleResourceAsSingle(name);
+            }
+            return unwrap(finalResources[index]);
+        }
+
+        public Collection<?> consumeMulti(final String name) throws IllegalArgumentException {
+            Assert.checkNotNullParam("name", name);
+            final int index = deployerChain.getFinalResourceIndex(name);
+            if (index == -1) {
+                throw Messages.log.cannotConsume(name);
+            }
+            if (! deployerChain.isFinalResourceMultiple(index)) {
+                throw Messages.log.cannotConsumeSingleResourceAsMultiple(name);
+            }
+            return (Collection<?>) finalResources[index];
+        }
+
+        SuccessfulDeploymentResult getSuccessfulResult() {
+            return this;
+        }
+    }
+
+    /**
+     * The complete resource state and undeploy actions of a successful execution, kept for incremental redeploy.
+     */
+    static final class Retained {
+        final Map<String, Object> singleResources;
+        final Map<String, List<Object>> multiResources;
+        // deployer id -> undeploy actions registered by that deployer
+        final Action<?, ?>[][] actionsById;
+        // deployer id -> whether the deployer ran; null if every deployer ran
+        final boolean[] ran;
+
+        Retained(final Map<String, Object> singleResources, final Map<String, List<Object>> multiResources, final Action<?, ?>[][] actionsById, final boolean[] ran) {
+            this.singleResources = singleResources;
+            this.multiResources = multiResources;
+            this.actionsById = actionsById;
+            this.ran = ran;
+        }
+
+        void clear() {
+            // these are shared with the execution which produced them, which may still be referenced
+            singleResources.clear();
+            multiResources.clear();
+            Arrays.fill(actionsById, null);
+        }
+    }
+
+    static final class WaitingState extends State {
+        private final State next;
+        private final Thread thread;
+
+        WaitingState(final State next, final Thread thread) {
+            this.next = next;
+            this.thread = thread;
+        }
+
+        Status getStatus() {
+            return next.getStatus();
+        }
+
+        boolean isWaitingFor(final Thread thread) {
+            return thread == this.thread || next.isWaitingFor(thread);
+        }
+
+        Dependent[] dependentArray() {
+            return next.dependentArray();
+        }
+
+        void signalCompletion() {
+            next.signalCompletion();
+            unpark(thread);
+        }
+    }
+
+    final class OnCompleteState<T, U> extends State {
+        private final State next;
+        private final BiConsumer<T, U> consumer;
+        private final T param1;
+        private final U param2;
+
+        OnCompleteState(final State next, final BiConsumer<T, U> consumer, final T param1, final U param2) {
+            this.next = next;
+            this.consumer = consumer;
+            this.param1 = param1;
+            this.param2 = param2;
+        }
+
+        Status getStatus() {
+            return next.getStatus();
+        }
+
+        boolean isWaitingFor(final Thread thread) {
+            return next.isWaitingFor(thread);
+        }
+
+        Dependent[] dependentArray() {
+            return next.dependentArray();
+        }
+
+        void signalCompletion() {
+            next.signalCompletion();
+            try {
+                executor.execute(() -> consumer.accept(param1, param2));
+            } catch (Throwable ignored) {}
+        }
+    }
+}
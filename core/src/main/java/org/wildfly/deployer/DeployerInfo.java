@@ -0,0 +1,204 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import static java.lang.Math.max;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Information about a single deployer in a chain.  Only one of these exists per deployment per chain, and is shared
+ * among all deployment executions.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class DeployerInfo {
+    private final Deployer deployer;
+    // consumed resources, not counting succeeds
+    private final Map<String, Multiplicity> consumed;
+    // produced resources, not counting precedes
+    private final Map<String, Multiplicity> produced;
+    // consumed resources which are iterated while being produced
+    private final Set<String> streamed;
+    // produced resources which are consumed as a stream by some other deployer
+    private final Set<String> streamsFed;
+    // exclusive external resources which must be released by a previous deployment before this deployer may start
+    private final Set<String> claims;
+    // the fingerprint of the consumed resources of a cacheable deployer, or null
+    private final Fingerprint fingerprint;
+    // the consumed resources which are fingerprinted, sorted by name
+    private final String[] fingerprinted;
+    // the identity of the deployer across chains and restarts, or null
+    private final String identity;
+    private final Set<DeployerInfo> dependencies;
+    private final Set<DeployerInfo> dependents;
+    // index of this deployer within its chain
+    private int id;
+    // ids of the resources which may be released once this deployer is complete
+    private int[] releases = NO_RELEASES;
+    // initial resource name -> condition which must hold for this deployer to run
+    private Map<String, Predicate<Object>> conditions = Collections.emptyMap();
+    // true if this deployer may be left out of an execution which does not need it
+    private boolean prunable;
+    // moving average of the time this deployer took to succeed, in nanoseconds, or 0 if it never ran
+    private volatile long averageDuration;
+
+    private static final int[] NO_RELEASES = new int[0];
+    private static final String[] NO_STRINGS = new String[0];
+
+    DeployerInfo(final Deployer deployer, final Map<String, Multiplicity> consumed, final Map<String, Multiplicity> produced, final Set<String> streamed, final Set<String> streamsFed, final Set<String> claims, final Fingerprint fingerprint, final String identity, final Set<DeployerInfo> dependencies, final Set<DeployerInfo> dependents) {
+        this.deployer = deployer;
+        this.consumed = consumed;
+        this.produced = produced;
+        this.streamed = streamed;
+        this.streamsFed = streamsFed;
+        this.claims = claims;
+        this.fingerprint = fingerprint;
+        this.identity = identity;
+        if (fingerprint == null || consumed.isEmpty()) {
+            fingerprinted = NO_STRINGS;
+        } else {
+            fingerprinted = consumed.keySet().toArray(NO_STRINGS);
+            Arrays.sort(fingerprinted);
+        }
+        this.dependencies = dependencies;
+        this.dependents = dependents;
+    }
+
+    Deployer getDeployer() {
+        return deployer;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    void setId(final int id) {
+        this.id = id;
+    }
+
+    Map<String, Multiplicity> getProduced() {
+        return produced;
+    }
+
+    Map<String, Multiplicity> getConsumed() {
+        return consumed;
+    }
+
+    Set<String> getStreamed() {
+        return streamed;
+    }
+
+    Set<String> getStreamsFed() {
+        return streamsFed;
+    }
+
+    Set<String> getClaims() {
+        return claims;
+    }
+
+    Fingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    String getIdentity() {
+        return identity;
+    }
+
+    String[] getFingerprinted() {
+        return fingerprinted;
+    }
+
+    Set<DeployerInfo> getDependencies() {
+        return dependencies;
+    }
+
+    Set<DeployerInfo> getDependents() {
+        return dependents;
+    }
+
+    int[] getReleases() {
+        return releases;
+    }
+
+    void addRelease(int resourceId) {
+        final int[] oldReleases = releases;
+        final int length = oldReleases.length;
+        final int[] newReleases = Arrays.copyOf(oldReleases, length + 1);
+        newReleases[length] = resourceId;
+        releases = newReleases;
+    }
+
+    Map<String, Predicate<Object>> getConditions() {
+        return conditions;
+    }
+
+    boolean isPrunable() {
+        return prunable;
+    }
+
+    void setActivation(final Map<String, Predicate<Object>> conditions, final boolean prunable) {
+        this.conditions = conditions;
+        this.prunable = prunable;
+    }
+
+    long getAverageDuration() {
+        return averageDuration;
+    }
+
+    void recordDuration(final long duration) {
+        // racing updates may lose a sample, which does not matter for an average
+        final long oldAverage = averageDuration;
+        averageDuration = oldAverage == 0L ? max(1L, duration) : max(1L, oldAverage + (duration - oldAverage) / 4);
+    }
+
+    private static final ThreadLocal<HashSet<DeployerInfo>> visited = ThreadLocal.withInitial(HashSet::new);
+
+    boolean implies(DeployerInfo other) {
+        HashSet<DeployerInfo> visitedSet = getVisitedSetCache();
+        try {
+            return implies(other, visitedSet);
+        } finally {
+            visitedSet.clear();
+        }
+    }
+
+    static HashSet<DeployerInfo> getVisitedSetCache() {
+        return visited.get();
+    }
+
+    boolean implies(DeployerInfo other, HashSet<DeployerInfo> visitedSet) {
+        if (visitedSet.add(this)) {
+            if (dependencies.contains(other)) {
+                return true;
+            }
+            for (DeployerInfo dependency : dependencies) {
+                if (dependency.implies(other, visitedSet)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -19,6 +19,8 @@
 package org.wildfly.deployer;
 
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CompletionStage;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -52,6 +54,21 @@ public interface DeploymentContext {
      */
     void produce(String name, Object item);
 
+    /**
+     * Produce the given single resource lazily.  The supplier is not called until the resource is first
+     * {@linkplain #consume(String) consumed}, and is called at most once even if several consumers request the value
+     * concurrently; those consumers wait for the first evaluation to complete.  If no consumer ever requests the value,
+     * the supplier is never called.  If the supplier throws an exception, every consumer receives an
+     * {@code IllegalStateException} whose cause is the original problem.  The supplier should <b>not</b> retain
+     * references to large intermediate deployment data that it does not need to compute its value.
+     *
+     * @param name the resource name (must not be {@code null})
+     * @param supplier the supplier of the resource value (must not be {@code null})
+     * @throws IllegalArgumentException if this deployer was not declared to produce {@code name}, if the resource has
+     *      multiplicity, or if {@code name} or {@code supplier} is {@code null}
+     */
+    void produceLazily(String name, Supplier<?> supplier);
+
     /**
      * Consume the value produced for the named resource, casting the result to the given type.
      *
@@ -98,6 +115,38 @@ public interface DeploymentContext {
      */
     Collection<?> consumeMulti(String name) throws IllegalArgumentException;
 
+    /**
+     * Consume the values contributed to the named resource as they are produced, casting the iterator to the given
+     * type.
+     *
+     * @param name the resource name (must not be {@code null})
+     * @param type the resource element type (must not be {@code null})
+     * @return the blocking iterator over the produced values (not {@code null})
+     * @throws IllegalArgumentException if this deployer was not declared to consume {@code name} as a stream, or if
+     *      {@code name} or {@code type} is {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    default <T> Iterator<T> consumeStream(String name, Class<T> type) {
+        Assert.checkNotNullParam("type", type);
+        return (Iterator<T>) consumeStream(name);
+    }
+
+    /**
+     * Consume the values contributed to the named resource as they are produced.  The returned iterator yields every
+     * value in the order it was contributed.  When no value is presently available, {@link Iterator#hasNext()} blocks
+     * the calling thread until another value is contributed or the last contributor has completed, at which point the
+     * iteration ends.  Since the calling thread is blocked while waiting, the executor must have enough threads to run
+     * the contributors concurrently with the consumer.  If the waiting thread is interrupted, a
+     * {@link java.util.concurrent.CancellationException CancellationException} is thrown and the interrupt status is
+     * preserved.
+     *
+     * @param name the resource name (must not be {@code null})
+     * @return the blocking iterator over the produced values (not {@code null})
+     * @throws IllegalArgumentException if this deployer was not declared to consume {@code name} as a stream, or if
+     *      {@code name} is {@code null}
+     */
+    Iterator<?> consumeStream(String name) throws IllegalArgumentException;
+
     /**
      * Determine if a (likely optional) resource was produced and is therefore available to be {@linkplain #consume(String) consumed}.
      *
@@ -147,6 +196,68 @@ public interface DeploymentContext {
      */
     <T, U> void addUndeployAction(BiConsumer<T, U> consumer, T parameter1, U parameter2);
 
+    /**
+     * Add an undeploy action for this deployer with a cost hint.  The cost is relative: a cost of
+     * {@value #UNDEPLOY_COST_TRIVIAL} denotes a trivial action such as removing a registration, and cheap actions are
+     * grouped together into a single task when undeploying.  An action whose cost is at least
+     * {@value #UNDEPLOY_COST_EXPENSIVE} is always run in a task of its own.  The given action should <b>not</b>
+     * retain references to intermediate deployment data, as doing so may result in excessive memory consumption at
+     * run time.
+     *
+     * @param consumer the consumer action (must not be {@code null})
+     * @param parameter1 the first parameter to pass to the consumer
+     * @param parameter2 the second parameter to pass to the consumer
+     * @param cost the relative cost of the action (must be at least {@code 1})
+     */
+    default <T, U> void addUndeployAction(BiConsumer<T, U> consumer, T parameter1, U parameter2, int cost) {
+        addUndeployAction(consumer, parameter1, parameter2);
+    }
+
+    /**
+     * Add an undeploy action for this deployer with a cost hint.
+     *
+     * @param runnable the runnable action (must not be {@code null})
+     * @param cost the relative cost of the action (must be at least {@code 1})
+     * @see #addUndeployAction(BiConsumer, Object, Object, int)
+     */
+    default void addUndeployAction(Runnable runnable, int cost) {
+        addUndeployAction((Runnable r, Void ignored) -> r.run(), runnable, null, cost);
+    }
+
+    /**
+     * Add an asynchronous undeploy action for this deployer.  The action is considered to be complete when the returned
+     * stage completes, rather than when the function returns, so the action does not need to block an executor thread
+     * while waiting for (for example) a connection to close.  If the function returns {@code null}, the action is
+     * complete immediately.  Deployers which depend on this one are not undeployed until the stage is complete.  The
+     * given action should <b>not</b> retain references to intermediate deployment data, as doing so may result in
+     * excessive memory consumption at run time.
+     *
+     * @param function the function which starts the action (must not be {@code null})
+     * @param parameter1 the first parameter to pass to the function
+     * @param parameter2 the second parameter to pass to the function
+     */
+    <T, U> void addAsyncUndeployAction(BiFunction<T, U, ? extends CompletionStage<?>> function, T parameter1, U parameter2);
+
+    /**
+     * Add an asynchronous undeploy action for this deployer.
+     *
+     * @param supplier the supplier which starts the action (must not be {@code null})
+     * @see #addAsyncUndeployAction(BiFunction, Object, Object)
+     */
+    default void addAsyncUndeployAction(Supplier<? extends CompletionStage<?>> supplier) {
+        addAsyncUndeployAction((Supplier<? extends CompletionStage<?>> s, Void ignored) -> s.get(), supplier, null);
+    }
+
+    /**
+     * The cost of a trivial undeploy action, which is the cost assumed when none is given.
+     */
+    int UNDEPLOY_COST_TRIVIAL = 1;
+
+    /**
+     * The minimum cost of an undeploy action which is run in a task of its own.
+     */
+    int UNDEPLOY_COST_EXPENSIVE = 64;
+
     /**
      * Determine whether the current deployment operation was requested to be cancelled.  Once this flag is set to
      * {@code true}, it will never return to {@code false}.
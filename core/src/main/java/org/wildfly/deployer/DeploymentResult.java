@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.wildfly.common.Assert;
+
+/**
+ * The final result of any completed deployment operation.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public interface DeploymentResult extends Result {
+    /**
+     * Commence undeployment.
+     *
+     * @param executor the executor to use for the undeploy operation (must not be {@code null})
+     * @throws IllegalStateException if the deployment was already undeployed
+     */
+    UndeployExecution undeploy(Executor executor) throws IllegalStateException;
+
+    /**
+     * Commence undeployment with a deadline.  If the undeploy actions are not complete when the deadline expires, the
+     * undeploy execution completes anyway; no further actions are started, and the actions which are still running
+     * are reported.
+     *
+     * @param executor the executor to use for the undeploy operation (must not be {@code null})
+     * @param timeout the amount of time to allow for undeployment (must not be negative)
+     * @param timeUnit the unit of the timeout (must not be {@code null})
+     * @throws IllegalStateException if the deployment was already undeployed
+     * @throws UnsupportedOperationException if this result does not support undeploy deadlines (the default)
+     */
+    default UndeployExecution undeploy(Executor executor, long timeout, TimeUnit timeUnit) throws IllegalStateException {
+        throw Messages.log.undeployDeadlineNotSupported();
+    }
+
+    /**
+     * Commence undeployment of many deployments at once, for example when shutting down.  The undeploy graphs of all
+     * of the deployments are merged into a single schedule, which runs no more than {@code parallelism} tasks at once on
+     * the given executor.  The returned execution completes once every deployment is undeployed.
+     *
+     * @param name the name of the bulk undeploy, for diagnostic messages (must not be {@code null})
+     * @param results the deployments to undeploy (must not be {@code null})
+     * @param executor the executor to use for the undeploy operation (must not be {@code null})
+     * @param parallelism the maximum number of undeploy tasks to run at once (must be at least {@code 1})
+     * @return the undeploy execution
+     * @throws IllegalStateException if any of the deployments was already undeployed, in which case none of them are
+     *      undeployed
+     */
+    static BulkUndeployExecution undeployAll(String name, Collection<? extends DeploymentResult> results, Executor executor, int parallelism) throws IllegalStateException {
+        Assert.checkNotNullParam("name", name);
+        Assert.checkNotNullParam("results", results);
+        Assert.checkNotNullParam("executor", executor);
+        Assert.checkMinimumParameter("parallelism", 1, parallelism);
+        return DeployerExecutionImpl.undeployAll(name, results, executor, parallelism, -1L);
+    }
+
+    /**
+     * Commence undeployment of many deployments at once with a shared deadline.  If the undeploy actions are not
+     * complete when the deadline expires, the undeploy execution completes anyway, as with
+     * {@link #undeploy(Executor, long, TimeUnit)}.
+     *
+     * @param name the name of the bulk undeploy, for diagnostic messages (must not be {@code null})
+     * @param results the deployments to undeploy (must not be {@code null})
+     * @param executor the executor to use for the undeploy operation (must not be {@code null})
+     * @param parallelism the maximum number of undeploy tasks to run at once (must be at least {@code 1})
+     * @param timeout the amount of time to allow for undeployment of all of the deployments (must not be negative)
+     * @param timeUnit the unit of the timeout (must not be {@code null})
+     * @return the undeploy execution
+     * @throws IllegalStateException if any of the deployments was already undeployed, in which case none of them are
+     *      undeployed
+     */
+    static BulkUndeployExecution undeployAll(String name, Collection<? extends DeploymentResult> results, Executor executor, int parallelism, long timeout, TimeUnit timeUnit) throws IllegalStateException {
+        Assert.checkNotNullParam("name", name);
+        Assert.checkNotNullParam("results", results);
+        Assert.checkNotNullParam("executor", executor);
+        Assert.checkMinimumParameter("parallelism", 1, parallelism);
+        Assert.checkMinimumParameter("timeout", 0L, timeout);
+        Assert.checkNotNullParam("timeUnit", timeUnit);
+        return DeployerExecutionImpl.undeployAll(name, results, executor, parallelism, timeUnit.toNanos(timeout));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The flattened execution plan of a chain, computed when the chain is first executed and shared by all of its
+ * executions.  The dependency graph is reduced to arrays indexed by deployer id, so that each execution creates and
+ * wires all of its deployer contexts in a single pass, instead of resolving them recursively through a map as they
+ * are reached.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class ExecutionPlan {
+    // deployer ids, ordered so that every deployer comes after all of its dependents
+    private final int[] creationOrder;
+    // deployer id -> ids of its dependents
+    private final int[][] dependentIds;
+    // deployer id -> number of dependencies
+    private final int[] dependencyCounts;
+    private final int[] initialIds;
+    // deployer id -> ids of the deployers which consume one of its streams, and so cannot finish before it
+    private final int[][] streamConsumerIds;
+    // deployer id -> number of deployers which contribute to the streams it consumes
+    private final int[] streamContributorCounts;
+
+    private static final int[] NO_IDS = new int[0];
+
+    private ExecutionPlan(final int[] creationOrder, final int[][] dependentIds, final int[] dependencyCounts, final int[] initialIds, final int[][] streamConsumerIds, final int[] streamContributorCounts) {
+        this.creationOrder = creationOrder;
+        this.dependentIds = dependentIds;
+        this.dependencyCounts = dependencyCounts;
+        this.initialIds = initialIds;
+        this.streamConsumerIds = streamConsumerIds;
+        this.streamContributorCounts = streamContributorCounts;
+    }
+
+    static ExecutionPlan compile(final DeployerChainImpl deployerChain) {
+        final int deployerCount = deployerChain.getDeployerCount();
+        final int[][] dependentIds = new int[deployerCount][];
+        final int[] dependencyCounts = new int[deployerCount];
+        // number of dependents not yet placed, for a reverse topological sort
+        final int[] remaining = new int[deployerCount];
+        final int[] creationOrder = new int[deployerCount];
+        int placed = 0;
+        for (int id = 0; id < deployerCount; id ++) {
+            final DeployerInfo deployerInfo = deployerChain.getDeployer(id);
+            dependentIds[id] = toIds(deployerInfo.getDependents());
+            dependencyCounts[id] = deployerInfo.getDependencies().size();
+            remaining[id] = dependentIds[id].length;
+            if (remaining[id] == 0) {
+                creationOrder[placed ++] = id;
+            }
+        }
+        for (int i = 0; i < placed; i ++) {
+            for (DeployerInfo dependency : deployerChain.getDeployer(creationOrder[i]).getDependencies()) {
+                final int dependencyId = dependency.getId();
+                if (-- remaining[dependencyId] == 0) {
+                    creationOrder[placed ++] = dependencyId;
+                }
+            }
+        }
+        assert placed == deployerCount;
+        final int[][] streamConsumerIds = new int[deployerCount][];
+        final int[] streamContributorCounts = new int[deployerCount];
+        findStreamConsumers(deployerChain, streamConsumerIds, streamContributorCounts);
+        return new ExecutionPlan(creationOrder, dependentIds, dependencyCounts, toIds(deployerChain.getInitialDeployers()), streamConsumerIds, streamContributorCounts);
+    }
+
+    private static void findStreamConsumers(final DeployerChainImpl deployerChain, final int[][] streamConsumerIds, final int[] streamContributorCounts) {
+        Arrays.fill(streamConsumerIds, NO_IDS);
+        final int deployerCount = deployerChain.getDeployerCount();
+        final Map<String, List<Integer>> contributorsByStream = new HashMap<>();
+        for (int id = 0; id < deployerCount; id ++) {
+            for (String name : deployerChain.getDeployer(id).getStreamsFed()) {
+                contributorsByStream.computeIfAbsent(name, DeployerExecutionImpl::newArrayList).add(Integer.valueOf(id));
+            }
+        }
+        if (contributorsByStream.isEmpty()) {
+            return;
+        }
+        final Map<Integer, List<Integer>> consumersByContributor = new HashMap<>();
+        for (int id = 0; id < deployerCount; id ++) {
+            // a contributor of several streams read by the same consumer is only counted once
+            final Set<Integer> contributors = new LinkedHashSet<>();
+            for (String name : deployerChain.getDeployer(id).getStreamed()) {
+                final List<Integer> list = contributorsByStream.get(name);
+                if (list != null) {
+                    contributors.addAll(list);
+                }
+            }
+            streamContributorCounts[id] = contributors.size();
+            for (Integer contributor : contributors) {
+                consumersByContributor.computeIfAbsent(contributor, key -> new ArrayList<>()).add(Integer.valueOf(id));
+            }
+        }
+        for (Map.Entry<Integer, List<Integer>> entry : consumersByContributor.entrySet()) {
+            final List<Integer> list = entry.getValue();
+            final int[] ids = new int[list.size()];
+            for (int i = 0; i < ids.length; i ++) {
+                ids[i] = list.get(i).intValue();
+            }
+            streamConsumerIds[entry.getKey().intValue()] = ids;
+        }
+    }
+
+    private static int[] toIds(final Set<DeployerInfo> deployerInfos) {
+        final int[] ids = new int[deployerInfos.size()];
+        int i = 0;
+        for (DeployerInfo deployerInfo : deployerInfos) {
+            ids[i ++] = deployerInfo.getId();
+        }
+        return ids;
+    }
+
+    int[] getCreationOrder() {
+        return creationOrder;
+    }
+
+    int[] getDependentIds(int id) {
+        return dependentIds[id];
+    }
+
+    int getDependencyCount(int id) {
+        return dependencyCounts[id];
+    }
+
+    int[] getInitialIds() {
+        return initialIds;
+    }
+
+    int[] getStreamConsumerIds(int id) {
+        return streamConsumerIds[id];
+    }
+
+    int getStreamContributorCount(int id) {
+        return streamContributorCounts[id];
+    }
+}
@@ -32,4 +32,15 @@ public interface FailedDeploymentResult extends DeploymentResult {
      * @return the collection of deployment problems
      */
     Collection<DeploymentException> getExceptions();
+
+    /**
+     * Get the rollback of this deployment.  If the execution was built to
+     * {@linkplain DeployerExecutionBuilder#setRollbackOnFailure(boolean) roll back on failure}, the undeploy actions
+     * registered by the deployers which ran are started as soon as the deployment fails, and this method returns the
+     * resultant undeploy execution.  Since the deployment is then already being undeployed, subsequent calls to
+     * {@link #undeploy(java.util.concurrent.Executor) undeploy()} throw {@link IllegalStateException}.
+     *
+     * @return the rollback undeploy execution, or {@code null} if rollback on failure was not requested
+     */
+    UndeployExecution getRollback();
 }
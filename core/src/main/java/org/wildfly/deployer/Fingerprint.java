@@ -0,0 +1,48 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+/**
+ * A function which computes the fingerprint of a resource consumed by a {@linkplain DeployerBuilder#cacheable(Fingerprint) cacheable}
+ * deployer.  Two fingerprints must be {@linkplain Object#equals(Object) equal} only if the deployer would produce
+ * equivalent results from the corresponding values.  Fingerprints are retained by the result cache, so they should be
+ * small, immutable, and must not retain the resource value unless the value itself is small and immutable.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+@FunctionalInterface
+public interface Fingerprint {
+
+    /**
+     * A fingerprint which is the resource value itself.  Suitable for values such as strings and hashes which are
+     * immutable and have value equality.
+     */
+    Fingerprint VALUE = (name, value) -> value;
+
+    /**
+     * Compute the fingerprint of a consumed resource.  For a resource with multiplicity, the value is the collection
+     * of the resource's items.
+     *
+     * @param name the resource name
+     * @param value the resource value (may be {@code null})
+     * @return the fingerprint, or {@code null} if the value cannot be fingerprinted, in which case the deployer is run
+     *      normally and its result is not cached
+     */
+    Object fingerprint(String name, Object value);
+}
@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.function.Supplier;
+
+/**
+ * A single resource whose value is computed by its supplier on first consumption.  The supplier is called at most
+ * once; concurrent consumers wait for the first one to finish evaluating it.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class LazyResource {
+    private static final Object UNSET = new Object();
+
+    private final String name;
+    // guarded by this; cleared once evaluated so that it can be collected
+    private Supplier<?> supplier;
+    // guarded by this
+    private Throwable problem;
+    private volatile Object value = UNSET;
+
+    LazyResource(final String name, final Supplier<?> supplier) {
+        this.name = name;
+        this.supplier = supplier;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Object get() {
+        Object value = this.value;
+        if (value == UNSET) {
+            synchronized (this) {
+                value = this.value;
+                if (value == UNSET) {
+                    final Supplier<?> supplier = this.supplier;
+                    if (supplier == null) {
+                        throw Messages.log.lazyResourceFailed(name, problem);
+                    }
+                    this.supplier = null;
+                    try {
+                        this.value = value = supplier.get();
+                    } catch (Throwable t) {
+                        problem = t;
+                        throw Messages.log.lazyResourceFailed(name, t);
+                    }
+                }
+            }
+        }
+        return value;
+    }
+
+    boolean isForced() {
+        if (value != UNSET) {
+            return true;
+        }
+        synchronized (this) {
+            return supplier == null;
+        }
+    }
+}
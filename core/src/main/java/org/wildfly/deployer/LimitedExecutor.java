@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An executor which runs no more than a fixed number of tasks at once on a delegate executor.  Tasks beyond the limit
+ * are queued and run by whichever worker becomes free first.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class LimitedExecutor implements Executor {
+    private final Executor delegate;
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleWorkers;
+
+    LimitedExecutor(final Executor delegate, final int parallelism) {
+        this.delegate = delegate;
+        idleWorkers = new AtomicInteger(parallelism);
+    }
+
+    public void execute(final Runnable command) {
+        queue.add(command);
+        startWorker();
+    }
+
+    private void startWorker() {
+        final AtomicInteger idleWorkers = this.idleWorkers;
+        int oldVal;
+        do {
+            oldVal = idleWorkers.get();
+            if (oldVal == 0 || queue.isEmpty()) {
+                return;
+            }
+        } while (! idleWorkers.compareAndSet(oldVal, oldVal - 1));
+        try {
+            delegate.execute(this::work);
+        } catch (Throwable t) {
+            idleWorkers.incrementAndGet();
+            throw t;
+        }
+    }
+
+    private void work() {
+        try {
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    Messages.log.uncaughtException(t);
+                }
+            }
+        } finally {
+            idleWorkers.incrementAndGet();
+        }
+        // a task may have been queued after the queue was found to be empty but before this worker became idle
+        startWorker();
+    }
+}
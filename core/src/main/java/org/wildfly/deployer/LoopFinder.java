@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the loops of a dependency graph, using an iterative form of Tarjan's strongly connected components algorithm,
+ * which runs in linear time and is safe for deep graphs.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class LoopFinder {
+    private LoopFinder() {
+    }
+
+    /**
+     * Find one loop through each strongly connected component of the graph which contains a loop.
+     *
+     * @param edges node -> the nodes it depends on
+     * @param include node -> whether the node takes part in the search
+     * @return the loops, each as a list of nodes where every node depends on the next, and the last on the first
+     */
+    static List<int[]> findLoops(final int[][] edges, final boolean[] include) {
+        final int count = edges.length;
+        final int[] index = new int[count];
+        final int[] lowLink = new int[count];
+        Arrays.fill(index, -1);
+        final boolean[] onStack = new boolean[count];
+        final int[] stack = new int[count];
+        int stackSize = 0;
+        // the explicit call stack: the node and the position of its next edge
+        final int[] callNodes = new int[count];
+        final int[] callEdges = new int[count];
+        int nextIndex = 0;
+        final List<int[]> loops = new ArrayList<>();
+        final int[] component = new int[count];
+        for (int root = 0; root < count; root ++) {
+            if (! include[root] || index[root] != -1) {
+                continue;
+            }
+            int depth = 0;
+            callNodes[0] = root;
+            callEdges[0] = 0;
+            index[root] = lowLink[root] = nextIndex ++;
+            stack[stackSize ++] = root;
+            onStack[root] = true;
+            while (depth >= 0) {
+                final int node = callNodes[depth];
+                final int[] nodeEdges = edges[node];
+                if (callEdges[depth] < nodeEdges.length) {
+                    final int target = nodeEdges[callEdges[depth] ++];
+                    if (! include[target]) {
+                        continue;
+                    }
+                    if (index[target] == -1) {
+                        index[target] = lowLink[target] = nextIndex ++;
+                        stack[stackSize ++] = target;
+                        onStack[target] = true;
+                        depth ++;
+                        callNodes[depth] = target;
+                        callEdges[depth] = 0;
+                    } else if (onStack[target]) {
+                        lowLink[node] = Math.min(lowLink[node], index[target]);
+                    }
+                    continue;
+                }
+                // all edges visited; pop the node
+                if (lowLink[node] == index[node]) {
+                    int size = 0;
+                    int member;
+                    do {
+                        member = stack[-- stackSize];
+                        onStack[member] = false;
+                        component[size ++] = member;
+                    } while (member != node);
+                    if (size > 1 || contains(nodeEdges, node)) {
+                        loops.add(findLoop(edges, Arrays.copyOf(component, size)));
+                    }
+                }
+                depth --;
+                if (depth >= 0) {
+                    final int parent = callNodes[depth];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+            }
+        }
+        return loops;
+    }
+
+    private static boolean contains(final int[] array, final int value) {
+        for (int item : array) {
+            if (item == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find a shortest loop through the first member of a strongly connected component, by breadth-first search.
+     */
+    private static int[] findLoop(final int[][] edges, final int[] component) {
+        final int start = component[0];
+        final int[] members = component.clone();
+        Arrays.sort(members);
+        final int[] previous = new int[members.length];
+        Arrays.fill(previous, -1);
+        final int[] queue = new int[members.length];
+        int head = 0, tail = 0;
+        queue[tail ++] = start;
+        int last = -1;
+        search: while (head < tail) {
+            final int node = queue[head ++];
+            for (int target : edges[node]) {
+                if (target == start) {
+                    last = node;
+                    break search;
+                }
+                final int position = Arrays.binarySearch(members, target);
+                if (position >= 0 && previous[position] == -1 && target != start) {
+                    previous[position] = node;
+                    queue[tail ++] = target;
+                }
+            }
+        }
+        assert last != -1;
+        final List<Integer> path = new ArrayList<>();
+        for (int node = last; node != start; node = previous[Arrays.binarySearch(members, node)]) {
+            path.add(Integer.valueOf(node));
+        }
+        path.add(Integer.valueOf(start));
+        // the path was collected backwards from the end of the loop
+        final int[] loop = new int[path.size()];
+        for (int i = 0; i < loop.length; i ++) {
+            loop[i] = path.get(loop.length - 1 - i).intValue();
+        }
+        return loop;
+    }
+}
@@ -18,8 +18,14 @@
 
 package org.wildfly.deployer;
 
+import static org.jboss.logging.Logger.Level.DEBUG;
 import static org.jboss.logging.Logger.Level.ERROR;
 import static org.jboss.logging.Logger.Level.INFO;
+import static org.jboss.logging.Logger.Level.WARN;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
 
 import org.jboss.logging.BasicLogger;
 import org.jboss.logging.Logger;
@@ -118,10 +124,36 @@ interface Messages extends BasicLogger {
     @Message(id = 132, value = "Cannot undeploy because an undeployment was already initiated")
     IllegalStateException alreadyUndeployed();
 
+    @Message(id = 133, value = "Deployer \"%s\" cannot be cacheable because it consumes resource \"%s\" as a stream")
+    DeployerChainBuildException cannotCacheStreamConsumer(Deployer deployer, String resource);
+
+    @Message(id = 139, value = "Deployer chain contains %d loop(s), where each deployer must follow the next through the given resource: %s")
+    DeployerChainBuildException loopsDetected(int count, String loops);
+
+    @Message(id = 140, value = "Deployer \"%s\" is activated by resource \"%s\" which is not an initial resource")
+    DeployerChainBuildException activationResourceNotInitial(Deployer deployer, String name);
+
+    @Message(id = 141, value = "Deployer \"%s\" is only declared, so its chain can only be written as a snapshot")
+    IllegalStateException declaredDeployerNotBuildable(String identity);
+
+    @Message(id = 142, value = "Deployer chain snapshot cannot be written because deployer %s has no unique identity")
+    IllegalStateException snapshotRequiresIdentity(Deployer deployer);
+
+    @Message(id = 143, value = "Simulation cannot proceed because all %d cores are held by stream consumers waiting for contributors which cannot run")
+    IllegalStateException simulationStalled(int cores);
+
     @LogMessage(level = INFO)
     @Message(id = 200, value = "Deployer chain compiled successfully: %d resources defined for %d deployers in %dms")
     void constructed(int resources, int deployers, long millis);
 
+    @LogMessage(level = INFO)
+    @Message(id = 201, value = "Deployer chain loaded from snapshot \"%s\": %d resources defined for %d deployers in %dms")
+    void loadedFromSnapshot(Path path, int resources, int deployers, long millis);
+
+    @LogMessage(level = INFO)
+    @Message(id = 202, value = "Pruned %d unused side-effect free deployers from the deployer chain")
+    void prunedDeployers(int count);
+
     @Message(id = 300, value = "Cannot produce resource \"%s\" from here")
     IllegalArgumentException cannotProduce(String name);
 
@@ -141,4 +173,82 @@ interface Messages extends BasicLogger {
     @LogMessage(level = INFO)
     @Message(id = 305, value = "Deployment of \"%s\" failed in %dms")
     void executionFailed(String name, long duration);
+
+    @Message(id = 306, value = "Cannot consume resource \"%s\" as a stream because it was not declared as a streamed resource")
+    IllegalArgumentException cannotConsumeAsStream(String name);
+
+    @Message(id = 307, value = "Cannot consume streamed resource \"%s\" as a completed multiple resource")
+    IllegalArgumentException cannotConsumeStreamAsMultiple(String name);
+
+    @Message(id = 308, value = "Interrupted while waiting for items of streamed resource \"%s\"")
+    CancellationException streamInterrupted(String name);
+
+    @Message(id = 309, value = "Cannot lazily produce resource \"%s\" because it is not a single resource")
+    IllegalArgumentException cannotProduceLazily(String name);
+
+    @Message(id = 310, value = "Evaluation of lazily produced resource \"%s\" failed")
+    IllegalStateException lazyResourceFailed(String name, @Cause Throwable cause);
+
+    @LogMessage(level = DEBUG)
+    @Message(id = 311, value = "Lazily produced resource \"%s\" of deployment \"%s\" was never consumed")
+    void lazyResourceNotForced(String name, String deploymentName);
+
+    @LogMessage(level = WARN)
+    @Message(id = 312, value = "Undeploy of \"%s\" did not complete within %dms; %d actions are still running and %d were not started")
+    void undeployTimedOut(String name, long timeout, int running, int notStarted);
+
+    @LogMessage(level = WARN)
+    @Message(id = 313, value = "Undeploy action of deployer %s for \"%s\" has been running for %dms")
+    void undeployStraggler(Deployer deployer, String name, long elapsed);
+
+    @Message(id = 314, value = "Deployment result %s was not produced by a deployer chain")
+    IllegalArgumentException unknownDeploymentResult(DeploymentResult deploymentResult);
+
+    @Message(id = 315, value = "Deployment \"%s\" was produced by a different deployer chain")
+    IllegalArgumentException differentDeployerChain(String name);
+
+    @Message(id = 316, value = "Deployment \"%s\" cannot be redeployed incrementally because its resources were not retained")
+    IllegalArgumentException notIncremental(String name);
+
+    @LogMessage(level = WARN)
+    @Message(id = 317, value = "Persistent deployer result store operation failed; the result will not be reused")
+    void resultStoreFailed(@Cause Throwable cause);
+
+    @LogMessage(level = WARN)
+    @Message(id = 318, value = "Persistent deployer result store index \"%s\" is not valid and has been reset")
+    void resultStoreReset(Path path);
+
+    @Message(id = 319, value = "Persistent deployer result store \"%s\" is closed")
+    IOException resultStoreClosed(Path path);
+
+    @Message(id = 320, value = "Persistent deployer result store data file \"%s\" is truncated")
+    IOException resultStoreTruncated(Path path);
+
+    @LogMessage(level = WARN)
+    @Message(id = 321, value = "Failed to write deployer chain snapshot \"%s\"")
+    void snapshotWriteFailed(Path path, @Cause Throwable cause);
+
+    @LogMessage(level = WARN)
+    @Message(id = 322, value = "Deployer chain snapshot \"%s\" cannot be used because deployer %s has no unique identity")
+    void snapshotNotUsable(Path path, Deployer deployer);
+
+    @LogMessage(level = WARN)
+    @Message(id = 323, value = "Failed to read deployer chain snapshot \"%s\"; the chain will be rebuilt")
+    void snapshotReadFailed(Path path, @Cause Throwable cause);
+
+    @Message(id = 324, value = "Deployer chain snapshot is not valid or refers to an unknown deployer")
+    IOException invalidSnapshot();
+
+    @Message(id = 325, value = "Deployer chain was loaded without its declarations and cannot be derived")
+    IllegalStateException cannotDerive();
+
+    @Message(id = 326, value = "Undeploy deadlines are not supported by this deployment result")
+    UnsupportedOperationException undeployDeadlineNotSupported();
+
+    @Message(id = 327, value = "Persistent deployer result store \"%s\" is already open")
+    IOException resultStoreLocked(Path path);
+
+    @LogMessage(level = WARN)
+    @Message(id = 328, value = "Persistent deployer result store data file \"%s\" is damaged and has been truncated to %d bytes")
+    void resultStoreDamaged(Path path, long size);
 }
@@ -0,0 +1,497 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.wildfly.common.Assert;
+
+/**
+ * A store for the results of {@linkplain DeployerBuilder#cacheable(Fingerprint) cacheable} deployers which survives
+ * restarts.  The store consists of a memory-mapped index file, which is a hash table from result keys to record
+ * locations, and an append-only data file holding the records.  Replacing a result leaves its old record behind; such
+ * garbage is reclaimed by {@link #compact()}, which is also done when a store with mostly garbage is opened.
+ * <p>
+ * Every record carries its length, a checksum and its key, so a record which is damaged or does not match its index
+ * entry (for example after a crash) is treated as absent rather than returned.  When the store is opened, the data
+ * file is truncated at the first damaged record, and the index is rebuilt from the remaining records if needed.  A
+ * store may be shared by any number of chains, but may only be open once at a time; this is enforced with a file lock.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public final class PersistentResultStore implements Closeable {
+    static final int KEY_SIZE = 32;
+
+    private static final int MAGIC = 0x57464452;
+    private static final int VERSION = 2;
+    // magic, version, capacity, count, live bytes
+    private static final int HEADER_SIZE = 24;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int LIVE_BYTES_OFFSET = 16;
+    // key, record offset, record length
+    private static final int SLOT_SIZE = KEY_SIZE + 12;
+    // value length, checksum of the key and value; followed by the key and the value
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = RECORD_HEADER_SIZE + KEY_SIZE;
+    private static final int INITIAL_CAPACITY = 1024;
+    // stores with less data than this are never compacted on open
+    private static final long MIN_COMPACT_SIZE = 1L << 20;
+
+    private final Path indexPath;
+    private final Path dataPath;
+    private final FileChannel indexChannel;
+    // guarded by this
+    private MappedByteBuffer index;
+    private FileChannel data;
+    // the end of the data file, including space reserved by writes which are still in progress
+    private long dataEnd;
+    // incremented whenever the data file is replaced, so that writes to the old one are not published
+    private int generation;
+    private int capacity;
+    private int count;
+    private long liveBytes;
+    private boolean closed;
+
+    private PersistentResultStore(final Path indexPath, final Path dataPath) throws IOException {
+        this.indexPath = indexPath;
+        this.dataPath = dataPath;
+        indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean ok = false;
+        try {
+            FileLock lock;
+            try {
+                lock = indexChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // held by this process
+                lock = null;
+            }
+            if (lock == null) {
+                throw Messages.log.resultStoreLocked(indexPath);
+            }
+            data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            final boolean loaded = load();
+            if (! loaded && indexChannel.size() > 0) {
+                Messages.log.resultStoreReset(indexPath);
+            }
+            final long size = data.size();
+            final long end = scan(false);
+            if (end < size) {
+                Messages.log.resultStoreDamaged(dataPath, end);
+                data.truncate(end);
+            }
+            dataEnd = end;
+            if (! loaded || end < size) {
+                rebuild();
+            }
+            ok = true;
+        } finally {
+            if (! ok) {
+                closeChannels();
+            }
+        }
+    }
+
+    /**
+     * Open (or create) the store in the given directory.
+     *
+     * @param directory the store directory (must not be {@code null})
+     * @return the opened store
+     * @throws IOException if the store could not be opened, or is already open
+     */
+    public static PersistentResultStore open(Path directory) throws IOException {
+        Assert.checkNotNullParam("directory", directory);
+        Files.createDirectories(directory);
+        final PersistentResultStore store = new PersistentResultStore(directory.resolve("results.idx"), directory.resolve("results.dat"));
+        synchronized (store) {
+            final long size = store.dataEnd;
+            if (size >= MIN_COMPACT_SIZE && store.liveBytes < size >> 1) {
+                store.compact();
+            }
+        }
+        return store;
+    }
+
+    private boolean load() throws IOException {
+        final long size = indexChannel.size();
+        if (size < HEADER_SIZE) {
+            return false;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        indexChannel.read(header, 0L);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return false;
+        }
+        final int capacity = header.getInt();
+        if (capacity < INITIAL_CAPACITY || Integer.bitCount(capacity) != 1 || size != HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+            return false;
+        }
+        this.capacity = capacity;
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+        count = index.getInt(COUNT_OFFSET);
+        liveBytes = index.getLong(LIVE_BYTES_OFFSET);
+        return true;
+    }
+
+    /**
+     * Walk the records of the data file from the start, checking each one.
+     *
+     * @param insert {@code true} to insert every record into the index as it is found
+     * @return the end of the last good record
+     */
+    private long scan(final boolean insert) throws IOException {
+        final long size = data.size();
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        final byte[] key = new byte[KEY_SIZE];
+        long position = 0L;
+        while (size - position >= RECORD_OVERHEAD) {
+            header.clear();
+            readFully(data, header, position);
+            final int valueLength = header.getInt(0);
+            if (valueLength < 0 || size - position - RECORD_OVERHEAD < valueLength) {
+                break;
+            }
+            final int length = RECORD_OVERHEAD + valueLength;
+            final ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(data, record, position);
+            if (! checkRecord(record)) {
+                break;
+            }
+            if (insert) {
+                record.position(RECORD_HEADER_SIZE);
+                record.get(key);
+                insert(key, position, length);
+            }
+            position += length;
+        }
+        return position;
+    }
+
+    /**
+     * Rebuild the index from the records of the data file.  Later records replace earlier ones with the same key.
+     */
+    private void rebuild() throws IOException {
+        indexChannel.truncate(0L);
+        map(INITIAL_CAPACITY);
+        count = 0;
+        liveBytes = 0L;
+        scan(true);
+        writeHeader();
+    }
+
+    private void map(final int capacity) throws IOException {
+        this.capacity = capacity;
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0L, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        index.putInt(0, MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(CAPACITY_OFFSET, capacity);
+    }
+
+    private void writeHeader() {
+        index.putInt(COUNT_OFFSET, count);
+        index.putLong(LIVE_BYTES_OFFSET, liveBytes);
+    }
+
+    /**
+     * Get the number of results in the store.
+     *
+     * @return the number of results
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Get a stored result.
+     *
+     * @param key the result key
+     * @return the stored result, or {@code null} if there is none
+     * @throws IOException if reading the store failed
+     */
+    byte[] get(final byte[] key) throws IOException {
+        final FileChannel data;
+        final long offset;
+        final int length;
+        synchronized (this) {
+            checkOpen();
+            final int slotOffset = slotOffset(findSlot(key));
+            length = index.getInt(slotOffset + KEY_SIZE + 8);
+            if (length == 0) {
+                return null;
+            }
+            offset = index.getLong(slotOffset + KEY_SIZE);
+            if (offset + length > dataEnd) {
+                return null;
+            }
+            data = this.data;
+        }
+        // read without holding the lock; the record is checked, so a concurrent compaction yields a miss at worst
+        final ByteBuffer record = ByteBuffer.allocate(length);
+        try {
+            readFully(data, record, offset);
+        } catch (ClosedChannelException e) {
+            // compacted or closed meanwhile
+            return null;
+        }
+        if (! checkRecord(record)) {
+            return null;
+        }
+        record.position(RECORD_HEADER_SIZE);
+        for (int i = 0; i < KEY_SIZE; i ++) {
+            if (record.get() != key[i]) {
+                // stale entry
+                return null;
+            }
+        }
+        final byte[] value = new byte[length - RECORD_OVERHEAD];
+        record.get(value);
+        return value;
+    }
+
+    /**
+     * Store a result, replacing any result with the same key.
+     *
+     * @param key the result key
+     * @param value the result
+     * @throws IOException if writing to the store failed
+     */
+    void put(final byte[] key, final byte[] value) throws IOException {
+        final int length = RECORD_OVERHEAD + value.length;
+        final ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(value.length).putInt(0).put(key).put(value);
+        record.putInt(4, checksum(record));
+        record.flip();
+        final FileChannel data;
+        final long offset;
+        final int generation;
+        synchronized (this) {
+            checkOpen();
+            data = this.data;
+            offset = dataEnd;
+            dataEnd += length;
+            generation = this.generation;
+        }
+        // write without holding the lock into the space reserved above
+        try {
+            writeFully(data, record, offset);
+        } catch (ClosedChannelException e) {
+            // compacted or closed meanwhile
+            return;
+        }
+        synchronized (this) {
+            if (closed || generation != this.generation) {
+                // the record was written to a data file which has since been replaced
+                return;
+            }
+            insert(key, offset, length);
+            writeHeader();
+        }
+    }
+
+    private void insert(final byte[] key, final long offset, final int length) throws IOException {
+        int slotOffset = slotOffset(findSlot(key));
+        final int oldLength = index.getInt(slotOffset + KEY_SIZE + 8);
+        if (oldLength == 0) {
+            if (count + 1 > capacity >> 1) {
+                grow();
+                slotOffset = slotOffset(findSlot(key));
+            }
+            count ++;
+        } else {
+            liveBytes -= oldLength;
+        }
+        putSlot(slotOffset, key, offset, length);
+        liveBytes += length;
+    }
+
+    /**
+     * Reclaim the space used by replaced results.  The live records are copied to a new data file, which then
+     * replaces the old one.
+     *
+     * @throws IOException if compaction failed
+     */
+    public synchronized void compact() throws IOException {
+        checkOpen();
+        final Path tempPath = dataPath.resolveSibling(dataPath.getFileName() + ".tmp");
+        long position = 0L;
+        try (FileChannel newData = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (int slot = 0; slot < capacity; slot ++) {
+                final int slotOffset = slotOffset(slot);
+                final int length = index.getInt(slotOffset + KEY_SIZE + 8);
+                if (length != 0) {
+                    final ByteBuffer record = ByteBuffer.allocate(length);
+                    readFully(data, record, index.getLong(slotOffset + KEY_SIZE));
+                    record.flip();
+                    writeFully(newData, record, position);
+                    // records carry their keys, so a crash before the rename below yields misses rather than bad data
+                    index.putLong(slotOffset + KEY_SIZE, position);
+                    position += length;
+                }
+            }
+            newData.force(true);
+        }
+        index.force();
+        generation ++;
+        data.close();
+        Files.move(tempPath, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        data = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        dataEnd = position;
+        liveBytes = position;
+        writeHeader();
+    }
+
+    /**
+     * Close the store, flushing the index.
+     *
+     * @throws IOException if closing failed
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        index.force();
+        data.force(true);
+        closeChannels();
+    }
+
+    private void closeChannels() throws IOException {
+        try {
+            indexChannel.close();
+        } finally {
+            if (data != null) {
+                data.close();
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw Messages.log.resultStoreClosed(indexPath);
+        }
+    }
+
+    private void grow() throws IOException {
+        final int oldCapacity = capacity;
+        final byte[] keys = new byte[count * KEY_SIZE];
+        final long[] offsets = new long[count];
+        final int[] lengths = new int[count];
+        int n = 0;
+        for (int slot = 0; slot < oldCapacity; slot ++) {
+            final int slotOffset = slotOffset(slot);
+            final int length = index.getInt(slotOffset + KEY_SIZE + 8);
+            if (length != 0) {
+                for (int i = 0; i < KEY_SIZE; i ++) {
+                    keys[n * KEY_SIZE + i] = index.get(slotOffset + i);
+                }
+                offsets[n] = index.getLong(slotOffset + KEY_SIZE);
+                lengths[n] = length;
+                n ++;
+            }
+        }
+        index.force();
+        map(oldCapacity << 1);
+        for (int slot = 0; slot < capacity; slot ++) {
+            index.putInt(slotOffset(slot) + KEY_SIZE + 8, 0);
+        }
+        final byte[] key = new byte[KEY_SIZE];
+        for (int i = 0; i < n; i ++) {
+            System.arraycopy(keys, i * KEY_SIZE, key, 0, KEY_SIZE);
+            putSlot(slotOffset(findSlot(key)), key, offsets[i], lengths[i]);
+        }
+    }
+
+    /**
+     * Find the slot holding the given key, or the empty slot where it would be inserted.
+     */
+    private int findSlot(final byte[] key) {
+        final int mask = capacity - 1;
+        int slot = (key[0] & 0xff | (key[1] & 0xff) << 8 | (key[2] & 0xff) << 16 | (key[3] & 0xff) << 24) & mask;
+        for (;;) {
+            final int slotOffset = slotOffset(slot);
+            if (index.getInt(slotOffset + KEY_SIZE + 8) == 0 || keyMatches(slotOffset, key)) {
+                return slot;
+            }
+            slot = slot + 1 & mask;
+        }
+    }
+
+    private boolean keyMatches(final int slotOffset, final byte[] key) {
+        for (int i = 0; i < KEY_SIZE; i ++) {
+            if (index.get(slotOffset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void putSlot(final int slotOffset, final byte[] key, final long offset, final int length) {
+        for (int i = 0; i < KEY_SIZE; i ++) {
+            index.put(slotOffset + i, key[i]);
+        }
+        index.putLong(slotOffset + KEY_SIZE, offset);
+        index.putInt(slotOffset + KEY_SIZE + 8, length);
+    }
+
+    private static int slotOffset(final int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * Determine whether a whole record, positioned at its start, has the length and checksum given in its header.
+     */
+    private static boolean checkRecord(final ByteBuffer record) {
+        return record.getInt(0) == record.capacity() - RECORD_OVERHEAD && record.getInt(4) == checksum(record);
+    }
+
+    private static int checksum(final ByteBuffer record) {
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, record.capacity() - RECORD_HEADER_SIZE);
+        return (int) crc.getValue();
+    }
+
+    private void readFully(final FileChannel channel, final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int res = channel.read(buffer, position);
+            if (res == -1) {
+                throw Messages.log.resultStoreTruncated(dataPath);
+            }
+            position += res;
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
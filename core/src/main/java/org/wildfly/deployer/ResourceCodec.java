@@ -18,27 +18,34 @@
 
 package org.wildfly.deployer;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
- * A deployer chain.
+ * A codec for the values of a resource, which allows the results of {@linkplain DeployerBuilder#cacheable(Fingerprint) cacheable}
+ * deployers producing the resource to be kept in a {@link PersistentResultStore}.
  *
+ * @param <T> the resource value type
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
-public interface DeployerChain {
+public interface ResourceCodec<T> {
 
     /**
-     * Create a new execution builder for this deployer chain.
+     * Write a resource value.
      *
-     * @param name the name of the deployment for diagnostic purposes (must not be {@code null})
-     * @return the new deployer execution builder (not {@code null})
+     * @param value the value (not {@code null})
+     * @param output the output to write to
+     * @throws IOException if writing fails
      */
-    DeployerExecutionBuilder createExecutionBuilder(String name);
+    void encode(T value, DataOutput output) throws IOException;
 
     /**
-     * Get a new deployer chain builder.
+     * Read a resource value written by {@link #encode(Object, DataOutput)}.
      *
-     * @return the deployer chain builder (not {@code null})
+     * @param input the input to read from
+     * @return the value
+     * @throws IOException if reading fails
      */
-    static DeployerChainBuilder builder() {
-        return new DeployerChainBuilderImpl();
-    }
+    T decode(DataInput input) throws IOException;
 }
@@ -0,0 +1,146 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import static java.util.Collections.emptyList;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The declarations of a resource.  Deployers may be registered from many threads at once, so all updates are
+ * lock-free.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class ResourceInfo {
+    private static final Phase[] PHASES = Phase.values();
+
+    private final String name;
+    private final AtomicReference<Multiplicity> multiplicity = new AtomicReference<>(Multiplicity.SYMBOLIC);
+    private volatile boolean streamed;
+    // the multiplicity of an initial resource, or null if it is not one
+    private volatile Multiplicity initialMultiplicity;
+    // phase ordinal -> mode, or null for none
+    private final AtomicReferenceArray<Mode> modes = new AtomicReferenceArray<>(PHASES.length);
+    // phase ordinal -> deployers, or null for none
+    private final AtomicReferenceArray<ConcurrentLinkedQueue<DeployerBuilderImpl>> resourceUsers = new AtomicReferenceArray<>(PHASES.length);
+
+    ResourceInfo(final String name) {
+        this.name = name;
+    }
+
+    Multiplicity getMultiplicity() {
+        return multiplicity.get();
+    }
+
+    ResourceInfo setMultiplicity(final Multiplicity newMultiplicity) {
+        final AtomicReference<Multiplicity> multiplicity = this.multiplicity;
+        Multiplicity oldVal, newVal;
+        do {
+            oldVal = multiplicity.get();
+            // throws if the multiplicities conflict
+            newVal = oldVal.combineWith(name, newMultiplicity);
+            if (newVal == oldVal) {
+                return this;
+            }
+        } while (! multiplicity.compareAndSet(oldVal, newVal));
+        return this;
+    }
+
+    ResourceInfo add(Phase phase, final Mode mode, DeployerBuilderImpl builderImpl) {
+        final int idx = phase.ordinal();
+        final AtomicReferenceArray<Mode> modes = this.modes;
+        Mode oldMode, newMode;
+        do {
+            oldMode = modes.get(idx);
+            newMode = mode.max(oldMode);
+        } while (newMode != oldMode && ! modes.compareAndSet(idx, oldMode, newMode));
+        final AtomicReferenceArray<ConcurrentLinkedQueue<DeployerBuilderImpl>> resourceUsers = this.resourceUsers;
+        ConcurrentLinkedQueue<DeployerBuilderImpl> deployerBuilders = resourceUsers.get(idx);
+        if (deployerBuilders == null) {
+            final ConcurrentLinkedQueue<DeployerBuilderImpl> newDeployerBuilders = new ConcurrentLinkedQueue<>();
+            deployerBuilders = resourceUsers.compareAndSet(idx, null, newDeployerBuilders) ? newDeployerBuilders : resourceUsers.get(idx);
+        }
+        deployerBuilders.add(builderImpl);
+        return this;
+    }
+
+    ResourceInfo setInitial(final Multiplicity multiplicity) {
+        setMultiplicity(multiplicity);
+        initialMultiplicity = multiplicity;
+        return this;
+    }
+
+    /**
+     * Remove a deployer from a phase, recomputing the mode of the phase and the multiplicity from the remaining
+     * declarations.  This must not run concurrently with other updates.
+     *
+     * @param phase the phase
+     * @param builderImpl the deployer
+     */
+    void remove(final Phase phase, final DeployerBuilderImpl builderImpl) {
+        final int idx = phase.ordinal();
+        final ConcurrentLinkedQueue<DeployerBuilderImpl> deployerBuilders = resourceUsers.get(idx);
+        if (deployerBuilders == null || ! deployerBuilders.remove(builderImpl)) {
+            return;
+        }
+        Mode mode = null;
+        for (DeployerBuilderImpl remaining : deployerBuilders) {
+            mode = remaining.getMode(name).max(mode);
+        }
+        modes.set(idx, mode);
+        final Multiplicity initialMultiplicity = this.initialMultiplicity;
+        Multiplicity newMultiplicity = initialMultiplicity == null ? Multiplicity.SYMBOLIC : initialMultiplicity;
+        for (int i = 0; i < PHASES.length; i ++) {
+            final ConcurrentLinkedQueue<DeployerBuilderImpl> users = resourceUsers.get(i);
+            if (users != null) {
+                for (DeployerBuilderImpl remaining : users) {
+                    newMultiplicity = newMultiplicity.combineWith(name, remaining.getMultiplicity(name));
+                }
+            }
+        }
+        multiplicity.set(newMultiplicity);
+    }
+
+    Collection<DeployerBuilderImpl> getDeployersByPhase(Phase phase) {
+        final ConcurrentLinkedQueue<DeployerBuilderImpl> deployerBuilders = resourceUsers.get(phase.ordinal());
+        return deployerBuilders == null ? emptyList() : deployerBuilders;
+    }
+
+    boolean isStreamed() {
+        return streamed;
+    }
+
+    ResourceInfo setStreamed(final boolean streamed) {
+        this.streamed = streamed;
+        return this;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Mode getMode(final Phase phase) {
+        final Mode mode = modes.get(phase.ordinal());
+        return mode == null ? Mode.NONE : mode;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A multiple resource which may be consumed while its contributors are still running.  The item list is shared with
+ * the execution's multiple resource map, and is also used as the monitor for all stream state.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class ResourceStream {
+    private final String name;
+    private final int resourceId;
+    private final List<Object> items;
+    // guarded by items
+    private int remaining;
+
+    ResourceStream(final String name, final int resourceId, final List<Object> items, final int contributors) {
+        this.name = name;
+        this.resourceId = resourceId;
+        this.items = items;
+        this.remaining = contributors;
+    }
+
+    void add(Object item) {
+        final List<Object> items = this.items;
+        synchronized (items) {
+            items.add(item);
+            items.notifyAll();
+        }
+    }
+
+    int getResourceId() {
+        return resourceId;
+    }
+
+    /**
+     * Indicate that a contributor has completed.
+     *
+     * @return {@code true} if it was the last contributor, {@code false} otherwise
+     */
+    boolean contributorDone() {
+        final List<Object> items = this.items;
+        synchronized (items) {
+            assert remaining > 0;
+            if (--remaining == 0) {
+                items.notifyAll();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    Iterator<Object> iterator() {
+        return new Itr();
+    }
+
+    final class Itr implements Iterator<Object> {
+        private int idx;
+
+        public boolean hasNext() {
+            final List<Object> items = ResourceStream.this.items;
+            synchronized (items) {
+                while (idx == items.size()) {
+                    if (remaining == 0) {
+                        return false;
+                    }
+                    try {
+                        items.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw Messages.log.streamInterrupted(name);
+                    }
+                }
+                return true;
+            }
+        }
+
+        public Object next() {
+            if (! hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final List<Object> items = ResourceStream.this.items;
+            synchronized (items) {
+                return items.get(idx++);
+            }
+        }
+    }
+}
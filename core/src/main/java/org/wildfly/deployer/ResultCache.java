@@ -0,0 +1,246 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the results of cacheable deployers, shared by every execution of a chain.  The least recently
+ * used entry is evicted once the cache is full.  If the chain has a {@link PersistentResultStore}, results of
+ * {@linkplain DeployerBuilder#identifiedBy(String) identified} deployers whose produced resources all have codecs are
+ * also written to the store, and results missing from memory are looked up there.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class ResultCache {
+    private static final int FINGERPRINT_BYTES = 1;
+    private static final int FINGERPRINT_STRING = 2;
+
+    // guarded by this
+    private final LinkedHashMap<Key, Entry> entries;
+    // may be null
+    private final PersistentResultStore store;
+    private final Map<String, ResourceCodec<?>> codecs;
+
+    ResultCache(final int maxSize, final PersistentResultStore store, final Map<String, ResourceCodec<?>> codecs) {
+        this.store = store;
+        this.codecs = codecs;
+        entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    Entry get(final DeployerInfo deployerInfo, final Key key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null || store == null || deployerInfo.getIdentity() == null) {
+            return entry;
+        }
+        try {
+            final byte[] digest = digest(deployerInfo, key);
+            if (digest == null) {
+                return null;
+            }
+            final byte[] bytes = store.get(digest);
+            if (bytes == null) {
+                return null;
+            }
+            entry = decode(bytes);
+        } catch (IOException e) {
+            Messages.log.resultStoreFailed(e);
+            return null;
+        }
+        if (entry != null) {
+            synchronized (this) {
+                entries.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    void put(final DeployerInfo deployerInfo, final Key key, final Entry entry) {
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+        if (store == null || deployerInfo.getIdentity() == null) {
+            return;
+        }
+        try {
+            final byte[] digest = digest(deployerInfo, key);
+            if (digest == null) {
+                return;
+            }
+            final byte[] bytes = encode(entry);
+            if (bytes != null) {
+                store.put(digest, bytes);
+            }
+        } catch (IOException e) {
+            Messages.log.resultStoreFailed(e);
+        }
+    }
+
+    /**
+     * Compute the persistent key of a result from the deployer identity and the fingerprints, or return {@code null} if
+     * a fingerprint is neither a string nor a byte array.  Other fingerprints are only known to be equal within this
+     * process, so their results are not persisted.  The type of each fingerprint is part of the key.
+     */
+    private static byte[] digest(final DeployerInfo deployerInfo, final Key key) throws IOException {
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream os = new DataOutputStream(baos)) {
+            os.writeUTF(deployerInfo.getIdentity());
+            for (Object fingerprint : key.fingerprints) {
+                final byte[] bytes;
+                if (fingerprint instanceof byte[]) {
+                    bytes = (byte[]) fingerprint;
+                    os.writeByte(FINGERPRINT_BYTES);
+                } else if (fingerprint instanceof String) {
+                    bytes = ((String) fingerprint).getBytes(StandardCharsets.UTF_8);
+                    os.writeByte(FINGERPRINT_STRING);
+                } else {
+                    return null;
+                }
+                os.writeInt(bytes.length);
+                os.write(bytes);
+            }
+        }
+        return messageDigest.digest(baos.toByteArray());
+    }
+
+    /**
+     * Encode a result, or return {@code null} if a produced resource has no codec.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private byte[] encode(final Entry entry) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream os = new DataOutputStream(baos)) {
+            os.writeInt(entry.getCount());
+            for (int i = 0; i < entry.getCount(); i ++) {
+                final String name = entry.getName(i);
+                final ResourceCodec codec = codecs.get(name);
+                final Object value = entry.getValue(i);
+                if (codec == null && value != null) {
+                    return null;
+                }
+                os.writeUTF(name);
+                os.writeBoolean(value != null);
+                if (value != null) {
+                    codec.encode(value, os);
+                }
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decode a result, or return {@code null} if a produced resource no longer has a codec.
+     */
+    private Entry decode(final byte[] bytes) throws IOException {
+        try (DataInputStream is = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            final int count = is.readInt();
+            final String[] names = new String[count];
+            final Object[] values = new Object[count];
+            for (int i = 0; i < count; i ++) {
+                names[i] = is.readUTF();
+                if (is.readBoolean()) {
+                    final ResourceCodec<?> codec = codecs.get(names[i]);
+                    if (codec == null) {
+                        return null;
+                    }
+                    values[i] = codec.decode(is);
+                }
+            }
+            return new Entry(names, values);
+        }
+    }
+
+    /**
+     * The identity of a deployer run: the deployer and the fingerprints of everything it consumed.
+     */
+    static final class Key {
+        private final int deployerId;
+        private final Object[] fingerprints;
+        private final int hashCode;
+
+        Key(final int deployerId, final Object[] fingerprints) {
+            this.deployerId = deployerId;
+            this.fingerprints = fingerprints;
+            // fingerprints such as content digests are arrays, which must be compared by content
+            hashCode = deployerId * 31 + Arrays.deepHashCode(fingerprints);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Key && equals((Key) obj);
+        }
+
+        boolean equals(final Key other) {
+            return this == other || other != null && hashCode == other.hashCode && deployerId == other.deployerId && Arrays.deepEquals(fingerprints, other.fingerprints);
+        }
+    }
+
+    /**
+     * The resources produced by a deployer run, in the order they were produced.
+     */
+    static final class Entry {
+        private final String[] names;
+        private final Object[] values;
+
+        Entry(final String[] names, final Object[] values) {
+            this.names = names;
+            this.values = values;
+        }
+
+        int getCount() {
+            return names.length;
+        }
+
+        String getName(int index) {
+            return names[index];
+        }
+
+        Object getValue(int index) {
+            return values[index];
+        }
+    }
+}
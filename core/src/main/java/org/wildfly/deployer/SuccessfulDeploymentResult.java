@@ -19,6 +19,8 @@
 package org.wildfly.deployer;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
 
 import org.wildfly.common.Assert;
 
@@ -34,7 +36,8 @@ public interface SuccessfulDeploymentResult extends DeploymentResult {
      * @param name the resource name (must not be {@code null})
      * @param type the resource type (must not be {@code null})
      * @return the produced resource (may be {@code null})
-     * @throws IllegalArgumentException if this deployer was not declared to consume {@code name}, or if {@code name} or {@code type} is {@code null}
+     * @throws IllegalArgumentException if {@code name} was not declared as a final single resource of the deployer
+     *      chain, or if {@code name} or {@code type} is {@code null}
      * @throws ClassCastException if the cast failed
      */
     default <T> T consume(Class<T> type, String name) {
@@ -43,11 +46,14 @@ public interface SuccessfulDeploymentResult extends DeploymentResult {
     }
 
     /**
-     * Consume the value produced for the named resource.
+     * Consume the value produced for the named resource.  Only the resources which were declared as
+     * {@linkplain DeployerChainBuilder#addFinalResource(String) final resources} of the chain are retained after
+     * deployment completes.
      *
      * @param name the resource name (must not be {@code null})
      * @return the produced resource (may be {@code null})
-     * @throws IllegalArgumentException if this deployer was not declared to consume {@code name}, or if {@code name} is {@code null}
+     * @throws IllegalArgumentException if {@code name} was not declared as a final single resource of the deployer
+     *      chain, or if {@code name} is {@code null}
      */
     Object consume(String name);
 
@@ -57,7 +63,8 @@ public interface SuccessfulDeploymentResult extends DeploymentResult {
      * @param name the resource name (must not be {@code null})
      * @param type the resource element type (must not be {@code null})
      * @return the produced resources (may be empty, will not be {@code null})
-     * @throws IllegalArgumentException if this deployer was not declared to consume {@code name}, or if {@code name} or {@code type} is {@code null}
+     * @throws IllegalArgumentException if {@code name} was not declared as a final multiple resource of the deployer
+     *      chain, or if {@code name} or {@code type} is {@code null}
      */
     @SuppressWarnings("unchecked")
     default <T> Collection<T> consumeMulti(String name, Class<T> type) {
@@ -66,11 +73,23 @@ public interface SuccessfulDeploymentResult extends DeploymentResult {
     }
 
     /**
-     * Consume all of the values produced for the named resource.
+     * Consume all of the values produced for the named resource.  The returned collection is immutable.
      *
      * @param name the resource name (must not be {@code null})
      * @return the produced resources (may be empty, will not be {@code null})
-     * @throws IllegalArgumentException if this deployer was not declared to consume {@code name}, or if {@code name} is {@code null}
+     * @throws IllegalArgumentException if {@code name} was not declared as a final multiple resource of the deployer
+     *      chain, or if {@code name} is {@code null}
      */
     Collection<?> consumeMulti(String name) throws IllegalArgumentException;
+
+    /**
+     * Get the names of the {@linkplain DeploymentContext#produceLazily(String, java.util.function.Supplier) lazily produced}
+     * resources whose suppliers were never called, because no deployer consumed them.  Lazily produced final resources
+     * are not included, since they may still be consumed from this result.
+     *
+     * @return the resource names (not {@code null}, immutable)
+     */
+    default Set<String> getUnconsumedLazyResources() {
+        return Collections.emptySet();
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a single undeploy action.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public final class UndeployActionResult {
+    private final Deployer deployer;
+    private final boolean started;
+    private final long duration;
+    private final Throwable problem;
+
+    UndeployActionResult(final Deployer deployer, final boolean started, final long duration, final Throwable problem) {
+        this.deployer = deployer;
+        this.started = started;
+        this.duration = duration;
+        this.problem = problem;
+    }
+
+    /**
+     * Get the deployer which registered the action.
+     *
+     * @return the deployer (not {@code null})
+     */
+    public Deployer getDeployer() {
+        return deployer;
+    }
+
+    /**
+     * Determine whether the action was started.  An action is not started if the undeploy deadline expired first.
+     *
+     * @return {@code true} if the action was started, {@code false} otherwise
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Determine whether the action has completed, either normally or with a {@linkplain #getProblem() problem}.
+     *
+     * @return {@code true} if the action has completed, {@code false} if it was not started or is still running
+     */
+    public boolean isComplete() {
+        return duration != -1L;
+    }
+
+    /**
+     * Get the amount of time the action took to run.
+     *
+     * @param timeUnit the time unit to return
+     * @return the time, or {@code -1} if the action has not completed
+     */
+    public long getDuration(TimeUnit timeUnit) {
+        return duration == -1L ? -1L : timeUnit.convert(duration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the exception thrown by the action, if any.
+     *
+     * @return the exception, or {@code null} if the action did not fail
+     */
+    public Throwable getProblem() {
+        return problem;
+    }
+}
@@ -0,0 +1,696 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import static java.lang.Math.max;
+import static java.util.concurrent.locks.LockSupport.park;
+import static java.util.concurrent.locks.LockSupport.unpark;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+class UndeployExecutionImpl implements BulkUndeployExecution {
+    private final AtomicReference<State> stateRef;
+    private final RunningState runningState;
+
+    private final Executor executor;
+    private final UndeployPlan plan;
+    // node -> predecessors remaining while waiting, then chunks and pending asynchronous actions once started
+    private final AtomicIntegerArray counters;
+    // action -> start time relative to the start of the execution, plus one; zero if not yet started
+    private final AtomicLongArray actionStarts;
+    // action -> duration, plus one; zero if not yet complete
+    private final AtomicLongArray actionDurations;
+    private final AtomicReferenceArray<Throwable> actionProblems;
+    private final String name;
+    // segment -> name of the deployment it undeploys
+    private final String[] segmentNames;
+    // true if this undeploys several deployments under a name of its own
+    private final boolean bulk;
+    // segment -> number of its nodes which are not yet complete
+    private final AtomicIntegerArray segmentNodesRemaining;
+    // segment -> duration, plus one; zero if not yet complete
+    private final AtomicLongArray segmentDurations;
+    private final long startTime;
+    // the deadline relative to the start time, or -1 if there is none
+    private final long timeout;
+    // claim -> gate which opens once the claim is released
+    private final ClaimGate[] claimGates;
+    private volatile ScheduledFuture<?> watchdog;
+
+    UndeployExecutionImpl(final UndeployPlan plan, final Executor executor, final long timeout, final String name) {
+        this(plan, executor, timeout, name, null);
+    }
+
+    UndeployExecutionImpl(final UndeployPlan plan, final Executor executor, final long timeout, final String name, final String[] segmentNames) {
+        this.executor = executor;
+        this.plan = plan;
+        this.timeout = timeout;
+        this.name = name;
+        bulk = segmentNames != null;
+        this.segmentNames = bulk ? segmentNames : new String[] { name };
+        final int segmentCount = plan.getSegmentCount();
+        assert this.segmentNames.length == segmentCount;
+        segmentNodesRemaining = new AtomicIntegerArray(segmentCount);
+        segmentDurations = new AtomicLongArray(segmentCount);
+        for (int i = 0; i < segmentCount; i ++) {
+            final int segmentNodes = plan.getSegmentNodeEnd(i) - plan.getSegmentNodeStart(i);
+            if (segmentNodes == 0) {
+                segmentDurations.set(i, 1);
+            } else {
+                segmentNodesRemaining.set(i, segmentNodes);
+            }
+        }
+        final int[] predecessorCounts = plan.getPredecessorCounts();
+        counters = new AtomicIntegerArray(predecessorCounts);
+        final int actionCount = plan.getActionCount();
+        actionStarts = new AtomicLongArray(actionCount);
+        actionDurations = new AtomicLongArray(actionCount);
+        actionProblems = new AtomicReferenceArray<>(actionCount);
+        final UndeployPlan.Claims claims = plan.getClaims();
+        final int claimCount = claims.getCount();
+        claimGates = new ClaimGate[claimCount];
+        final int[] holderCounts = claims.getHolderCounts();
+        for (int i = 0; i < claimCount; i ++) {
+            claimGates[i] = new ClaimGate(claims.getName(i), holderCounts[i]);
+        }
+        startTime = System.nanoTime();
+        runningState = new RunningState(predecessorCounts.length);
+        stateRef = new AtomicReference<>(runningState);
+    }
+
+    void run() {
+        final int[] predecessorCounts = plan.getPredecessorCounts();
+        final int nodeCount = predecessorCounts.length;
+        if (nodeCount == 0) {
+            runningState.complete(false);
+            return;
+        }
+        if (timeout != -1L) {
+            watchdog = Watchdog.INSTANCE.schedule(this::deadlineExpired, timeout, TimeUnit.NANOSECONDS);
+        }
+        final UndeployPlan plan = this.plan;
+        boolean hasInline = false;
+        for (int node = 0; node < nodeCount; node ++) {
+            if (predecessorCounts[node] == 0) {
+                if (plan.isInline(node)) {
+                    hasInline = true;
+                } else {
+                    startNode(node);
+                }
+            }
+        }
+        if (hasInline) {
+            // run these from a task, so that even inline nodes are subject to any limit imposed by the executor
+            executor.execute(() -> {
+                for (int node = 0; node < nodeCount; node ++) {
+                    if (predecessorCounts[node] == 0 && plan.isInline(node)) {
+                        startNode(node);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Start a node whose predecessors are all complete.  Cheap nodes are run directly on the calling thread, along
+     * with any cheap nodes which they release in turn; other nodes are dispatched to the executor one chunk per task.
+     * Cheap nodes are only ever run by a task of the executor.
+     *
+     * @param node the node to start
+     */
+    private void startNode(int node) {
+        final UndeployPlan plan = this.plan;
+        int[] ready = null;
+        int readyCount = 0;
+        for (;;) {
+            if (isDone()) {
+                // nothing new is started once the deadline has passed
+                return;
+            }
+            final int chunkStart = plan.getChunkStart(node);
+            final int chunkEnd = plan.getChunkEnd(node);
+            if (plan.isInline(node)) {
+                runActions(node, plan.getActionStart(chunkStart), plan.getActionEnd(chunkEnd - 1));
+                final int end = plan.getSuccessorEnd(node);
+                for (int i = plan.getSuccessorStart(node); i < end; i ++) {
+                    final int successor = plan.getSuccessor(i);
+                    if (counters.decrementAndGet(successor) == 0) {
+                        if (ready == null) {
+                            ready = new int[4];
+                        } else if (readyCount == ready.length) {
+                            ready = Arrays.copyOf(ready, readyCount << 1);
+                        }
+                        ready[readyCount ++] = successor;
+                    }
+                }
+                nodeDone(node);
+            } else {
+                counters.set(node, chunkEnd - chunkStart);
+                for (int chunk = chunkStart; chunk < chunkEnd; chunk ++) {
+                    final int actionStart = plan.getActionStart(chunk);
+                    final int actionEnd = plan.getActionEnd(chunk);
+                    final int owner = node;
+                    executor.execute(() -> {
+                        try {
+                            runActions(owner, actionStart, actionEnd);
+                        } finally {
+                            chunkDone(owner);
+                        }
+                    });
+                }
+            }
+            if (readyCount == 0) {
+                return;
+            }
+            node = ready[-- readyCount];
+        }
+    }
+
+    private void runActions(final int node, final int start, final int end) {
+        final UndeployPlan plan = this.plan;
+        for (int i = start; i < end && ! isDone(); i ++) {
+            final long begin = System.nanoTime();
+            actionStarts.set(i, max(0L, begin - startTime) + 1);
+            final Action<?, ?> action = plan.getAction(i);
+            if (action.isAsync()) {
+                final CompletionStage<?> stage;
+                try {
+                    stage = action.start();
+                } catch (Throwable t) {
+                    actionDone(i, begin, t);
+                    continue;
+                }
+                if (stage == null) {
+                    actionDone(i, begin, null);
+                } else {
+                    // the running chunk still holds its own count, so this cannot reach zero here
+                    counters.incrementAndGet(node);
+                    final int index = i;
+                    // never run the rest of the undeploy on whichever thread completes the stage
+                    stage.whenCompleteAsync((ignored, problem) -> {
+                        actionDone(index, begin, problem instanceof CompletionException && problem.getCause() != null ? problem.getCause() : problem);
+                        chunkDone(node);
+                    }, executor);
+                }
+            } else {
+                Throwable problem = null;
+                try {
+                    action.run();
+                } catch (Throwable t) {
+                    problem = t;
+                }
+                actionDone(i, begin, problem);
+            }
+        }
+    }
+
+    private void actionDone(final int index, final long begin, final Throwable problem) {
+        if (problem != null) {
+            actionProblems.set(index, problem);
+            Messages.log.actionFailed(problem);
+        }
+        actionDurations.set(index, max(0L, System.nanoTime() - begin) + 1);
+    }
+
+    private void deadlineExpired() {
+        if (isDone()) {
+            return;
+        }
+        // report the longest-running actions first
+        final long now = max(0L, System.nanoTime() - startTime) + 1;
+        final AtomicLongArray actionStarts = this.actionStarts;
+        final AtomicLongArray actionDurations = this.actionDurations;
+        final int actionCount = actionStarts.length();
+        final PriorityQueue<long[]> stragglers = new PriorityQueue<>(MAX_STRAGGLERS + 1, (a, b) -> Long.compare(a[1], b[1]));
+        int running = 0;
+        int notStarted = 0;
+        for (int i = 0; i < actionCount; i ++) {
+            final long start = actionStarts.get(i);
+            if (start == 0) {
+                notStarted ++;
+            } else if (actionDurations.get(i) == 0) {
+                running ++;
+                stragglers.add(new long[] { i, now - start });
+                if (stragglers.size() > MAX_STRAGGLERS) {
+                    stragglers.poll();
+                }
+            }
+        }
+        if (! runningState.complete(true)) {
+            // every node completed while the stragglers were being found
+            return;
+        }
+        Messages.log.undeployTimedOut(name, timeout / 1_000_000L, running, notStarted);
+        final long[][] slowest = stragglers.toArray(new long[stragglers.size()][]);
+        Arrays.sort(slowest, (a, b) -> Long.compare(b[1], a[1]));
+        for (long[] straggler : slowest) {
+            final int index = (int) straggler[0];
+            Messages.log.undeployStraggler(plan.getDeployerOfAction(index), segmentNames[plan.getSegmentOfAction(index)], straggler[1] / 1_000_000L);
+        }
+    }
+
+    /**
+     * Run an action once every node of this undeploy which holds the given claim is complete, or once this undeploy is
+     * complete, whichever comes first.  If no node holds the claim, the action is run immediately.
+     *
+     * @param name the claim name
+     * @param action the action to run
+     */
+    void whenClaimReleased(final String name, final Runnable action) {
+        ClaimGate first = null;
+        int count = 0;
+        for (ClaimGate gate : claimGates) {
+            if (gate.getName().equals(name)) {
+                if (first == null) {
+                    first = gate;
+                }
+                count ++;
+            }
+        }
+        if (count == 0) {
+            action.run();
+        } else if (count == 1) {
+            first.whenOpen(action);
+        } else {
+            // a merged undeploy may hold the same claim in more than one deployment
+            final AtomicInteger remaining = new AtomicInteger(count);
+            final Runnable countDown = () -> {
+                if (remaining.decrementAndGet() == 0) {
+                    action.run();
+                }
+            };
+            for (ClaimGate gate : claimGates) {
+                if (gate.getName().equals(name)) {
+                    gate.whenOpen(countDown);
+                }
+            }
+        }
+    }
+
+    /**
+     * The maximum number of still-running actions to name when an undeploy deadline expires.
+     */
+    private static final int MAX_STRAGGLERS = 5;
+
+    List<UndeployActionResult> getActionResults(final int start, final int end) {
+        final UndeployPlan plan = this.plan;
+        final UndeployActionResult[] results = new UndeployActionResult[end - start];
+        for (int i = start; i < end; i ++) {
+            final long duration = actionDurations.get(i);
+            results[i - start] = new UndeployActionResult(plan.getDeployerOfAction(i), actionStarts.get(i) != 0, duration == 0 ? -1L : duration - 1, actionProblems.get(i));
+        }
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    private void chunkDone(final int node) {
+        if (counters.decrementAndGet(node) == 0) {
+            final UndeployPlan plan = this.plan;
+            final int end = plan.getSuccessorEnd(node);
+            for (int i = plan.getSuccessorStart(node); i < end; i ++) {
+                final int successor = plan.getSuccessor(i);
+                if (counters.decrementAndGet(successor) == 0) {
+                    startNode(successor);
+                }
+            }
+            nodeDone(node);
+        }
+    }
+
+    private void nodeDone(final int node) {
+        final UndeployPlan.Claims claims = plan.getClaims();
+        final int claimEnd = claims.getNodeClaimEnd(node);
+        for (int i = claims.getNodeClaimStart(node); i < claimEnd; i ++) {
+            claimGates[claims.getNodeClaim(i)].holderDone();
+        }
+        final int segment = plan.getSegmentOfNode(node);
+        if (segmentNodesRemaining.decrementAndGet(segment) == 0) {
+            segmentDurations.set(segment, max(0L, System.nanoTime() - startTime) + 1);
+        }
+        runningState.nodeDone();
+    }
+
+    public String getDeploymentName() {
+        return name;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public boolean isDone() {
+        return stateRef.get().isDone();
+    }
+
+    public void await() throws InterruptedException {
+        final AtomicReference<State> stateRef = this.stateRef;
+        State oldState = stateRef.get();
+        if (oldState.isDone()) {
+            return;
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        final Thread thread = Thread.currentThread();
+        if (! oldState.isWaitingFor(thread)) {
+            // CAS in our thread
+            State newState = new WaitingState(oldState, thread);
+            while (! stateRef.compareAndSet(oldState, newState)) {
+                oldState = stateRef.get();
+                if (oldState.isDone()) {
+                    return;
+                }
+                assert ! oldState.isWaitingFor(thread);
+                newState = new WaitingState(oldState, thread);
+            }
+        }
+        park(this);
+        oldState = stateRef.get();
+        while (! oldState.isDone()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            park(this);
+            oldState = stateRef.get();
+        }
+    }
+
+    public BulkUndeployResult getUndeployResult() throws IllegalStateException {
+        return stateRef.get().getUndeployResult();
+    }
+
+    public <T, U> void onComplete(final BiConsumer<T, U> consumer, final T param1, final U param2) {
+        final AtomicReference<State> stateRef = this.stateRef;
+        State oldState;
+        State newState;
+        do {
+            oldState = stateRef.get();
+            if (oldState.isDone()) {
+                executor.execute(() -> consumer.accept(param1, param2));
+                return;
+            }
+            newState = new OnCompleteState<>(oldState, consumer, param1, param2);
+        } while (! stateRef.compareAndSet(oldState, newState));
+
+    }
+
+    static abstract class State {
+        State() {
+        }
+
+        void signalCompletion(final Executor executor) {}
+
+        boolean isWaitingFor(final Thread thread) {
+            return false;
+        }
+
+        BulkUndeployResult getUndeployResult() {
+            throw Messages.log.invalidDeploymentExecutionState();
+        }
+
+        boolean isDone() {
+            return false;
+        }
+
+    }
+
+    final class CompleteState extends State implements BulkUndeployResult {
+        private final long duration;
+        private final boolean timedOut;
+        private final List<UndeployResult> deploymentResults;
+        private volatile List<UndeployActionResult> actionResults;
+
+        CompleteState(final long duration, final boolean timedOut) {
+            this.duration = duration;
+            this.timedOut = timedOut;
+            final int segmentCount = segmentNames.length;
+            if (! bulk) {
+                deploymentResults = Collections.singletonList(this);
+            } else {
+                final UndeployResult[] results = new UndeployResult[segmentCount];
+                for (int i = 0; i < segmentCount; i ++) {
+                    final long segmentDuration = segmentDurations.get(i);
+                    results[i] = new SegmentResult(i, segmentDuration == 0 ? duration : segmentDuration - 1, timedOut && segmentDuration == 0);
+                }
+                deploymentResults = Collections.unmodifiableList(Arrays.asList(results));
+            }
+        }
+
+        public String getDeploymentName() {
+            return name;
+        }
+
+        public long getDuration(final TimeUnit timeUnit) {
+            return timeUnit.convert(duration, TimeUnit.NANOSECONDS);
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        public List<UndeployActionResult> getActionResults() {
+            List<UndeployActionResult> actionResults = this.actionResults;
+            if (actionResults == null) {
+                this.actionResults = actionResults = UndeployExecutionImpl.this.getActionResults(0, plan.getActionCount());
+            }
+            return actionResults;
+        }
+
+        public List<UndeployResult> getDeploymentResults() {
+            return deploymentResults;
+        }
+
+        boolean isDone() {
+            return true;
+        }
+
+        BulkUndeployResult getUndeployResult() {
+            return this;
+        }
+    }
+
+    /**
+     * The result of undeploying one of the deployments of a bulk undeploy.
+     */
+    final class SegmentResult implements UndeployResult {
+        private final int segment;
+        private final long duration;
+        private final boolean timedOut;
+        private volatile List<UndeployActionResult> actionResults;
+
+        SegmentResult(final int segment, final long duration, final boolean timedOut) {
+            this.segment = segment;
+            this.duration = duration;
+            this.timedOut = timedOut;
+        }
+
+        public String getDeploymentName() {
+            return segmentNames[segment];
+        }
+
+        public long getDuration(final TimeUnit timeUnit) {
+            return timeUnit.convert(duration, TimeUnit.NANOSECONDS);
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        public List<UndeployActionResult> getActionResults() {
+            List<UndeployActionResult> actionResults = this.actionResults;
+            if (actionResults == null) {
+                this.actionResults = actionResults = UndeployExecutionImpl.this.getActionResults(plan.getSegmentActionStart(segment), plan.getSegmentActionEnd(segment));
+            }
+            return actionResults;
+        }
+    }
+
+    final class RunningState extends State {
+        private final AtomicInteger nodesRemaining;
+
+        RunningState(final int nodeCount) {
+            nodesRemaining = new AtomicInteger(nodeCount);
+        }
+
+        void nodeDone() {
+            if (nodesRemaining.decrementAndGet() == 0) {
+                complete(false);
+            }
+        }
+
+        /**
+         * Complete the execution, unless it is already complete.  Whether the execution timed out is decided by the
+         * same transition, so once the deadline has passed, no further work is started.
+         *
+         * @param timedOut {@code true} if the deadline expired, {@code false} if every node is complete
+         * @return {@code true} if this call completed the execution, {@code false} if it was already complete
+         */
+        boolean complete(final boolean timedOut) {
+            State oldState;
+            final CompleteState completeState = new CompleteState(max(0L, System.nanoTime() - startTime), timedOut);
+            do {
+                oldState = stateRef.get();
+                if (oldState.isDone()) {
+                    // the deadline expired first, or vice versa
+                    return false;
+                }
+            } while (! stateRef.compareAndSet(oldState, completeState));
+            // whatever is still held will not be released in an orderly fashion now
+            for (ClaimGate gate : claimGates) {
+                gate.open();
+            }
+            final ScheduledFuture<?> watchdog = UndeployExecutionImpl.this.watchdog;
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            oldState.signalCompletion(executor);
+            return true;
+        }
+    }
+
+    static final class WaitingState extends State {
+        private final State next;
+        private final Thread thread;
+
+        WaitingState(final State next, final Thread thread) {
+            this.thread = thread;
+            this.next = next;
+        }
+
+        boolean isWaitingFor(final Thread thread) {
+            return thread == this.thread || next.isWaitingFor(thread);
+        }
+
+        void signalCompletion(final Executor executor) {
+            next.signalCompletion(executor);
+            unpark(thread);
+        }
+    }
+
+    static final class OnCompleteState<T, U> extends State {
+        private final State next;
+        private final BiConsumer<T, U> consumer;
+        private final T param1;
+        private final U param2;
+
+        OnCompleteState(final State next, final BiConsumer<T, U> consumer, final T param1, final U param2) {
+            this.consumer = consumer;
+            this.param1 = param1;
+            this.param2 = param2;
+            this.next = next;
+        }
+
+        boolean isWaitingFor(final Thread thread) {
+            return next.isWaitingFor(thread);
+        }
+
+        void signalCompletion(final Executor executor) {
+            next.signalCompletion(executor);
+            try {
+                executor.execute(() -> consumer.accept(param1, param2));
+            } catch (Throwable ignored) {}
+        }
+    }
+
+    static final class ClaimGate {
+        private final String name;
+        private final AtomicInteger holdersRemaining;
+        private final ConcurrentStack<Runnable> waiters = new ConcurrentStack<>();
+        private volatile boolean open;
+
+        ClaimGate(final String name, final int holders) {
+            this.name = name;
+            holdersRemaining = new AtomicInteger(holders);
+        }
+
+        String getName() {
+            return name;
+        }
+
+        void holderDone() {
+            if (holdersRemaining.decrementAndGet() == 0) {
+                open();
+            }
+        }
+
+        void open() {
+            open = true;
+            runWaiters();
+        }
+
+        void whenOpen(final Runnable action) {
+            if (open) {
+                action.run();
+                return;
+            }
+            waiters.push(action);
+            if (open) {
+                // it opened while we were registering; make sure that someone runs us
+                runWaiters();
+            }
+        }
+
+        private void runWaiters() {
+            Runnable waiter;
+            while ((waiter = waiters.pop()) != null) {
+                try {
+                    waiter.run();
+                } catch (Throwable t) {
+                    Messages.log.uncaughtException(t);
+                }
+            }
+        }
+    }
+
+    static final class Watchdog {
+        static final ScheduledThreadPoolExecutor INSTANCE;
+
+        static {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+                final Thread thread = new Thread(r, "undeploy watchdog");
+                thread.setDaemon(true);
+                // the thread outlives whichever deployment happened to start it, so it must not pin its class loader
+                thread.setContextClassLoader(null);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            INSTANCE = executor;
+        }
+
+        private Watchdog() {
+        }
+    }
+}
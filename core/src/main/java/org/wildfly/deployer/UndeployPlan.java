@@ -0,0 +1,528 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The compiled undeploy graph of a completed deployment.  Only deployers which registered undeploy actions are
+ * retained as nodes; a node may begin once every node which depended upon it during deployment has completed.
+ * Deployers without actions are bridged over when the plan is compiled.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class UndeployPlan {
+    private static final int[] NO_INTS = new int[0];
+
+    /**
+     * The maximum total cost of the actions which are grouped into a single task.
+     */
+    private static final int MAX_CHUNK_COST = DeploymentContext.UNDEPLOY_COST_EXPENSIVE;
+
+    /**
+     * The maximum total cost of a node whose actions are run directly by the thread which releases it.
+     */
+    private static final int MAX_INLINE_COST = 16;
+
+    static final UndeployPlan EMPTY = new UndeployPlan(Action.NO_ACTIONS, new int[1], new int[1], new boolean[0], new Deployer[0], new int[1], NO_INTS, NO_INTS, new int[2], Claims.NONE);
+
+    // the actions of chunk c are at [chunkStarts[c], chunkStarts[c + 1])
+    private final Action<?, ?>[] actions;
+    private final int[] chunkStarts;
+    // the chunks of node n are at [nodeChunkStarts[n], nodeChunkStarts[n + 1])
+    private final int[] nodeChunkStarts;
+    // nodes whose actions are cheap enough to run without dispatching to the executor
+    private final boolean[] inline;
+    // node -> the deployer which registered its actions
+    private final Deployer[] deployers;
+    // the nodes which may begin once node n is complete are at [successorStarts[n], successorStarts[n + 1])
+    private final int[] successorStarts;
+    private final int[] successors;
+    // node -> number of nodes which must complete before it may begin
+    private final int[] predecessorCounts;
+    // the nodes of deployment d are at [segmentStarts[d], segmentStarts[d + 1]); a plan which was not merged has one
+    private final int[] segmentStarts;
+    private final Claims claims;
+
+    private UndeployPlan(final Action<?, ?>[] actions, final int[] chunkStarts, final int[] nodeChunkStarts, final boolean[] inline, final Deployer[] deployers, final int[] successorStarts, final int[] successors, final int[] predecessorCounts, final int[] segmentStarts, final Claims claims) {
+        this.actions = actions;
+        this.chunkStarts = chunkStarts;
+        this.nodeChunkStarts = nodeChunkStarts;
+        this.inline = inline;
+        this.deployers = deployers;
+        this.successorStarts = successorStarts;
+        this.successors = successors;
+        this.predecessorCounts = predecessorCounts;
+        this.segmentStarts = segmentStarts;
+        this.claims = claims;
+    }
+
+    /**
+     * Compile the undeploy plan for a deployment.
+     *
+     * @param deployerChain the deployer chain
+     * @param actionsById the undeploy actions registered by each deployer, indexed by deployer id (entries may be {@code null})
+     * @return the compiled plan
+     */
+    static UndeployPlan compile(final DeployerChainImpl deployerChain, final Action<?, ?>[][] actionsById) {
+        final int deployerCount = actionsById.length;
+        // deployer id -> node index, or -1 if the deployer has no actions
+        final int[] nodeIndexes = new int[deployerCount];
+        int nodeCount = 0;
+        int actionCount = 0;
+        for (int i = 0; i < deployerCount; i ++) {
+            final Action<?, ?>[] actions = actionsById[i];
+            if (actions == null || actions.length == 0) {
+                nodeIndexes[i] = -1;
+            } else {
+                nodeIndexes[i] = nodeCount ++;
+                actionCount += actions.length;
+            }
+        }
+        if (nodeCount == 0) {
+            return EMPTY;
+        }
+        final Action<?, ?>[] actions = new Action<?, ?>[actionCount];
+        int[] chunkStarts = new int[nodeCount + 1];
+        final int[] nodeChunkStarts = new int[nodeCount + 1];
+        final boolean[] inline = new boolean[nodeCount];
+        final Deployer[] deployers = new Deployer[nodeCount];
+        final int[] successorStarts = new int[nodeCount + 1];
+        final int[] predecessorCounts = new int[nodeCount];
+        int[] successors = new int[nodeCount];
+        final Claims.Builder claimsBuilder = new Claims.Builder(nodeCount);
+        final BitSet[] bridged = new BitSet[deployerCount];
+        int actionIdx = 0;
+        int chunkIdx = 0;
+        int successorIdx = 0;
+        int node = 0;
+        for (int i = 0; i < deployerCount; i ++) {
+            if (nodeIndexes[i] == -1) {
+                continue;
+            }
+            final Action<?, ?>[] nodeActions = actionsById[i];
+            final DeployerInfo deployerInfo = deployerChain.getDeployer(i);
+            deployers[node] = deployerInfo.getDeployer();
+            nodeChunkStarts[node] = chunkIdx;
+            // group consecutive cheap actions into chunks; expensive actions get a chunk to themselves
+            int nodeCost = 0;
+            boolean async = false;
+            int chunkCost = MAX_CHUNK_COST;
+            for (Action<?, ?> action : nodeActions) {
+                final int cost = action.getCost();
+                if (chunkCost > MAX_CHUNK_COST - cost) {
+                    if (chunkIdx == chunkStarts.length - 1) {
+                        chunkStarts = Arrays.copyOf(chunkStarts, chunkStarts.length << 1);
+                    }
+                    chunkStarts[chunkIdx ++] = actionIdx;
+                    chunkCost = 0;
+                }
+                chunkCost += cost;
+                nodeCost = nodeCost + cost < 0 ? Integer.MAX_VALUE : nodeCost + cost;
+                async |= action.isAsync();
+                actions[actionIdx ++] = action;
+            }
+            // asynchronous actions are tracked with the node's counter, so such nodes are never run inline
+            inline[node] = ! async && nodeCost <= MAX_INLINE_COST;
+            successorStarts[node] = successorIdx;
+            final BitSet nearest = findNearestNodes(deployerInfo.getDependencies(), nodeIndexes, bridged);
+            final int cnt = nearest.cardinality();
+            if (successorIdx + cnt > successors.length) {
+                successors = Arrays.copyOf(successors, Math.max(successors.length << 1, successorIdx + cnt));
+            }
+            for (int s = nearest.nextSetBit(0); s >= 0; s = nearest.nextSetBit(s + 1)) {
+                successors[successorIdx ++] = s;
+                predecessorCounts[s] ++;
+            }
+            claimsBuilder.addNode(node, deployerInfo.getClaims());
+            node ++;
+        }
+        chunkStarts[chunkIdx] = actionIdx;
+        nodeChunkStarts[nodeCount] = chunkIdx;
+        successorStarts[nodeCount] = successorIdx;
+        return new UndeployPlan(actions, Arrays.copyOf(chunkStarts, chunkIdx + 1), nodeChunkStarts, inline, deployers, successorStarts, successorIdx == 0 ? NO_INTS : Arrays.copyOf(successors, successorIdx), predecessorCounts, new int[] { 0, nodeCount }, claimsBuilder.build());
+    }
+
+    /**
+     * Merge the plans of several deployments into a single plan which undeploys them all.  Each plan becomes one
+     * segment of the merged plan, in the given order.  The plans must not themselves be merged.
+     *
+     * @param plans the plans to merge
+     * @return the merged plan
+     */
+    static UndeployPlan merge(final UndeployPlan[] plans) {
+        final int segmentCount = plans.length;
+        int actionCount = 0, chunkCount = 0, nodeCount = 0, successorCount = 0;
+        for (UndeployPlan plan : plans) {
+            assert plan.getSegmentCount() == 1;
+            actionCount += plan.actions.length;
+            chunkCount += plan.chunkStarts.length - 1;
+            nodeCount += plan.predecessorCounts.length;
+            successorCount += plan.successors.length;
+        }
+        final Action<?, ?>[] actions = new Action<?, ?>[actionCount];
+        final int[] chunkStarts = new int[chunkCount + 1];
+        final int[] nodeChunkStarts = new int[nodeCount + 1];
+        final boolean[] inline = new boolean[nodeCount];
+        final Deployer[] deployers = new Deployer[nodeCount];
+        final int[] successorStarts = new int[nodeCount + 1];
+        final int[] successors = new int[successorCount];
+        final int[] predecessorCounts = new int[nodeCount];
+        final int[] segmentStarts = new int[segmentCount + 1];
+        int actionOffset = 0, chunkOffset = 0, nodeOffset = 0, successorOffset = 0;
+        for (int i = 0; i < segmentCount; i ++) {
+            final UndeployPlan plan = plans[i];
+            final int segmentActions = plan.actions.length;
+            final int segmentChunks = plan.chunkStarts.length - 1;
+            final int segmentNodes = plan.predecessorCounts.length;
+            final int segmentSuccessors = plan.successors.length;
+            segmentStarts[i] = nodeOffset;
+            System.arraycopy(plan.actions, 0, actions, actionOffset, segmentActions);
+            for (int c = 0; c < segmentChunks; c ++) {
+                chunkStarts[chunkOffset + c] = plan.chunkStarts[c] + actionOffset;
+            }
+            for (int n = 0; n < segmentNodes; n ++) {
+                nodeChunkStarts[nodeOffset + n] = plan.nodeChunkStarts[n] + chunkOffset;
+                successorStarts[nodeOffset + n] = plan.successorStarts[n] + successorOffset;
+            }
+            for (int e = 0; e < segmentSuccessors; e ++) {
+                successors[successorOffset + e] = plan.successors[e] + nodeOffset;
+            }
+            System.arraycopy(plan.inline, 0, inline, nodeOffset, segmentNodes);
+            System.arraycopy(plan.deployers, 0, deployers, nodeOffset, segmentNodes);
+            System.arraycopy(plan.predecessorCounts, 0, predecessorCounts, nodeOffset, segmentNodes);
+            actionOffset += segmentActions;
+            chunkOffset += segmentChunks;
+            nodeOffset += segmentNodes;
+            successorOffset += segmentSuccessors;
+        }
+        chunkStarts[chunkCount] = actionCount;
+        nodeChunkStarts[nodeCount] = chunkCount;
+        successorStarts[nodeCount] = successorCount;
+        segmentStarts[segmentCount] = nodeCount;
+        final Claims.Builder claimsBuilder = new Claims.Builder(nodeCount);
+        nodeOffset = 0;
+        for (UndeployPlan plan : plans) {
+            // claims are merged by name within a segment only, so that each deployment's claims are released separately
+            claimsBuilder.newSegment();
+            final Claims segmentClaims = plan.claims;
+            final int segmentNodes = plan.predecessorCounts.length;
+            for (int n = 0; n < segmentNodes; n ++) {
+                final int end = segmentClaims.getNodeClaimEnd(n);
+                for (int c = segmentClaims.getNodeClaimStart(n); c < end; c ++) {
+                    claimsBuilder.addNodeClaim(nodeOffset + n, segmentClaims.getName(segmentClaims.getNodeClaim(c)));
+                }
+            }
+            nodeOffset += segmentNodes;
+        }
+        return new UndeployPlan(actions, chunkStarts, nodeChunkStarts, inline, deployers, successorStarts, successors, predecessorCounts, segmentStarts, claimsBuilder.build());
+    }
+
+    /**
+     * Find the nearest nodes among the given dependencies, looking through any dependencies which have no actions.
+     *
+     * @param dependencies the deploy-time dependencies to search
+     * @param nodeIndexes the node index of each deployer id
+     * @param bridged the cached results for deployers without actions, indexed by deployer id
+     * @return the set of node indexes
+     */
+    private static BitSet findNearestNodes(final Set<DeployerInfo> dependencies, final int[] nodeIndexes, final BitSet[] bridged) {
+        // resolve the bridged deployers which are reached, deepest first; an explicit stack keeps long chains of
+        // deployers without undeploy actions from overflowing the thread stack
+        final ArrayDeque<DeployerInfo> stack = new ArrayDeque<>();
+        pushUnresolved(dependencies, nodeIndexes, bridged, stack);
+        while (! stack.isEmpty()) {
+            final DeployerInfo top = stack.peek();
+            final int id = top.getId();
+            if (bridged[id] != null) {
+                stack.pop();
+            } else if (! pushUnresolved(top.getDependencies(), nodeIndexes, bridged, stack)) {
+                stack.pop();
+                bridged[id] = combineNearestNodes(top.getDependencies(), nodeIndexes, bridged);
+            }
+        }
+        return combineNearestNodes(dependencies, nodeIndexes, bridged);
+    }
+
+    private static boolean pushUnresolved(final Set<DeployerInfo> dependencies, final int[] nodeIndexes, final BitSet[] bridged, final ArrayDeque<DeployerInfo> stack) {
+        boolean pushed = false;
+        for (DeployerInfo dependency : dependencies) {
+            final int id = dependency.getId();
+            if (nodeIndexes[id] == -1 && bridged[id] == null) {
+                stack.push(dependency);
+                pushed = true;
+            }
+        }
+        return pushed;
+    }
+
+    private static BitSet combineNearestNodes(final Set<DeployerInfo> dependencies, final int[] nodeIndexes, final BitSet[] bridged) {
+        final BitSet result = new BitSet();
+        for (DeployerInfo dependency : dependencies) {
+            final int id = dependency.getId();
+            final int nodeIndex = nodeIndexes[id];
+            if (nodeIndex != -1) {
+                result.set(nodeIndex);
+            } else {
+                result.or(bridged[id]);
+            }
+        }
+        return result;
+    }
+
+    int getNodeCount() {
+        return predecessorCounts.length;
+    }
+
+    int[] getPredecessorCounts() {
+        return predecessorCounts;
+    }
+
+    int getSegmentCount() {
+        return segmentStarts.length - 1;
+    }
+
+    int getSegmentNodeStart(int segment) {
+        return segmentStarts[segment];
+    }
+
+    int getSegmentNodeEnd(int segment) {
+        return segmentStarts[segment + 1];
+    }
+
+    int getSegmentActionStart(int segment) {
+        return chunkStarts[nodeChunkStarts[segmentStarts[segment]]];
+    }
+
+    int getSegmentActionEnd(int segment) {
+        return chunkStarts[nodeChunkStarts[segmentStarts[segment + 1]]];
+    }
+
+    /**
+     * Get the segment which contains a node.
+     *
+     * @param node the node index
+     * @return the segment index
+     */
+    int getSegmentOfNode(int node) {
+        final int[] segmentStarts = this.segmentStarts;
+        // find the last segment which starts at or before the node; empty segments share their start with the next one
+        int low = 0, high = segmentStarts.length - 2;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (segmentStarts[mid] <= node) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the segment which contains an action.
+     *
+     * @param index the action index
+     * @return the segment index
+     */
+    int getSegmentOfAction(int index) {
+        return getSegmentOfNode(getNodeOfAction(index));
+    }
+
+    Claims getClaims() {
+        return claims;
+    }
+
+    int getActionCount() {
+        return actions.length;
+    }
+
+    /**
+     * Get the deployer which registered an action.
+     *
+     * @param index the action index
+     * @return the deployer
+     */
+    Deployer getDeployerOfAction(int index) {
+        return deployers[getNodeOfAction(index)];
+    }
+
+    private int getNodeOfAction(int index) {
+        // chunks and nodes are never empty, so their start indexes are strictly increasing
+        int chunk = Arrays.binarySearch(chunkStarts, index);
+        if (chunk < 0) {
+            chunk = -chunk - 2;
+        }
+        int node = Arrays.binarySearch(nodeChunkStarts, chunk);
+        if (node < 0) {
+            node = -node - 2;
+        }
+        return node;
+    }
+
+    boolean isInline(int node) {
+        return inline[node];
+    }
+
+    int getChunkStart(int node) {
+        return nodeChunkStarts[node];
+    }
+
+    int getChunkEnd(int node) {
+        return nodeChunkStarts[node + 1];
+    }
+
+    int getActionStart(int chunk) {
+        return chunkStarts[chunk];
+    }
+
+    int getActionEnd(int chunk) {
+        return chunkStarts[chunk + 1];
+    }
+
+    Action<?, ?> getAction(int index) {
+        return actions[index];
+    }
+
+    int getSuccessorStart(int node) {
+        return successorStarts[node];
+    }
+
+    int getSuccessorEnd(int node) {
+        return successorStarts[node + 1];
+    }
+
+    int getSuccessor(int index) {
+        return successors[index];
+    }
+
+    /**
+     * The {@linkplain DeployerBuilder#claims(String) claims} held by the nodes of a plan.  A claim is released once
+     * every node which holds it is complete.  Claims are numbered in the order they are first seen; the same name may
+     * have more than one number in a merged plan.
+     */
+    static final class Claims {
+        static final Claims NONE = new Claims(new String[0], NO_INTS, null, NO_INTS);
+
+        private final String[] names;
+        // claim -> number of nodes which hold it
+        private final int[] holderCounts;
+        // the claims of node n are at [nodeClaimStarts[n], nodeClaimStarts[n + 1]); null if no node holds a claim
+        private final int[] nodeClaimStarts;
+        private final int[] nodeClaims;
+
+        private Claims(final String[] names, final int[] holderCounts, final int[] nodeClaimStarts, final int[] nodeClaims) {
+            this.names = names;
+            this.holderCounts = holderCounts;
+            this.nodeClaimStarts = nodeClaimStarts;
+            this.nodeClaims = nodeClaims;
+        }
+
+        int getCount() {
+            return names.length;
+        }
+
+        String getName(int claim) {
+            return names[claim];
+        }
+
+        int[] getHolderCounts() {
+            return holderCounts;
+        }
+
+        int getNodeClaimStart(int node) {
+            return nodeClaimStarts == null ? 0 : nodeClaimStarts[node];
+        }
+
+        int getNodeClaimEnd(int node) {
+            return nodeClaimStarts == null ? 0 : nodeClaimStarts[node + 1];
+        }
+
+        int getNodeClaim(int index) {
+            return nodeClaims[index];
+        }
+
+        static final class Builder {
+            private final int nodeCount;
+            private final Map<String, Integer> indexes = new HashMap<>();
+            private final List<String> names = new ArrayList<>();
+            private int[] holderCounts = NO_INTS;
+            private int[] nodeClaimStarts;
+            private int[] nodeClaims = NO_INTS;
+            private int nodeClaimCount;
+            private int lastNode;
+
+            Builder(final int nodeCount) {
+                this.nodeCount = nodeCount;
+            }
+
+            void newSegment() {
+                indexes.clear();
+            }
+
+            void addNode(final int node, final Set<String> claims) {
+                for (String name : claims) {
+                    addNodeClaim(node, name);
+                }
+            }
+
+            void addNodeClaim(final int node, final String name) {
+                if (nodeClaimStarts == null) {
+                    nodeClaimStarts = new int[nodeCount + 1];
+                }
+                // nodes are added in order; fill in the (empty) ranges of the nodes in between
+                while (lastNode < node) {
+                    nodeClaimStarts[++ lastNode] = nodeClaimCount;
+                }
+                Integer index = indexes.get(name);
+                if (index == null) {
+                    index = Integer.valueOf(names.size());
+                    indexes.put(name, index);
+                    names.add(name);
+                }
+                final int claim = index.intValue();
+                if (claim == holderCounts.length) {
+                    holderCounts = Arrays.copyOf(holderCounts, Math.max(4, claim << 1));
+                }
+                holderCounts[claim] ++;
+                if (nodeClaimCount == nodeClaims.length) {
+                    nodeClaims = Arrays.copyOf(nodeClaims, Math.max(4, nodeClaimCount << 1));
+                }
+                nodeClaims[nodeClaimCount ++] = claim;
+            }
+
+            Claims build() {
+                if (nodeClaimStarts == null) {
+                    return NONE;
+                }
+                while (lastNode < nodeCount) {
+                    nodeClaimStarts[++ lastNode] = nodeClaimCount;
+                }
+                return new Claims(names.toArray(new String[names.size()]), Arrays.copyOf(holderCounts, names.size()), nodeClaimStarts, Arrays.copyOf(nodeClaims, nodeClaimCount));
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of an undeploy operation.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public interface UndeployResult extends Result {
+    /**
+     * Get the name of the undeployed deployment.
+     *
+     * @return the deployment name (not {@code null})
+     */
+    String getDeploymentName();
+
+    /**
+     * Determine whether the undeploy deadline expired before all of the undeploy actions were complete.  Actions
+     * which were still running at that time may continue to run; actions which were not yet started are never run.
+     *
+     * The default implementation returns {@code false}.
+     *
+     * @return {@code true} if the deadline expired, {@code false} otherwise
+     */
+    default boolean isTimedOut() {
+        return false;
+    }
+
+    /**
+     * Get the outcome of every undeploy action of the deployment.  If the undeploy {@linkplain #isTimedOut() timed out},
+     * the outcomes of the actions which were still running reflect their state at the time of the first call to this
+     * method.
+     *
+     * The default implementation returns an empty list.
+     *
+     * @return the action results (not {@code null})
+     */
+    default List<UndeployActionResult> getActionResults() {
+        return Collections.emptyList();
+    }
+}
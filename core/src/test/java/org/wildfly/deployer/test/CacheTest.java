@@ -0,0 +1,314 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.deployer.DeployerChain;
+import org.wildfly.deployer.DeployerChainBuildException;
+import org.wildfly.deployer.DeployerChainBuilder;
+import org.wildfly.deployer.DeployerExecution;
+import org.wildfly.deployer.DeploymentContext;
+import org.wildfly.deployer.Fingerprint;
+import org.wildfly.deployer.PersistentResultStore;
+import org.wildfly.deployer.ResourceCodec;
+
+/**
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public class CacheTest {
+
+    static volatile ExecutorService executorService;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setup() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    private static DeployerChain buildChain(final AtomicInteger parses, final int cacheSize) throws DeployerChainBuildException {
+        return buildChain(parses, cacheSize, Fingerprint.VALUE);
+    }
+
+    private static DeployerChain buildChain(final AtomicInteger parses, final int cacheSize, final Fingerprint fingerprint) throws DeployerChainBuildException {
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.setResultCacheSize(cacheSize);
+        builder.addInitialResource("descriptor");
+        builder.addFinalResource("model");
+        builder.addFinalResource("names");
+        builder.addDeployer(context -> {
+            parses.incrementAndGet();
+            final String descriptor = (String) context.consume("descriptor");
+            context.produce("model", descriptor.toUpperCase());
+            context.produce("names", descriptor);
+            context.setSucceeded();
+        }).consumes("descriptor").produces("model").contributesTo("names").cacheable(fingerprint);
+        builder.addDeployer(context -> {
+            context.produce("names", "extra");
+            context.setSucceeded();
+        }).contributesTo("names");
+        return builder.build();
+    }
+
+    private static String deploy(final DeployerChain chain, final String descriptor) throws InterruptedException {
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").provide("descriptor", descriptor).execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        assertEquals(2, execution.getSuccessfulResult().consumeMulti("names").size());
+        return (String) execution.getSuccessfulResult().consume("model");
+    }
+
+    @Test
+    public void cacheHit() throws DeployerChainBuildException, InterruptedException {
+        final AtomicInteger parses = new AtomicInteger();
+        final DeployerChain chain = buildChain(parses, DeployerChainBuilder.DEFAULT_RESULT_CACHE_SIZE);
+        assertEquals("A", deploy(chain, "a"));
+        assertEquals("A", deploy(chain, "a"));
+        assertEquals(1, parses.get());
+        assertEquals("B", deploy(chain, "b"));
+        assertEquals(2, parses.get());
+    }
+
+    @Test
+    public void byteArrayFingerprint() throws DeployerChainBuildException, InterruptedException {
+        final AtomicInteger parses = new AtomicInteger();
+        final DeployerChain chain = buildChain(parses, DeployerChainBuilder.DEFAULT_RESULT_CACHE_SIZE, (name, value) -> ((String) value).getBytes(StandardCharsets.UTF_8));
+        assertEquals("A", deploy(chain, "a"));
+        assertEquals("A", deploy(chain, "a"));
+        assertEquals("A", deploy(chain, "a"));
+        // equal digests match, even though each run computes a new array
+        assertEquals(1, parses.get());
+    }
+
+    @Test
+    public void eviction() throws DeployerChainBuildException, InterruptedException {
+        final AtomicInteger parses = new AtomicInteger();
+        final DeployerChain chain = buildChain(parses, 1);
+        deploy(chain, "a");
+        deploy(chain, "b");
+        deploy(chain, "b");
+        assertEquals(2, parses.get());
+        // evicted by "b"
+        deploy(chain, "a");
+        assertEquals(3, parses.get());
+    }
+
+    @Test
+    public void notCachedWithUndeployActions() throws DeployerChainBuildException, InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addInitialResource("descriptor");
+        builder.addDeployer(context -> {
+            runs.incrementAndGet();
+            context.addUndeployAction(runs::decrementAndGet, DeploymentContext.UNDEPLOY_COST_TRIVIAL);
+            context.setSucceeded();
+        }).consumes("descriptor").produces("service").cacheable(Fingerprint.VALUE);
+        final DeployerChain chain = builder.build();
+        for (int i = 0; i < 2; i ++) {
+            final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").provide("descriptor", "a").execute(executorService);
+            assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        }
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void notCachedWhenLazy() throws DeployerChainBuildException, InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addInitialResource("descriptor");
+        builder.addFinalResource("model");
+        builder.addDeployer(context -> {
+            runs.incrementAndGet();
+            final String descriptor = (String) context.consume("descriptor");
+            context.produceLazily("model", () -> descriptor.toUpperCase());
+            context.setSucceeded();
+        }).consumes("descriptor").produces("model").cacheable(Fingerprint.VALUE);
+        final DeployerChain chain = builder.build();
+        for (int i = 0; i < 2; i ++) {
+            final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").provide("descriptor", "a").execute(executorService);
+            assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+            assertEquals("A", execution.getSuccessfulResult().consume("model"));
+        }
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void persistentStore() throws DeployerChainBuildException, InterruptedException, IOException {
+        final AtomicInteger parses = new AtomicInteger();
+        final Path directory = temporaryFolder.getRoot().toPath();
+        try (PersistentResultStore store = PersistentResultStore.open(directory)) {
+            final DeployerChain chain = buildPersistentChain(parses, store, Fingerprint.VALUE);
+            assertEquals("A", deployPersistent(chain, "a"));
+            assertEquals("B", deployPersistent(chain, "b"));
+            assertEquals(2, store.size());
+        }
+        // as if after a restart
+        try (PersistentResultStore store = PersistentResultStore.open(directory)) {
+            final DeployerChain chain = buildPersistentChain(parses, store, Fingerprint.VALUE);
+            assertEquals("A", deployPersistent(chain, "a"));
+            assertEquals(2, parses.get());
+            store.compact();
+            assertEquals("B", deployPersistent(chain, "b"));
+            assertEquals("C", deployPersistent(chain, "c"));
+            assertEquals(3, parses.get());
+        }
+    }
+
+    @Test
+    public void persistentStoreRecovery() throws DeployerChainBuildException, InterruptedException, IOException {
+        final AtomicInteger parses = new AtomicInteger();
+        final Path directory = temporaryFolder.getRoot().toPath();
+        final Path dataFile = directory.resolve("results.dat");
+        final long size;
+        try (PersistentResultStore store = PersistentResultStore.open(directory)) {
+            final DeployerChain chain = buildPersistentChain(parses, store, Fingerprint.VALUE);
+            assertEquals("A", deployPersistent(chain, "a"));
+            assertEquals("B", deployPersistent(chain, "b"));
+            try {
+                PersistentResultStore.open(directory).close();
+                fail("Expected exception");
+            } catch (IOException expected) {
+            }
+        }
+        size = Files.size(dataFile);
+        // as if a write was torn by a crash
+        try (DataOutputStream os = new DataOutputStream(Files.newOutputStream(dataFile, StandardOpenOption.APPEND))) {
+            os.writeInt(100);
+            os.writeInt(12345);
+            os.write(new byte[40]);
+        }
+        try (PersistentResultStore store = PersistentResultStore.open(directory)) {
+            assertEquals(size, Files.size(dataFile));
+            assertEquals(2, store.size());
+            final DeployerChain chain = buildPersistentChain(parses, store, Fingerprint.VALUE);
+            assertEquals("A", deployPersistent(chain, "a"));
+            assertEquals("B", deployPersistent(chain, "b"));
+            assertEquals(2, parses.get());
+        }
+    }
+
+    @Test
+    public void persistentFingerprintTypes() throws DeployerChainBuildException, InterruptedException, IOException {
+        final AtomicInteger parses = new AtomicInteger();
+        try (PersistentResultStore store = PersistentResultStore.open(temporaryFolder.getRoot().toPath())) {
+            // a string builder only equals itself, so it never matches and is never persisted
+            final DeployerChain chain = buildPersistentChain(parses, store, (name, value) -> new StringBuilder((String) value));
+            assertEquals("A", deployPersistent(chain, "a"));
+            assertEquals(0, store.size());
+            // a string and a byte array with the same content are different keys
+            final DeployerChain stringChain = buildPersistentChain(parses, store, (name, value) -> "a");
+            final DeployerChain bytesChain = buildPersistentChain(parses, store, (name, value) -> "a".getBytes(StandardCharsets.UTF_8));
+            assertEquals("A", deployPersistent(stringChain, "a"));
+            assertEquals("A", deployPersistent(bytesChain, "a"));
+            assertEquals(2, store.size());
+        }
+    }
+
+    @Test
+    public void persistentByteArrayFingerprint() throws DeployerChainBuildException, InterruptedException, IOException {
+        final AtomicInteger parses = new AtomicInteger();
+        final Fingerprint digest = (name, value) -> ((String) value).getBytes(StandardCharsets.UTF_8);
+        try (PersistentResultStore store = PersistentResultStore.open(temporaryFolder.getRoot().toPath())) {
+            final DeployerChain chain = buildPersistentChain(parses, store, digest, DeployerChainBuilder.DEFAULT_RESULT_CACHE_SIZE);
+            assertEquals("A", deployPersistent(chain, "a"));
+            assertEquals("A", deployPersistent(chain, "a"));
+            assertEquals("A", deployPersistent(chain, "a"));
+            assertEquals(1, parses.get());
+            assertEquals(1, store.size());
+            // a new chain starts with an empty memory cache, and finds the result in the store
+            final DeployerChain restarted = buildPersistentChain(parses, store, digest, DeployerChainBuilder.DEFAULT_RESULT_CACHE_SIZE);
+            assertEquals("A", deployPersistent(restarted, "a"));
+            assertEquals(1, parses.get());
+        }
+    }
+
+    private static DeployerChain buildPersistentChain(final AtomicInteger parses, final PersistentResultStore store, final Fingerprint fingerprint) throws DeployerChainBuildException {
+        // nothing is kept in memory, so every hit comes from the store
+        return buildPersistentChain(parses, store, fingerprint, 0);
+    }
+
+    private static DeployerChain buildPersistentChain(final AtomicInteger parses, final PersistentResultStore store, final Fingerprint fingerprint, final int cacheSize) throws DeployerChainBuildException {
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.setResultCacheSize(cacheSize);
+        builder.setPersistentResultStore(store);
+        builder.setResourceCodec("model", STRING_CODEC);
+        builder.addInitialResource("descriptor");
+        builder.addFinalResource("model");
+        builder.addDeployer(context -> {
+            parses.incrementAndGet();
+            context.produce("model", ((String) context.consume("descriptor")).toUpperCase());
+            context.setSucceeded();
+        }).consumes("descriptor").produces("model").cacheable(fingerprint).identifiedBy("descriptor-parser-1");
+        return builder.build();
+    }
+
+    private static String deployPersistent(final DeployerChain chain, final String descriptor) throws InterruptedException {
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").provide("descriptor", descriptor).execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        return (String) execution.getSuccessfulResult().consume("model");
+    }
+
+    static final ResourceCodec<String> STRING_CODEC = new ResourceCodec<String>() {
+        public void encode(final String value, final DataOutput output) throws IOException {
+            output.writeUTF(value);
+        }
+
+        public String decode(final DataInput input) throws IOException {
+            return input.readUTF();
+        }
+    };
+
+    @Test
+    public void streamConsumerNotCacheable() {
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(DeploymentContext::setSucceeded).contributesTo("items");
+        builder.addDeployer(DeploymentContext::setSucceeded).consumesStream("items").cacheable(Fingerprint.VALUE);
+        try {
+            builder.build();
+            fail("Expected exception");
+        } catch (DeployerChainBuildException expected) {
+        }
+    }
+
+    @AfterClass
+    public static void teardown() throws InterruptedException {
+        executorService.shutdown();
+        executorService.awaitTermination(10L, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,887 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.logging.Logger;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+import org.wildfly.deployer.Deployer;
+import org.wildfly.deployer.DeployerBuilder;
+import org.wildfly.deployer.DeployerChain;
+import org.wildfly.deployer.DeployerChainAnalysis;
+import org.wildfly.deployer.DeployerChainBuildException;
+import org.wildfly.deployer.DeployerChainBuilder;
+import org.wildfly.deployer.DeployerChainSimulation;
+import org.wildfly.deployer.DeployerChainSimulator;
+import org.wildfly.deployer.DeployerExecution;
+import org.wildfly.deployer.DeployerExecutionBuilder;
+import org.wildfly.deployer.SuccessfulDeploymentResult;
+
+/**
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+@FixMethodOrder(MethodSorters.DEFAULT)
+public class SimpleDependencyTest {
+
+    static volatile ExecutorService executorService;
+
+    static final Logger log = Logger.getLogger(SimpleDependencyTest.class);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setup() {
+        executorService = Executors.newFixedThreadPool(8);
+    }
+
+    @Test
+    public void emptyTest() throws DeployerChainBuildException, InterruptedException {
+        log.info("Before test");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        final DeployerChain chain = builder.build();
+        final DeployerExecutionBuilder executionBuilder = chain.createExecutionBuilder("my-app.jar");
+        final DeployerExecution execution = executionBuilder.execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        log.info("After test");
+    }
+
+    @Test
+    public void singleTest() throws DeployerChainBuildException, InterruptedException {
+        log.info("Before test");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        final DeployerBuilder deployerBuilder = builder.addDeployer(context -> {
+            log.info("In deployer now");
+            assertTrue(context.setSucceeded());
+        });
+        deployerBuilder.produces("applesauce");
+        final DeployerChain chain = builder.build();
+        final DeployerExecutionBuilder executionBuilder = chain.createExecutionBuilder("my-app.jar");
+        final DeployerExecution execution = executionBuilder.execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        log.info("After test");
+    }
+
+    @Test
+    public void applesauce() throws InterruptedException, DeployerChainBuildException {
+        log.info("Before test");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addFinalResource("applesauce");
+        final Deployer applePickingDeployer = context -> {
+            log.info("Picking an apple");
+            context.produce("apples", new Object());
+            assertTrue(context.setSucceeded());
+        };
+        builder.addDeployer(applePickingDeployer).contributesTo("apples");
+        builder.addDeployer(applePickingDeployer).contributesTo("apples");
+        builder.addDeployer(applePickingDeployer).contributesTo("apples");
+        builder.addDeployer(applePickingDeployer).contributesTo("apples");
+        builder.addDeployer(applePickingDeployer).contributesTo("apples");
+        builder.addDeployer(applePickingDeployer).contributesTo("apples");
+        builder.addDeployer(applePickingDeployer).contributesTo("apples");
+        final DeployerBuilder masherBuilder = builder.addDeployer(context -> {
+            log.info("Mashing the apples");
+            assertNotNull(context.consumeMulti("apples"));
+            context.produce("mashed apples", new Object());
+            assertTrue(context.setSucceeded());
+        });
+        masherBuilder.consumes("apples");
+        masherBuilder.produces("mashed apples");
+        builder.addDeployer(context -> {
+            log.info("Traveling to the orchard");
+            assertTrue(context.setSucceeded());
+        }).beforeProduce("apples");
+        builder.addDeployer(context -> {
+            log.info("Cooking the apples");
+            assertNotNull(context.consume("mashed apples"));
+            context.produce("applesauce", new Object());
+            assertTrue(context.setSucceeded());
+        }).consumes("mashed apples").produces("applesauce");
+        builder.addDeployer(context -> {
+            log.info("Eating the applesauce");
+            assertNotNull(context.consume("applesauce"));
+            assertTrue(context.setSucceeded());
+        }).destroysMandatory("applesauce");
+        final DeployerChain chain = builder.build();
+        final DeployerExecutionBuilder executionBuilder = chain.createExecutionBuilder("my-app.jar");
+        final DeployerExecution execution = executionBuilder.execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        final SuccessfulDeploymentResult result = execution.getSuccessfulResult();
+        assertNotNull(result.consume("applesauce"));
+        log.info("After test");
+    }
+
+    @Test
+    public void streamedApples() throws InterruptedException, DeployerChainBuildException {
+        log.info("Before test");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        final CountDownLatch basketReady = new CountDownLatch(1);
+        final Deployer applePickingDeployer = context -> {
+            try {
+                // the basket deployer must be running before any apple is picked
+                assertTrue(basketReady.await(30L, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            log.info("Picking an apple");
+            context.produce("apples", new Object());
+            assertTrue(context.setSucceeded());
+        };
+        for (int i = 0; i < 5; i ++) {
+            builder.addDeployer(applePickingDeployer).contributesTo("apples");
+        }
+        final AtomicInteger count = new AtomicInteger();
+        builder.addDeployer(context -> {
+            basketReady.countDown();
+            final Iterator<?> iterator = context.consumeStream("apples");
+            while (iterator.hasNext()) {
+                assertNotNull(iterator.next());
+                count.incrementAndGet();
+            }
+            assertTrue(context.setSucceeded());
+        }).consumesStream("apples");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        assertEquals(5, count.get());
+        log.info("After test");
+    }
+
+    @Test
+    public void streamLoopRejected() {
+        log.info("Before test");
+        final Deployer deployer = context -> assertTrue(context.setSucceeded());
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        // the basket is filled by a picker which needs the ladder which the basket produces
+        builder.addDeployer(deployer).identifiedBy("basket").consumesStream("apples").produces("ladder");
+        builder.addDeployer(deployer).identifiedBy("picker").consumes("ladder").contributesTo("apples");
+        try {
+            builder.build();
+            fail("Expected a loop to be detected");
+        } catch (DeployerChainBuildException e) {
+            final String message = e.getMessage();
+            log.info(message);
+            assertTrue(message, message.contains("1 loop(s)"));
+            assertTrue(message, message.contains("\"basket\" --[apples]--> \"picker\"") || message.contains("\"picker\" --[ladder]--> \"basket\""));
+        }
+        log.info("After test");
+    }
+
+    @Test
+    public void validationErrorDeterministic() {
+        log.info("Before test");
+        final Deployer deployer = context -> assertTrue(context.setSucceeded());
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        // enough deployers to validate in parallel, each of which consumes a resource nobody produces
+        for (int i = 0; i < 4096; i ++) {
+            builder.addDeployer(deployer).consumes(String.format("missing-%04d", Integer.valueOf(i)));
+        }
+        for (int i = 0; i < 5; i ++) {
+            try {
+                builder.build();
+                fail("Expected exception");
+            } catch (DeployerChainBuildException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("\"missing-0000\""));
+            }
+        }
+        log.info("After test");
+    }
+
+    @Test
+    public void releasedAfterLastReader() throws InterruptedException, DeployerChainBuildException {
+        log.info("Before test");
+        final AtomicReference<WeakReference<Object>> peelRef = new AtomicReference<>();
+        final CountDownLatch composting = new CountDownLatch(1);
+        final CountDownLatch checked = new CountDownLatch(1);
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addFinalResource("applesauce");
+        builder.addDeployer(context -> {
+            final Object peel = new Object();
+            peelRef.set(new WeakReference<>(peel));
+            context.produce("peel", peel);
+            assertTrue(context.setSucceeded());
+        }).produces("peel");
+        builder.addDeployer(context -> {
+            assertNotNull(context.consume("peel"));
+            context.produce("compost", "compost");
+            assertTrue(context.setSucceeded());
+        }).consumes("peel").produces("compost");
+        builder.addDeployer(context -> {
+            // hold the execution open while the test looks for the peel
+            composting.countDown();
+            try {
+                checked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            context.produce("applesauce", "applesauce with " + context.consume("compost"));
+            assertTrue(context.setSucceeded());
+        }).consumes("compost").produces("applesauce");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        final boolean released;
+        try {
+            assertTrue(composting.await(10L, TimeUnit.SECONDS));
+            // the only reader of the peel is done, so nothing holds it any more
+            for (int i = 0; i < 100 && peelRef.get().get() != null; i ++) {
+                System.gc();
+                Thread.sleep(10L);
+            }
+            released = peelRef.get().get() == null;
+        } finally {
+            checked.countDown();
+        }
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        assertEquals("applesauce with compost", execution.getSuccessfulResult().consume("applesauce"));
+        assertTrue("Resource was not released after its last reader", released);
+        log.info("After test");
+    }
+
+    @Test
+    public void onlyFinalResourcesRetained() throws InterruptedException, DeployerChainBuildException {
+        log.info("Before test");
+        final AtomicReference<WeakReference<Object>> sugarRef = new AtomicReference<>();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addFinalResource("applesauce");
+        builder.addFinalResource("apples");
+        builder.addDeployer(context -> {
+            final Object sugar = new Object();
+            sugarRef.set(new WeakReference<>(sugar));
+            context.produce("sugar", sugar);
+            context.produce("apples", "red");
+            assertTrue(context.setSucceeded());
+        }).produces("sugar").contributesTo("apples");
+        builder.addDeployer(context -> {
+            assertNotNull(context.consume("sugar"));
+            context.produce("applesauce", new Object());
+            assertTrue(context.setSucceeded());
+        }).consumes("sugar").produces("applesauce");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        final SuccessfulDeploymentResult result = execution.getSuccessfulResult();
+        final WeakReference<Object> applesauceRef = new WeakReference<>(result.consume("applesauce"));
+        assertEquals(Collections.singletonList("red"), new ArrayList<>(result.consumeMulti("apples")));
+        try {
+            result.consume("sugar");
+            fail("Expected intermediate resource to be unavailable");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            result.consumeMulti("apples").clear();
+            fail("Expected an immutable snapshot");
+        } catch (UnsupportedOperationException expected) {
+        }
+        for (int i = 0; i < 100 && sugarRef.get().get() != null; i ++) {
+            System.gc();
+            Thread.sleep(10L);
+        }
+        // the result keeps the final resources, and nothing else
+        assertNull(sugarRef.get().get());
+        assertNotNull(applesauceRef.get());
+        assertNotNull(result.consume("applesauce"));
+        log.info("After test");
+    }
+
+    @Test
+    public void lazyApplesauce() throws InterruptedException, DeployerChainBuildException {
+        log.info("Before test");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        final AtomicInteger cooked = new AtomicInteger();
+        final AtomicInteger baked = new AtomicInteger();
+        builder.addDeployer(context -> {
+            context.produceLazily("applesauce", () -> {
+                cooked.incrementAndGet();
+                return new Object();
+            });
+            context.produceLazily("apple pie", () -> {
+                baked.incrementAndGet();
+                return new Object();
+            });
+            assertTrue(context.setSucceeded());
+        }).produces("applesauce").produces("apple pie");
+        for (int i = 0; i < 4; i ++) {
+            builder.addDeployer(context -> {
+                assertNotNull(context.consume("applesauce"));
+                assertTrue(context.setSucceeded());
+            }).consumes("applesauce");
+        }
+        builder.addDeployer(context -> {
+            // never looks at the pie
+            assertTrue(context.setSucceeded());
+        }).consumesOptionally("apple pie");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        assertEquals(1, cooked.get());
+        assertEquals(0, baked.get());
+        // the pie was forced by nobody, which the result records
+        assertEquals(Collections.singleton("apple pie"), execution.getSuccessfulResult().getUnconsumedLazyResources());
+        log.info("After test");
+    }
+
+    @Test
+    public void repeatedExecution() throws InterruptedException, DeployerChainBuildException {
+        log.info("Before test");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addFinalResource("applesauce");
+        for (int i = 0; i < 4; i ++) {
+            builder.addDeployer(context -> {
+                context.produce("apples", "apple");
+                assertTrue(context.setSucceeded());
+            }).contributesTo("apples");
+        }
+        builder.addDeployer(context -> {
+            context.produce("sugar", "sugar");
+            assertTrue(context.setSucceeded());
+        }).produces("sugar");
+        builder.addDeployer(context -> {
+            context.produce("applesauce", context.consumeMulti("apples").size() + " apples and " + context.consume("sugar"));
+            assertTrue(context.setSucceeded());
+        }).consumes("apples").consumes("sugar").produces("applesauce");
+        final DeployerChain chain = builder.build();
+        for (int i = 0; i < 50; i ++) {
+            final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+            assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+            assertEquals("4 apples and sugar", execution.getSuccessfulResult().consume("applesauce"));
+        }
+        log.info("After test");
+    }
+
+    @Test
+    public void largeChain() throws InterruptedException, DeployerChainBuildException {
+        log.info("Before test");
+        // large enough to be built in parallel
+        final int pickers = 3000;
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addFinalResource("applesauce");
+        for (int i = 0; i < pickers; i ++) {
+            builder.addDeployer(context -> {
+                context.produce("apples", "apple");
+                assertTrue(context.setSucceeded());
+            }).contributesTo("apples");
+        }
+        builder.addDeployer(context -> {
+            context.produce("applesauce", Integer.valueOf(context.consumeMulti("apples").size()));
+            assertTrue(context.setSucceeded());
+        }).consumes("apples").produces("applesauce");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        assertEquals(Integer.valueOf(pickers), execution.getSuccessfulResult().consume("applesauce"));
+        log.info("After test");
+    }
+
+    @Test
+    public void concurrentRegistration() throws Exception {
+        log.info("Before test");
+        final int threads = 8;
+        final int perThread = 100;
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addFinalResource("applesauce");
+        builder.addDeployer(context -> {
+            context.produce("applesauce", Integer.valueOf(context.consumeMulti("apples").size()));
+            assertTrue(context.setSucceeded());
+        }).consumes("apples").produces("applesauce");
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t ++) {
+            futures.add(executorService.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i ++) {
+                    builder.addDeployer(context -> {
+                        context.produce("apples", "apple");
+                        assertTrue(context.setSucceeded());
+                    }).contributesTo("apples");
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        try {
+            builder.addDeployer(Deployer.EMPTY).produces("apples");
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+        }
+        final DeployerExecution execution = builder.build().createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        assertEquals(Integer.valueOf(threads * perThread), execution.getSuccessfulResult().consume("applesauce"));
+        log.info("After test");
+    }
+
+    @Test
+    public void derivedChain() throws InterruptedException, DeployerChainBuildException {
+        log.info("Before test");
+        final Deployer picker = context -> {
+            context.produce("apples", "red");
+            assertTrue(context.setSucceeded());
+        };
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addFinalResource("applesauce");
+        final DeployerBuilder pickerBuilder = builder.addDeployer(picker).contributesTo("apples");
+        builder.addDeployer(context -> {
+            context.produce("sugar", "sugar");
+            assertTrue(context.setSucceeded());
+        }).produces("sugar");
+        builder.addDeployer(context -> {
+            context.produce("applesauce", new TreeSet<>(context.consumeMulti("apples", String.class)) + " with " + context.consume("sugar"));
+            assertTrue(context.setSucceeded());
+        }).consumes("apples").consumes("sugar").produces("applesauce");
+        final DeployerChain chain = builder.build();
+
+        final DeployerChainBuilder derivedBuilder = chain.derive();
+        // the deployers of the original builder may still change without affecting the derived builder
+        pickerBuilder.produces("peel");
+        derivedBuilder.addDeployer(context -> {
+            context.produce("apples", "green");
+            assertTrue(context.setSucceeded());
+        }).contributesTo("apples");
+        final DeployerChain derived = derivedBuilder.build();
+        assertEquals("[green, red] with sugar", deployApplesauce(derived));
+        // the original chain is unchanged
+        assertEquals("[red] with sugar", deployApplesauce(chain));
+
+        final DeployerChain removed = derived.derive().removeDeployer(picker).build();
+        assertEquals("[green] with sugar", deployApplesauce(removed));
+        log.info("After test");
+    }
+
+    @Test
+    public void prunedChain() throws InterruptedException, DeployerChainBuildException {
+        log.info("Before test");
+        final AtomicInteger pearRuns = new AtomicInteger();
+        final AtomicInteger audits = new AtomicInteger();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.setPruneUnusedDeployers(true);
+        builder.addFinalResource("applesauce");
+        builder.addDeployer(context -> {
+            context.produce("apples", "red");
+            assertTrue(context.setSucceeded());
+        }).contributesTo("apples").sideEffectFree();
+        builder.addDeployer(context -> {
+            context.produce("sugar", "sugar");
+            assertTrue(context.setSucceeded());
+        }).produces("sugar").sideEffectFree();
+        builder.addDeployer(context -> {
+            context.produce("applesauce", new TreeSet<>(context.consumeMulti("apples", String.class)) + " with " + context.consume("sugar"));
+            assertTrue(context.setSucceeded());
+        }).consumes("apples").consumes("sugar").produces("applesauce").sideEffectFree();
+        // nothing needs the pears
+        builder.addDeployer(context -> {
+            pearRuns.incrementAndGet();
+            context.produce("pears", "pears");
+            assertTrue(context.setSucceeded());
+        }).produces("pears").sideEffectFree();
+        builder.addDeployer(context -> {
+            pearRuns.incrementAndGet();
+            context.produce("pearsauce", context.consume("pears") + " sauce");
+            assertTrue(context.setSucceeded());
+        }).consumes("pears").produces("pearsauce").sideEffectFree();
+        // but a deployer with side effects is always run
+        builder.addDeployer(context -> {
+            audits.incrementAndGet();
+            assertTrue(context.setSucceeded());
+        }).consumesOptionally("sugar");
+        final DeployerChain chain = builder.build();
+        assertEquals("[red] with sugar", deployApplesauce(chain));
+        assertEquals(0, pearRuns.get());
+        assertEquals(1, audits.get());
+
+        // a derived chain brings pruned deployers back once something needs them
+        final DeployerChain derived = chain.derive().addFinalResource("pearsauce").build();
+        final DeployerExecution execution = derived.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        assertEquals("pears sauce", execution.getSuccessfulResult().consume("pearsauce"));
+        assertEquals("[red] with sugar", execution.getSuccessfulResult().consume("applesauce"));
+        assertEquals(2, pearRuns.get());
+        assertEquals(2, audits.get());
+        log.info("After test");
+    }
+
+    @Test
+    public void conditionalDeployers() throws InterruptedException, DeployerChainBuildException {
+        log.info("Before test");
+        final AtomicInteger parses = new AtomicInteger();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.setPruneUnusedDeployers(true);
+        builder.addInitialMultiResource("descriptors");
+        builder.addFinalResource("services");
+        builder.addDeployer(context -> {
+            parses.incrementAndGet();
+            context.produce("webMetadata", "web metadata");
+            assertTrue(context.setSucceeded());
+        }).consumes("descriptors").produces("webMetadata").sideEffectFree();
+        builder.addDeployer(context -> {
+            context.produce("services", "web with " + context.consume("webMetadata"));
+            assertTrue(context.setSucceeded());
+        }).consumes("webMetadata").contributesTo("services").activeWhen("descriptors", descriptors -> ((List<?>) descriptors).contains("web.xml"));
+        builder.addDeployer(context -> {
+            context.produce("services", "logging");
+            assertTrue(context.setSucceeded());
+        }).contributesTo("services");
+        final DeployerChain chain = builder.build();
+
+        DeployerExecution execution = chain.createExecutionBuilder("web.war").provideAll("descriptors", "web.xml").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        assertEquals("[logging, web with web metadata]", new TreeSet<>(execution.getSuccessfulResult().consumeMulti("services", String.class)).toString());
+        assertEquals(1, parses.get());
+
+        // the web deployer is inactive, so nothing needs the descriptor to be parsed
+        execution = chain.createExecutionBuilder("ejb.jar").provideAll("descriptors", "ejb-jar.xml").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        assertEquals("[logging]", new TreeSet<>(execution.getSuccessfulResult().consumeMulti("services", String.class)).toString());
+        assertEquals(1, parses.get());
+
+        try {
+            final DeployerChainBuilder badBuilder = DeployerChain.builder();
+            badBuilder.addDeployer(context -> assertTrue(context.setSucceeded())).activeWhen("descriptors", descriptors -> true);
+            badBuilder.build();
+            fail("Expected build failure");
+        } catch (DeployerChainBuildException expected) {
+        }
+        log.info("After test");
+    }
+
+    @Test
+    public void inactiveLastReader() throws InterruptedException, DeployerChainBuildException {
+        log.info("Before test");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addInitialResource("classes");
+        builder.addInitialResource("flag");
+        builder.addFinalResource("index");
+        builder.addDeployer(context -> {
+            context.produce("index", "index of " + context.consume("classes"));
+            assertTrue(context.setSucceeded());
+        }).consumes("classes").produces("index");
+        // the last reader of the classes, which does not run
+        builder.addDeployer(context -> {
+            context.consume("classes");
+            assertTrue(context.setSucceeded());
+        }).consumes("classes").consumes("index").activeWhen("flag", Boolean.TRUE::equals);
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("app.jar").provide("classes", "classes").provide("flag", Boolean.FALSE).execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        assertEquals("index of classes", execution.getSuccessfulResult().consume("index"));
+        log.info("After test");
+    }
+
+    @Test
+    public void analysis() throws InterruptedException, DeployerChainBuildException {
+        log.info("Before test");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addFinalResource("w");
+        final Deployer a = context -> {
+            context.produce("x", "x");
+            assertTrue(context.setSucceeded());
+        };
+        final Deployer slow = context -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            context.produce("y", "y");
+            assertTrue(context.setSucceeded());
+        };
+        final Deployer fast = context -> {
+            context.produce("z", "z");
+            assertTrue(context.setSucceeded());
+        };
+        final Deployer d = context -> {
+            context.produce("w", context.consume("y") + "" + context.consume("z"));
+            assertTrue(context.setSucceeded());
+        };
+        builder.addDeployer(a).identifiedBy("a").produces("x");
+        builder.addDeployer(slow).identifiedBy("slow").consumes("x").produces("y");
+        builder.addDeployer(fast).identifiedBy("fast").consumes("x").produces("z");
+        builder.addDeployer(d).identifiedBy("d").consumes("y").consumes("z").produces("w");
+        final DeployerChain chain = builder.build();
+
+        DeployerChainAnalysis analysis = chain.analyze();
+        log.info(analysis);
+        assertEquals(4, analysis.getDeployerCount());
+        assertEquals(4, analysis.getDependencyCount());
+        assertEquals(3, analysis.getDepth());
+        assertEquals("[1, 2, 1]", Arrays.toString(analysis.getLevelWidths()));
+        assertEquals(2, analysis.getMaxWidth());
+        assertEquals(3, analysis.getCriticalPath().size());
+        assertEquals("a", analysis.getFanOutHotSpots().get(0).getIdentity());
+        assertEquals(2, analysis.getFanOutHotSpots().get(0).getCount());
+        assertEquals("d", analysis.getFanInHotSpots().get(0).getIdentity());
+        assertEquals(0, analysis.getTimedDeployerCount());
+        assertEquals(2, analysis.getRecommendedParallelism());
+
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        analysis = chain.analyze();
+        log.info(analysis);
+        assertEquals(4, analysis.getTimedDeployerCount());
+        assertEquals(Arrays.asList(a, slow, d), analysis.getWeightedCriticalPath());
+        assertTrue(analysis.getCriticalPathDuration(TimeUnit.MILLISECONDS) >= 50);
+        // the slow deployer dominates, so there is little to gain from a second thread
+        assertEquals(1, analysis.getRecommendedParallelism());
+        log.info("After test");
+    }
+
+    @Test
+    public void streamAnalysis() throws DeployerChainBuildException {
+        log.info("Before test");
+        final Deployer picker = context -> fail("Analyzed deployers must not run");
+        final Deployer basket = context -> fail("Analyzed deployers must not run");
+        final Deployer cart = context -> fail("Analyzed deployers must not run");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(picker).identifiedBy("picker").contributesTo("apples");
+        builder.addDeployer(basket).identifiedBy("basket").consumesStream("apples").produces("basket");
+        builder.addDeployer(cart).identifiedBy("cart").consumes("basket");
+        final DeployerChainAnalysis analysis = builder.build().analyze();
+        log.info(analysis);
+        // the basket starts with the picker, but the cart cannot start before the picker is done
+        assertEquals(3, analysis.getDepth());
+        assertEquals(Arrays.asList(picker, basket, cart), analysis.getCriticalPath());
+        log.info("After test");
+    }
+
+    @Test
+    public void simulation() throws DeployerChainBuildException {
+        log.info("Before test");
+        final Deployer deployer = context -> fail("Simulated deployers must not run");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(deployer).identifiedBy("z").produces("z");
+        builder.addDeployer(deployer).identifiedBy("w").produces("w");
+        builder.addDeployer(deployer).identifiedBy("x").produces("x");
+        builder.addDeployer(deployer).identifiedBy("y").consumes("x").produces("y");
+        final DeployerChain chain = builder.build();
+        final DeployerChainSimulator simulator = chain.simulator()
+            .setCost("z", 50, TimeUnit.MILLISECONDS)
+            .setCost("w", 50, TimeUnit.MILLISECONDS)
+            .setCost("x", 10, TimeUnit.MILLISECONDS)
+            .setCost("y", 100, TimeUnit.MILLISECONDS);
+
+        DeployerChainSimulation simulation = simulator.simulate();
+        log.info(simulation);
+        assertEquals(210, simulation.getMakespan(TimeUnit.MILLISECONDS));
+        assertEquals(1.0, simulation.getUtilization(), 0.0);
+
+        // first come, first served leaves the long path for last
+        simulation = simulator.setCores(2).simulate();
+        log.info(simulation);
+        assertEquals(160, simulation.getMakespan(TimeUnit.MILLISECONDS));
+        assertEquals(50, simulation.getMaxQueueWait(TimeUnit.MILLISECONDS));
+        assertEquals(1, simulation.getMaxQueueLength());
+
+        simulation = simulator.setPolicy(DeployerChainSimulator.Policy.LONGEST_FIRST).simulate();
+        assertEquals(160, simulation.getMakespan(TimeUnit.MILLISECONDS));
+
+        simulation = simulator.setPolicy(DeployerChainSimulator.Policy.CRITICAL_PATH_FIRST).simulate();
+        log.info(simulation);
+        assertEquals(110, simulation.getMakespan(TimeUnit.MILLISECONDS));
+        assertEquals(50, simulation.getMaxQueueWait(TimeUnit.MILLISECONDS));
+        // the simulation is deterministic
+        assertEquals(simulation.toString(), simulator.simulate().toString());
+        log.info("After test");
+    }
+
+    @Test
+    public void streamSimulation() throws DeployerChainBuildException {
+        log.info("Before test");
+        final Deployer deployer = context -> fail("Simulated deployers must not run");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(deployer).identifiedBy("picker").contributesTo("apples");
+        builder.addDeployer(deployer).identifiedBy("basket").consumesStream("apples").produces("basket");
+        builder.addDeployer(deployer).identifiedBy("cart").consumes("basket");
+        final DeployerChainSimulator simulator = builder.build().simulator()
+            .setCost("picker", 100, TimeUnit.MILLISECONDS)
+            .setCost("basket", 10, TimeUnit.MILLISECONDS)
+            .setCost("cart", 20, TimeUnit.MILLISECONDS)
+            .setCores(2);
+
+        // the basket starts with the picker, but is not full until the picker is done
+        DeployerChainSimulation simulation = simulator.simulate();
+        log.info(simulation);
+        assertEquals(120, simulation.getMakespan(TimeUnit.MILLISECONDS));
+
+        simulation = simulator.setCores(1).setPolicy(DeployerChainSimulator.Policy.CRITICAL_PATH_FIRST).simulate();
+        log.info(simulation);
+        assertEquals(130, simulation.getMakespan(TimeUnit.MILLISECONDS));
+
+        // a basket which takes the only core first waits forever for the picker
+        simulator.setCost("basket", 200, TimeUnit.MILLISECONDS).setPolicy(DeployerChainSimulator.Policy.LONGEST_FIRST);
+        try {
+            simulator.simulate();
+            fail("Expected the simulation to stall");
+        } catch (IllegalStateException e) {
+            log.info(e.getMessage());
+        }
+        log.info("After test");
+    }
+
+    private static Object deployApplesauce(final DeployerChain chain) throws InterruptedException {
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        return execution.getSuccessfulResult().consume("applesauce");
+    }
+
+    @Test
+    public void loopsReported() {
+        log.info("Before test");
+        final Deployer deployer = context -> assertTrue(context.setSucceeded());
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(deployer).identifiedBy("a").consumes("x").produces("y");
+        builder.addDeployer(deployer).identifiedBy("b").consumes("y").produces("x");
+        builder.addDeployer(deployer).identifiedBy("c").consumes("p").produces("q");
+        builder.addDeployer(deployer).identifiedBy("d").consumes("q").produces("p");
+        builder.addDeployer(deployer).identifiedBy("e").consumes("x").produces("z");
+        try {
+            builder.build();
+            fail("Expected loops to be detected");
+        } catch (DeployerChainBuildException e) {
+            final String message = e.getMessage();
+            log.info(message);
+            assertTrue(message, message.contains("2 loop(s)"));
+            assertTrue(message, message.contains("\"a\" --[x]--> \"b\"") || message.contains("\"b\" --[y]--> \"a\""));
+            assertTrue(message, message.contains("\"c\" --[p]--> \"d\"") || message.contains("\"d\" --[q]--> \"c\""));
+            // a deployer which merely depends on a loop is not part of it
+            assertFalse(message, message.contains("\"e\""));
+        }
+        log.info("After test");
+    }
+
+    @Test
+    public void snapshot() throws Exception {
+        log.info("Before test");
+        final Path snapshot = folder.getRoot().toPath().resolve("chain.snapshot");
+        assertEquals("pie", deploySnapshot(snapshot, false));
+        assertTrue(Files.exists(snapshot));
+        final byte[] written = Files.readAllBytes(snapshot);
+        // loaded from the snapshot
+        assertEquals("pie", deploySnapshot(snapshot, false));
+        assertTrue(Arrays.equals(written, Files.readAllBytes(snapshot)));
+        // changed declarations rebuild the chain and replace the snapshot
+        assertEquals("pie with cream", deploySnapshot(snapshot, true));
+        assertFalse(Arrays.equals(written, Files.readAllBytes(snapshot)));
+        log.info("After test");
+    }
+
+    private static Object deploySnapshot(Path snapshot, boolean cream) throws Exception {
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addInitialResource("flour");
+        builder.addFinalResource("pie");
+        builder.addDeployer(context -> {
+            context.produce("apples", "apples");
+            assertTrue(context.setSucceeded());
+        }).identifiedBy("pick").produces("apples");
+        final DeployerBuilder bakeBuilder = builder.addDeployer(context -> {
+            context.produce("pie", cream ? "pie with " + context.consume("cream") : "pie");
+            assertTrue(context.setSucceeded());
+        }).identifiedBy("bake").consumes("flour").consumes("apples").produces("pie");
+        if (cream) {
+            builder.addDeployer(context -> {
+                context.produce("cream", "cream");
+                assertTrue(context.setSucceeded());
+            }).identifiedBy("whip").produces("cream");
+            bakeBuilder.consumes("cream");
+        }
+        final DeployerChain chain = builder.build(snapshot);
+        final DeployerExecutionBuilder executionBuilder = chain.createExecutionBuilder("my-app.jar");
+        executionBuilder.provide("flour", "flour");
+        final DeployerExecution execution = executionBuilder.execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        return execution.getSuccessfulResult().consume("pie");
+    }
+
+    @Test
+    public void declaredDeployers() throws Exception {
+        log.info("Before test");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addInitialResource("flour");
+        builder.addFinalResource("pie");
+        builder.declareDeployer("pick").produces("apples");
+        builder.declareDeployer("bake").consumes("flour").consumes("apples").produces("pie");
+        try {
+            builder.build();
+            fail("Expected exception");
+        } catch (IllegalStateException expected) {
+        }
+        final ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        builder.writeSnapshot(snapshot);
+        final DeployerChain chain = DeployerChain.load(new ByteArrayInputStream(snapshot.toByteArray()), identity -> {
+            switch (identity) {
+                case "pick": return context -> {
+                    context.produce("apples", "apples");
+                    assertTrue(context.setSucceeded());
+                };
+                case "bake": return context -> {
+                    context.produce("pie", context.consume("apples") + " and " + context.consume("flour"));
+                    assertTrue(context.setSucceeded());
+                };
+                default: return null;
+            }
+        });
+        final DeployerExecutionBuilder executionBuilder = chain.createExecutionBuilder("my-app.jar");
+        executionBuilder.provide("flour", "flour");
+        final DeployerExecution execution = executionBuilder.execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        assertEquals("apples and flour", execution.getSuccessfulResult().consume("pie"));
+        log.info("After test");
+    }
+
+    @AfterClass
+    public static void teardown() throws InterruptedException {
+        try {
+            executorService.shutdown();
+            executorService.awaitTermination(10L, TimeUnit.MINUTES);
+        } finally {
+            executorService = null;
+        }
+    }
+}
@@ -0,0 +1,583 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.wildfly.deployer.BulkUndeployExecution;
+import org.wildfly.deployer.BulkUndeployResult;
+import org.wildfly.deployer.DeployerChain;
+import org.wildfly.deployer.DeployerChainBuildException;
+import org.wildfly.deployer.DeployerChainBuilder;
+import org.wildfly.deployer.DeployerExecution;
+import org.wildfly.deployer.DeploymentContext;
+import org.wildfly.deployer.DeploymentException;
+import org.wildfly.deployer.DeploymentResult;
+import org.wildfly.deployer.FailedDeploymentResult;
+import org.wildfly.deployer.SuccessfulDeploymentResult;
+import org.wildfly.deployer.UndeployActionResult;
+import org.wildfly.deployer.UndeployExecution;
+import org.wildfly.deployer.UndeployResult;
+
+/**
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public class UndeployTest {
+
+    static volatile ExecutorService executorService;
+
+    @BeforeClass
+    public static void setup() {
+        executorService = Executors.newFixedThreadPool(8);
+    }
+
+    @Test
+    public void reverseOrder() throws DeployerChainBuildException, InterruptedException {
+        final List<String> undeployed = new CopyOnWriteArrayList<>();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(context -> {
+            context.produce("apples", new Object());
+            context.addUndeployAction(List::add, undeployed, "orchard");
+            context.addUndeployAction(List::add, undeployed, "orchard");
+            assertTrue(context.setSucceeded());
+        }).produces("apples");
+        // no undeploy actions; must be bridged over
+        builder.addDeployer(context -> {
+            context.consume("apples");
+            context.produce("mashed apples", new Object());
+            assertTrue(context.setSucceeded());
+        }).consumes("apples").produces("mashed apples");
+        builder.addDeployer(context -> {
+            context.consume("mashed apples");
+            context.addUndeployAction(List::add, undeployed, "kitchen");
+            assertTrue(context.setSucceeded());
+        }).consumes("mashed apples");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        final SuccessfulDeploymentResult result = execution.getSuccessfulResult();
+        final UndeployExecution undeployExecution = result.undeploy(executorService);
+        undeployExecution.await();
+        assertTrue(undeployExecution.isDone());
+        assertEquals(Arrays.asList("kitchen", "orchard", "orchard"), undeployed);
+        try {
+            result.undeploy(executorService);
+            fail("Expected exception");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void longBridgedChain() throws DeployerChainBuildException, InterruptedException {
+        final List<String> undeployed = new CopyOnWriteArrayList<>();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(context -> {
+            context.addUndeployAction(List::add, undeployed, "first");
+            assertTrue(context.setSucceeded());
+        }).produces("step0");
+        // a long run of deployers without undeploy actions, which are all bridged over
+        final int length = 1000;
+        for (int i = 0; i < length; i ++) {
+            builder.addDeployer(context -> assertTrue(context.setSucceeded())).consumesOptionally("step" + i).produces("step" + (i + 1));
+        }
+        builder.addDeployer(context -> {
+            context.addUndeployAction(List::add, undeployed, "last");
+            assertTrue(context.setSucceeded());
+        }).consumesOptionally("step" + length);
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        final UndeployExecution undeployExecution = execution.getSuccessfulResult().undeploy(executorService);
+        undeployExecution.await();
+        assertEquals(Arrays.asList("last", "first"), undeployed);
+    }
+
+    @Test
+    public void batchedActions() throws DeployerChainBuildException, InterruptedException {
+        final List<Integer> undeployed = new CopyOnWriteArrayList<>();
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+        final AtomicInteger tasks = new AtomicInteger();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(context -> {
+            // too many to run inline, but cheap enough to share a single task
+            for (int i = 0; i < 20; i ++) {
+                final Integer index = Integer.valueOf(i);
+                context.addUndeployAction(() -> {
+                    threads.add(Thread.currentThread());
+                    undeployed.add(index);
+                }, DeploymentContext.UNDEPLOY_COST_TRIVIAL);
+            }
+            assertTrue(context.setSucceeded());
+        }).produces("applesauce");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        final UndeployExecution undeployExecution = execution.getSuccessfulResult().undeploy(task -> {
+            tasks.incrementAndGet();
+            executorService.execute(task);
+        });
+        undeployExecution.await();
+        assertEquals(1, tasks.get());
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 19; i >= 0; i --) {
+            expected.add(Integer.valueOf(i));
+        }
+        assertEquals(expected, undeployed);
+        assertEquals(20, threads.size());
+        for (Thread thread : threads) {
+            assertSame(threads.get(0), thread);
+        }
+    }
+
+    @Test
+    public void incrementalRedeployFailure() throws DeployerChainBuildException, InterruptedException {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final AtomicReference<WeakReference<Object>> indexRef = new AtomicReference<>();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addInitialResource("config");
+        builder.addFinalResource("app");
+        builder.addDeployer(context -> {
+            final Object index = new Object();
+            indexRef.set(new WeakReference<>(index));
+            context.produce("index", index);
+            assertTrue(context.setSucceeded());
+        }).produces("index");
+        builder.addDeployer(context -> {
+            context.consume("index");
+            context.produce("app", "app " + context.consume("config"));
+            context.addUndeployAction(List::add, events, "stop");
+            assertTrue(context.setSucceeded());
+        }).consumes("index").consumes("config").produces("app").activeWhen("config", config -> {
+            if ("broken".equals(config)) {
+                throw new IllegalStateException("Expected failure");
+            }
+            return true;
+        });
+        final DeployerChain chain = builder.build();
+        final DeployerExecution first = chain.createExecutionBuilder("my-app.war").setIncremental(true).provide("config", "x1").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, first.await());
+        final SuccessfulDeploymentResult previous = first.getSuccessfulResult();
+        try {
+            chain.createExecutionBuilder("my-app.war").provide("config", "broken").redeployIncrementally(previous, executorService);
+            fail("Expected exception");
+        } catch (IllegalStateException expected) {
+            assertEquals("Expected failure", expected.getMessage());
+        }
+        // the previous deployment is still intact
+        final UndeployExecution undeployExecution = previous.undeploy(executorService);
+        undeployExecution.await();
+        assertEquals(Arrays.asList("stop"), events);
+        // and once undeployed, it no longer retains its intermediate resources
+        for (int i = 0; i < 100 && indexRef.get().get() != null; i ++) {
+            System.gc();
+            Thread.sleep(10L);
+        }
+        assertNull(indexRef.get().get());
+        assertEquals("app x1", previous.consume("app"));
+    }
+
+    @Test
+    public void manyActions() throws DeployerChainBuildException, InterruptedException {
+        final AtomicInteger cheap = new AtomicInteger();
+        final AtomicInteger expensive = new AtomicInteger();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(context -> {
+            for (int i = 0; i < 10000; i ++) {
+                context.addUndeployAction(AtomicInteger::incrementAndGet, cheap);
+            }
+            context.addUndeployAction(expensive::incrementAndGet, DeploymentContext.UNDEPLOY_COST_EXPENSIVE);
+            assertTrue(context.setSucceeded());
+        }).produces("applesauce");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        final UndeployExecution undeployExecution = execution.getSuccessfulResult().undeploy(executorService);
+        undeployExecution.await();
+        assertEquals(10000, cheap.get());
+        assertEquals(1, expensive.get());
+    }
+
+    @Test
+    public void deadline() throws DeployerChainBuildException, InterruptedException {
+        final CountDownLatch hung = new CountDownLatch(1);
+        final RuntimeException failure = new RuntimeException("Expected failure");
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(context -> {
+            context.addUndeployAction(() -> {
+                throw failure;
+            });
+            context.addUndeployAction(() -> {
+                try {
+                    hung.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, DeploymentContext.UNDEPLOY_COST_EXPENSIVE);
+            assertTrue(context.setSucceeded());
+        }).produces("applesauce");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        final UndeployExecution undeployExecution = execution.getSuccessfulResult().undeploy(executorService, 100L, TimeUnit.MILLISECONDS);
+        try {
+            undeployExecution.await();
+            final UndeployResult result = undeployExecution.getUndeployResult();
+            assertTrue(result.isTimedOut());
+            int failed = 0, running = 0;
+            for (UndeployActionResult actionResult : result.getActionResults()) {
+                assertTrue(actionResult.isStarted());
+                if (actionResult.getProblem() != null) {
+                    assertSame(failure, actionResult.getProblem());
+                    failed ++;
+                } else if (! actionResult.isComplete()) {
+                    running ++;
+                }
+            }
+            assertEquals(1, failed);
+            assertEquals(1, running);
+        } finally {
+            hung.countDown();
+        }
+    }
+
+    @Test
+    public void asyncActions() throws DeployerChainBuildException, InterruptedException {
+        final CompletableFuture<Void> closed = new CompletableFuture<>();
+        final List<String> undeployed = new CopyOnWriteArrayList<>();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(context -> {
+            context.produce("apples", new Object());
+            context.addUndeployAction(List::add, undeployed, "orchard");
+            assertTrue(context.setSucceeded());
+        }).produces("apples");
+        builder.addDeployer(context -> {
+            context.consume("apples");
+            context.addAsyncUndeployAction(() -> closed.thenRun(() -> undeployed.add("kitchen")));
+            assertTrue(context.setSucceeded());
+        }).consumes("apples");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        final UndeployExecution undeployExecution = execution.getSuccessfulResult().undeploy(executorService);
+        Thread.sleep(50L);
+        assertFalse(undeployExecution.isDone());
+        assertTrue(undeployed.isEmpty());
+        closed.complete(null);
+        undeployExecution.await();
+        assertEquals(Arrays.asList("kitchen", "orchard"), undeployed);
+    }
+
+    @Test
+    public void bulk() throws DeployerChainBuildException, InterruptedException {
+        final AtomicInteger undeployed = new AtomicInteger();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(context -> {
+            context.produce("apples", new Object());
+            if (! context.getDeploymentName().equals("empty.jar")) {
+                context.addUndeployAction(AtomicInteger::incrementAndGet, undeployed);
+            }
+            assertTrue(context.setSucceeded());
+        }).produces("apples");
+        builder.addDeployer(context -> {
+            context.consume("apples");
+            if (! context.getDeploymentName().equals("empty.jar")) {
+                context.addUndeployAction(undeployed::incrementAndGet, DeploymentContext.UNDEPLOY_COST_EXPENSIVE);
+            }
+            assertTrue(context.setSucceeded());
+        }).consumes("apples");
+        final DeployerChain chain = builder.build();
+        final List<String> names = Arrays.asList("one.jar", "empty.jar", "two.jar");
+        final List<DeploymentResult> results = new ArrayList<>();
+        for (String name : names) {
+            final DeployerExecution execution = chain.createExecutionBuilder(name).execute(executorService);
+            assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+            results.add(execution.getSuccessfulResult());
+        }
+        final BulkUndeployExecution undeployExecution = DeploymentResult.undeployAll("shutdown", results, executorService, 2);
+        undeployExecution.await();
+        assertEquals(4, undeployed.get());
+        final BulkUndeployResult result = undeployExecution.getUndeployResult();
+        assertFalse(result.isTimedOut());
+        assertEquals(4, result.getActionResults().size());
+        final List<UndeployResult> deploymentResults = result.getDeploymentResults();
+        assertEquals(3, deploymentResults.size());
+        for (int i = 0; i < 3; i ++) {
+            final UndeployResult deploymentResult = deploymentResults.get(i);
+            assertEquals(names.get(i), deploymentResult.getDeploymentName());
+            assertEquals(i == 1 ? 0 : 2, deploymentResult.getActionResults().size());
+            assertTrue(deploymentResult.getDuration(TimeUnit.NANOSECONDS) <= result.getDuration(TimeUnit.NANOSECONDS));
+        }
+        try {
+            DeploymentResult.undeployAll("again", results, executorService, 2);
+            fail("Expected exception");
+        } catch (IllegalStateException expected) {
+        }
+        // a single deployment is still reported under its own name
+        final DeployerExecution execution = chain.createExecutionBuilder("three.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        final BulkUndeployExecution single = DeploymentResult.undeployAll("shutdown", Collections.singletonList(execution.getSuccessfulResult()), executorService, 1);
+        single.await();
+        assertEquals("shutdown", single.getUndeployResult().getDeploymentName());
+        assertEquals("three.jar", single.getUndeployResult().getDeploymentResults().get(0).getDeploymentName());
+    }
+
+    @Test
+    public void rollbackOnFailure() throws DeployerChainBuildException, InterruptedException {
+        final List<String> undeployed = new CopyOnWriteArrayList<>();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(context -> {
+            context.produce("socket", new Object());
+            context.addUndeployAction(List::add, undeployed, "socket");
+            assertTrue(context.setSucceeded());
+        }).produces("socket");
+        builder.addDeployer(context -> {
+            context.consume("socket");
+            assertTrue(context.setFailed(new DeploymentException("Expected failure")));
+        }).consumes("socket");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").setRollbackOnFailure(true).execute(executorService);
+        assertEquals(DeployerExecution.Status.FAILED, execution.await());
+        final FailedDeploymentResult result = execution.getFailedResult();
+        assertEquals(1, result.getExceptions().size());
+        final UndeployExecution rollback = result.getRollback();
+        assertNotNull(rollback);
+        rollback.await();
+        assertEquals(Arrays.asList("socket"), undeployed);
+        // the rollback already undeployed it
+        try {
+            result.undeploy(executorService);
+            fail("Expected exception");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            result.undeploy(executorService, 1, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void redeploy() throws DeployerChainBuildException, InterruptedException {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch unclaimedDeployed = new CountDownLatch(2);
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(context -> {
+            events.add("bind");
+            context.produce("listener", new Object());
+            context.addUndeployAction(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                events.add("unbind");
+            }, DeploymentContext.UNDEPLOY_COST_EXPENSIVE);
+            assertTrue(context.setSucceeded());
+        }).produces("listener").claims("port:8080");
+        builder.addDeployer(context -> {
+            context.produce("classes", new Object());
+            unclaimedDeployed.countDown();
+            assertTrue(context.setSucceeded());
+        }).produces("classes");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution first = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, first.await());
+        final SuccessfulDeploymentResult previous = first.getSuccessfulResult();
+        final DeployerExecution second = chain.createExecutionBuilder("my-app.jar").redeploy(previous, executorService);
+        // the unclaimed deployer overlaps the undeploy, the claimant waits for it
+        assertTrue(unclaimedDeployed.await(10L, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("bind"), events);
+        release.countDown();
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, second.await());
+        assertEquals(Arrays.asList("bind", "unbind", "bind"), events);
+        // the redeploy already undeployed it
+        try {
+            previous.undeploy(executorService);
+            fail("Expected exception");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void redeployOnce() throws DeployerChainBuildException, InterruptedException {
+        final AtomicInteger bound = new AtomicInteger();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(context -> {
+            bound.incrementAndGet();
+            context.addUndeployAction(bound::decrementAndGet);
+            assertTrue(context.setSucceeded());
+        }).claims("port:8080");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution first = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, first.await());
+        final SuccessfulDeploymentResult previous = first.getSuccessfulResult();
+        try {
+            chain.createExecutionBuilder("my-app.jar").redeploy(previous, null);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+        }
+        // the rejected redeploy left the previous deployment alone
+        final DeployerExecution second = chain.createExecutionBuilder("my-app.jar").redeploy(previous, executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, second.await());
+        try {
+            chain.createExecutionBuilder("my-app.jar").redeploy(previous, executorService);
+            fail("Expected exception");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(1, bound.get());
+        second.getSuccessfulResult().undeploy(executorService).await();
+        assertEquals(0, bound.get());
+    }
+
+    @Test
+    public void incrementalRedeploy() throws DeployerChainBuildException, InterruptedException {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addInitialResource("classes");
+        builder.addInitialResource("config");
+        builder.addFinalResource("app");
+        builder.addDeployer(context -> {
+            events.add("index " + context.consume("classes"));
+            context.produce("index", context.consume("classes") + "-index");
+            context.addUndeployAction(List::add, events, "unindex");
+            assertTrue(context.setSucceeded());
+        }).consumes("classes").produces("index");
+        builder.addDeployer(context -> {
+            events.add("configure " + context.consume("config"));
+            context.produce("settings", context.consume("config") + "-settings");
+            context.addUndeployAction(List::add, events, "unconfigure");
+            assertTrue(context.setSucceeded());
+        }).consumes("config").produces("settings");
+        builder.addDeployer(context -> {
+            context.produce("app", context.consume("index") + "+" + context.consume("settings"));
+            context.addUndeployAction(List::add, events, "stop");
+            assertTrue(context.setSucceeded());
+        }).consumes("index").consumes("settings").produces("app");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution first = chain.createExecutionBuilder("my-app.war").setIncremental(true).provide("classes", "c1").provide("config", "x1").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, first.await());
+        final SuccessfulDeploymentResult previous = first.getSuccessfulResult();
+        assertEquals("c1-index+x1-settings", previous.consume("app"));
+        events.clear();
+        final DeployerExecution second = chain.createExecutionBuilder("my-app.war").provide("config", "x2").redeployIncrementally(previous, executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, second.await());
+        final SuccessfulDeploymentResult result = second.getSuccessfulResult();
+        assertEquals("c1-index+x2-settings", result.consume("app"));
+        // the indexer is neither undeployed nor run again
+        assertEquals(Arrays.asList("stop", "unconfigure", "configure x2"), events);
+        events.clear();
+        // the next incremental redeploy builds on the previous one
+        final DeployerExecution third = chain.createExecutionBuilder("my-app.war").provide("classes", "c2").redeployIncrementally(result, executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, third.await());
+        assertEquals("c2-index+x2-settings", third.getSuccessfulResult().consume("app"));
+        assertEquals(Arrays.asList("stop", "unindex", "index c2"), events);
+        events.clear();
+        try {
+            chain.createExecutionBuilder("my-app.war").provide("classes", "c3").redeployIncrementally(result, executorService);
+            fail("Expected exception");
+        } catch (IllegalStateException expected) {
+        }
+        final UndeployExecution undeployExecution = third.getSuccessfulResult().undeploy(executorService);
+        undeployExecution.await();
+        assertEquals(3, events.size());
+        assertEquals("stop", events.get(0));
+    }
+
+    @Test
+    public void incrementalActivation() throws DeployerChainBuildException, InterruptedException {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.setPruneUnusedDeployers(true);
+        builder.addInitialResource("classes");
+        builder.addInitialResource("flag");
+        builder.addFinalResource("services");
+        // only needed by the web deployer
+        builder.addDeployer(context -> {
+            events.add("parse " + context.consume("classes"));
+            context.produce("metadata", context.consume("classes") + "-metadata");
+            assertTrue(context.setSucceeded());
+        }).consumes("classes").produces("metadata").sideEffectFree();
+        // activated by the flag, which it does not consume
+        builder.addDeployer(context -> {
+            context.produce("services", "web with " + context.consume("metadata"));
+            assertTrue(context.setSucceeded());
+        }).consumes("metadata").contributesTo("services").activeWhen("flag", Boolean.TRUE::equals);
+        builder.addDeployer(context -> {
+            context.produce("services", "logging");
+            assertTrue(context.setSucceeded());
+        }).contributesTo("services");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution first = chain.createExecutionBuilder("my-app.war").setIncremental(true).provide("classes", "c1").provide("flag", Boolean.FALSE).execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, first.await());
+        assertEquals("[logging]", new TreeSet<>(first.getSuccessfulResult().consumeMulti("services", String.class)).toString());
+        assertEquals(Collections.emptyList(), events);
+        // changing only the flag activates the web deployer, along with the parser which was pruned before
+        final DeployerExecution second = chain.createExecutionBuilder("my-app.war").provide("flag", Boolean.TRUE).redeployIncrementally(first.getSuccessfulResult(), executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, second.await());
+        assertEquals("[logging, web with c1-metadata]", new TreeSet<>(second.getSuccessfulResult().consumeMulti("services", String.class)).toString());
+        assertEquals(Collections.singletonList("parse c1"), events);
+        final DeployerExecution third = chain.createExecutionBuilder("my-app.war").provide("flag", Boolean.FALSE).redeployIncrementally(second.getSuccessfulResult(), executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, third.await());
+        assertEquals("[logging]", new TreeSet<>(third.getSuccessfulResult().consumeMulti("services", String.class)).toString());
+        third.getSuccessfulResult().undeploy(executorService).await();
+    }
+
+    @Test
+    public void noActions() throws DeployerChainBuildException, InterruptedException {
+        final DeployerChainBuilder builder = DeployerChain.builder();
+        builder.addDeployer(context -> assertTrue(context.setSucceeded())).produces("applesauce");
+        final DeployerChain chain = builder.build();
+        final DeployerExecution execution = chain.createExecutionBuilder("my-app.jar").execute(executorService);
+        assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        final UndeployExecution undeployExecution = execution.getSuccessfulResult().undeploy(executorService);
+        undeployExecution.await();
+        assertTrue(undeployExecution.isDone());
+    }
+
+    @AfterClass
+    public static void teardown() throws InterruptedException {
+        executorService.shutdown();
+        executorService.awaitTermination(10L, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer.processor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+
+import org.wildfly.deployer.ChainDeployer;
+import org.wildfly.deployer.Deployer;
+import org.wildfly.deployer.DeployerBuilder;
+import org.wildfly.deployer.DeployerChain;
+import org.wildfly.deployer.DeployerChainBuildException;
+import org.wildfly.deployer.DeployerChainBuilder;
+import org.wildfly.deployer.DeployerChainDefinition;
+
+/**
+ * An annotation processor which precompiles the {@linkplain DeployerChainDefinition declared deployer chains}.  Each
+ * chain is built at compile time once every round is processed, so that declaration errors are reported by the
+ * compiler, and its snapshot is embedded in a generated class along with a constructor call for each deployer.
+ * Building the generated chain only instantiates the deployers and
+ * {@linkplain DeployerChain#load(java.io.InputStream, java.util.function.Function) loads} the snapshot; no graph is
+ * constructed and no reflection is used at run time.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+@SupportedAnnotationTypes({ "org.wildfly.deployer.DeployerChainDefinition", "org.wildfly.deployer.ChainDeployer" })
+public final class DeployerChainProcessor extends AbstractProcessor {
+    private static final String SUFFIX = "_Chain";
+    private static final int LITERAL_SIZE = 8192;
+
+    // the qualified names of the types found so far, which are looked up again once processing is over
+    private final Set<String> chainNames = new LinkedHashSet<>();
+    private final Set<String> deployerNames = new LinkedHashSet<>();
+
+    /**
+     * Construct a new instance.
+     */
+    public DeployerChainProcessor() {
+    }
+
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(DeployerChainDefinition.class)) {
+            chainNames.add(((TypeElement) element).getQualifiedName().toString());
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(ChainDeployer.class)) {
+            deployerNames.add(((TypeElement) element).getQualifiedName().toString());
+        }
+        if (roundEnv.processingOver()) {
+            generateAll();
+        }
+        return true;
+    }
+
+    private void generateAll() {
+        final Messager messager = processingEnv.getMessager();
+        final Elements elements = processingEnv.getElementUtils();
+        final Map<TypeElement, List<TypeElement>> deployersByChain = new LinkedHashMap<>();
+        for (String name : chainNames) {
+            deployersByChain.put(elements.getTypeElement(name), new ArrayList<>());
+        }
+        for (String name : deployerNames) {
+            final TypeElement deployerType = elements.getTypeElement(name);
+            if (! isInstantiableDeployer(deployerType)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, Messages.log.deployerNotInstantiable(deployerType), deployerType);
+                continue;
+            }
+            for (TypeElement chainType : getChains(deployerType)) {
+                if (chainType.getAnnotation(DeployerChainDefinition.class) == null || ! deployersByChain.containsKey(chainType)) {
+                    messager.printMessage(Diagnostic.Kind.ERROR, Messages.log.notChainDefinition(chainType), deployerType);
+                    continue;
+                }
+                deployersByChain.get(chainType).add(deployerType);
+            }
+        }
+        for (Map.Entry<TypeElement, List<TypeElement>> entry : deployersByChain.entrySet()) {
+            generate(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private boolean isInstantiableDeployer(final TypeElement type) {
+        if (type.getKind() != ElementKind.CLASS) {
+            return false;
+        }
+        final Set<Modifier> modifiers = type.getModifiers();
+        if (! modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        if (type.getEnclosingElement().getKind() != ElementKind.PACKAGE && ! modifiers.contains(Modifier.STATIC)) {
+            return false;
+        }
+        final TypeElement deployerType = processingEnv.getElementUtils().getTypeElement(Deployer.class.getName());
+        if (! processingEnv.getTypeUtils().isAssignable(type.asType(), deployerType.asType())) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<TypeElement> getChains(final TypeElement deployerType) {
+        final List<TypeElement> chains = new ArrayList<>();
+        for (AnnotationMirror mirror : deployerType.getAnnotationMirrors()) {
+            if (! ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(ChainDeployer.class.getName())) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("chain")) {
+                    @SuppressWarnings("unchecked")
+                    final List<? extends AnnotationValue> values = (List<? extends AnnotationValue>) entry.getValue().getValue();
+                    for (AnnotationValue value : values) {
+                        chains.add((TypeElement) ((DeclaredType) value.getValue()).asElement());
+                    }
+                }
+            }
+        }
+        return chains;
+    }
+
+    private void generate(final TypeElement chainType, final List<TypeElement> deployerTypes) {
+        final Messager messager = processingEnv.getMessager();
+        final Elements elements = processingEnv.getElementUtils();
+        final DeployerChainDefinition definition = chainType.getAnnotation(DeployerChainDefinition.class);
+        final Map<String, TypeElement> deployersByIdentity = new LinkedHashMap<>();
+        final ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        try {
+            final DeployerChainBuilder builder = DeployerChain.builder();
+            builder.setPruneUnusedDeployers(definition.pruneUnusedDeployers());
+            for (String name : definition.initialResources()) {
+                builder.addInitialResource(name);
+            }
+            for (String name : definition.initialMultiResources()) {
+                builder.addInitialMultiResource(name);
+            }
+            for (String name : definition.finalResources()) {
+                builder.addFinalResource(name);
+            }
+            for (TypeElement deployerType : deployerTypes) {
+                final ChainDeployer declaration = deployerType.getAnnotation(ChainDeployer.class);
+                final String identity = declaration.identity().isEmpty() ? elements.getBinaryName(deployerType).toString() : declaration.identity();
+                if (deployersByIdentity.putIfAbsent(identity, deployerType) != null) {
+                    messager.printMessage(Diagnostic.Kind.ERROR, Messages.log.duplicateDeployerIdentity(identity, chainType), deployerType);
+                    return;
+                }
+                final DeployerBuilder deployerBuilder = builder.declareDeployer(identity);
+                for (String name : declaration.produces()) {
+                    deployerBuilder.produces(name);
+                }
+                for (String name : declaration.contributesTo()) {
+                    deployerBuilder.contributesTo(name);
+                }
+                for (String name : declaration.consumes()) {
+                    deployerBuilder.consumes(name);
+                }
+                for (String name : declaration.consumesOptionally()) {
+                    deployerBuilder.consumesOptionally(name);
+                }
+                for (String name : declaration.consumesStream()) {
+                    deployerBuilder.consumesStream(name);
+                }
+                for (String name : declaration.transforms()) {
+                    deployerBuilder.transforms(name);
+                }
+                for (String name : declaration.destroys()) {
+                    deployerBuilder.destroys(name);
+                }
+                for (String name : declaration.destroysMandatory()) {
+                    deployerBuilder.destroysMandatory(name);
+                }
+                for (String name : declaration.beforeProduce()) {
+                    deployerBuilder.beforeProduce(name);
+                }
+                for (String name : declaration.beforeConsume()) {
+                    deployerBuilder.beforeConsume(name);
+                }
+                for (String name : declaration.beforeConsumeRequired()) {
+                    deployerBuilder.beforeConsumeRequired(name);
+                }
+                for (String name : declaration.afterProduce()) {
+                    deployerBuilder.afterProduce(name);
+                }
+                for (String name : declaration.afterProduceRequired()) {
+                    deployerBuilder.afterProduceRequired(name);
+                }
+                for (String name : declaration.afterConsume()) {
+                    deployerBuilder.afterConsume(name);
+                }
+                for (String name : declaration.claims()) {
+                    deployerBuilder.claims(name);
+                }
+                if (declaration.sideEffectFree()) {
+                    deployerBuilder.sideEffectFree();
+                }
+            }
+            builder.writeSnapshot(snapshot);
+        } catch (DeployerChainBuildException | IllegalArgumentException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, Messages.log.chainDefinitionFailed(chainType, e.getMessage()), chainType);
+            return;
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, Messages.log.chainGenerationFailed(chainType, e.toString()), chainType);
+            return;
+        }
+        final String packageName = elements.getPackageOf(chainType).getQualifiedName().toString();
+        final String binaryName = elements.getBinaryName(chainType).toString();
+        final String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)).replace('$', '_') + SUFFIX;
+        final Element[] originatingElements = new Element[deployerTypes.size() + 1];
+        originatingElements[0] = chainType;
+        for (int i = 0; i < deployerTypes.size(); i ++) {
+            originatingElements[i + 1] = deployerTypes.get(i);
+        }
+        try (Writer writer = processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? simpleName : packageName + "." + simpleName, originatingElements).openWriter()) {
+            writer.write(generateSource(packageName, simpleName, chainType.getQualifiedName().toString(), deployersByIdentity, snapshot.toByteArray()));
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, Messages.log.chainGenerationFailed(chainType, e.toString()), chainType);
+        }
+    }
+
+    private static String generateSource(final String packageName, final String simpleName, final String chainName, final Map<String, TypeElement> deployersByIdentity, final byte[] snapshot) {
+        final StringBuilder b = new StringBuilder(snapshot.length * 2 + 1024);
+        if (! packageName.isEmpty()) {
+            b.append("package ").append(packageName).append(";\n\n");
+        }
+        b.append("/**\n * The precompiled deployer chain of {@link ").append(chainName).append("}.\n */\n");
+        b.append("public final class ").append(simpleName).append(" {\n");
+        b.append("    private ").append(simpleName).append("() {\n    }\n\n");
+        b.append("    /**\n     * Build the deployer chain.\n     *\n     * @return the deployer chain\n     */\n");
+        b.append("    public static org.wildfly.deployer.DeployerChain build() {\n");
+        b.append("        try {\n");
+        b.append("            return org.wildfly.deployer.DeployerChain.load(new java.io.ByteArrayInputStream(snapshot()), ").append(simpleName).append("::deployer);\n");
+        b.append("        } catch (java.io.IOException e) {\n");
+        b.append("            throw new IllegalStateException(e);\n");
+        b.append("        }\n");
+        b.append("    }\n\n");
+        b.append("    private static org.wildfly.deployer.Deployer deployer(String identity) {\n");
+        b.append("        switch (identity) {\n");
+        for (Map.Entry<String, TypeElement> entry : deployersByIdentity.entrySet()) {
+            b.append("            case ");
+            appendLiteral(b, entry.getKey());
+            b.append(": return new ").append(entry.getValue().getQualifiedName()).append("();\n");
+        }
+        b.append("            default: return null;\n");
+        b.append("        }\n");
+        b.append("    }\n\n");
+        b.append("    private static byte[] snapshot() {\n");
+        b.append("        final StringBuilder b = new StringBuilder(").append(snapshot.length).append(");\n");
+        // the snapshot is embedded as ISO-8859-1 strings, split to fit in the constant pool
+        for (int offset = 0; offset < snapshot.length; offset += LITERAL_SIZE) {
+            b.append("        b.append(");
+            appendLiteral(b, new String(snapshot, offset, Math.min(LITERAL_SIZE, snapshot.length - offset), StandardCharsets.ISO_8859_1));
+            b.append(");\n");
+        }
+        b.append("        return b.toString().getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);\n");
+        b.append("    }\n");
+        b.append("}\n");
+        return b.toString();
+    }
+
+    private static void appendLiteral(final StringBuilder b, final String string) {
+        b.append('"');
+        for (int i = 0; i < string.length(); i ++) {
+            final char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                b.append('\\').append(c);
+            } else if (c >= 0x20 && c < 0x7f) {
+                b.append(c);
+            } else if (c < 0x100) {
+                // unicode escapes are translated before lexing, so line terminators must use octal
+                b.append('\\').append((char) ('0' + (c >> 6))).append((char) ('0' + (c >> 3 & 7))).append((char) ('0' + (c & 7)));
+            } else {
+                b.append(String.format("\\u%04x", Integer.valueOf(c)));
+            }
+        }
+        b.append('"');
+    }
+}
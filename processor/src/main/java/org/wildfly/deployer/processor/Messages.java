@@ -0,0 +1,49 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer.processor;
+
+import org.jboss.logging.BasicLogger;
+import org.jboss.logging.Logger;
+import org.jboss.logging.annotations.Message;
+import org.jboss.logging.annotations.MessageLogger;
+
+/**
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+@MessageLogger(projectCode = "WFDPLY", length = 5)
+interface Messages extends BasicLogger {
+    Messages log = Logger.getMessageLogger(Messages.class, "org.wildfly.deployer.processor");
+
+    // Chain processor messages
+
+    @Message(id = 134, value = "Deployer class %s must be a public, non-abstract class with a public no-argument constructor")
+    String deployerNotInstantiable(Object type);
+
+    @Message(id = 135, value = "Type %s is not a deployer chain definition")
+    String notChainDefinition(Object type);
+
+    @Message(id = 136, value = "Deployer identity \"%s\" is used more than once in chain %s")
+    String duplicateDeployerIdentity(String identity, Object chain);
+
+    @Message(id = 137, value = "Deployer chain %s could not be built: %s")
+    String chainDefinitionFailed(Object chain, String reason);
+
+    @Message(id = 138, value = "Failed to generate deployer chain %s: %s")
+    String chainGenerationFailed(Object chain, String reason);
+}
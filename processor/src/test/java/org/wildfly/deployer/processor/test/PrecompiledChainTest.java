@@ -0,0 +1,173 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.deployer.processor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.deployer.Deployer;
+import org.wildfly.deployer.DeployerChain;
+import org.wildfly.deployer.DeployerExecution;
+import org.wildfly.deployer.DeployerExecutionBuilder;
+import org.wildfly.deployer.processor.DeployerChainProcessor;
+
+/**
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public class PrecompiledChainTest {
+
+    static volatile ExecutorService executorService;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setup() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    private static final String PICK =
+        "package fruit;\n" +
+        "@org.wildfly.deployer.ChainDeployer(chain = Kitchen.class, produces = \"apples\")\n" +
+        "public class Pick implements org.wildfly.deployer.Deployer {\n" +
+        "    public void deploy(org.wildfly.deployer.DeploymentContext context) {\n" +
+        "        context.produce(\"apples\", \"apples\");\n" +
+        "        context.setSucceeded();\n" +
+        "    }\n" +
+        "}\n";
+
+    private static final String BAKE =
+        "package fruit;\n" +
+        "@org.wildfly.deployer.ChainDeployer(chain = Kitchen.class, consumes = { \"flour\", \"apples\" }, produces = \"pie\")\n" +
+        "public class Bake implements org.wildfly.deployer.Deployer {\n" +
+        "    public void deploy(org.wildfly.deployer.DeploymentContext context) {\n" +
+        "        context.produce(\"pie\", context.consume(\"apples\") + \" and \" + context.consume(\"flour\"));\n" +
+        "        context.setSucceeded();\n" +
+        "    }\n" +
+        "}\n";
+
+    private static final String KITCHEN =
+        "package fruit;\n" +
+        "@org.wildfly.deployer.DeployerChainDefinition(initialResources = \"flour\", finalResources = \"pie\")\n" +
+        "public interface Kitchen {\n" +
+        "}\n";
+
+    @Test
+    public void generatedChain() throws Exception {
+        final Path out = compile(true, KITCHEN, PICK, BAKE);
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] { out.toUri().toURL() }, Deployer.class.getClassLoader())) {
+            final DeployerChain chain = (DeployerChain) classLoader.loadClass("fruit.Kitchen_Chain").getMethod("build").invoke(null);
+            final DeployerExecutionBuilder executionBuilder = chain.createExecutionBuilder("pie.jar");
+            executionBuilder.provide("flour", "flour");
+            final DeployerExecution execution = executionBuilder.execute(executorService);
+            assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+            assertEquals("apples and flour", execution.getSuccessfulResult().consume("pie"));
+        }
+    }
+
+    private static final String PEEL =
+        "package fruit;\n" +
+        "@org.wildfly.deployer.ChainDeployer(chain = Kitchen.class, afterConsume = \"apples\", produces = \"peel\", sideEffectFree = true)\n" +
+        "public class Peel implements org.wildfly.deployer.Deployer {\n" +
+        "    public void deploy(org.wildfly.deployer.DeploymentContext context) {\n" +
+        "        context.setFailed(new org.wildfly.deployer.DeploymentException(\"nobody needs the peel\"));\n" +
+        "    }\n" +
+        "}\n";
+
+    @Test
+    public void prunedChain() throws Exception {
+        final String pruned = KITCHEN.replace("finalResources = \"pie\"", "finalResources = \"pie\", pruneUnusedDeployers = true");
+        final Path out = compile(true, pruned, PICK, BAKE, PEEL);
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] { out.toUri().toURL() }, Deployer.class.getClassLoader())) {
+            final DeployerChain chain = (DeployerChain) classLoader.loadClass("fruit.Kitchen_Chain").getMethod("build").invoke(null);
+            final DeployerExecutionBuilder executionBuilder = chain.createExecutionBuilder("pie.jar");
+            executionBuilder.provide("flour", "flour");
+            final DeployerExecution execution = executionBuilder.execute(executorService);
+            assertEquals(DeployerExecution.Status.SUCCESSFUL, execution.await());
+        }
+    }
+
+    @Test
+    public void invalidChainFailsCompilation() throws Exception {
+        // nothing produces the final resource's required input
+        final String unfed = BAKE.replace("consumes = { \"flour\", \"apples\" }", "consumes = { \"flour\", \"apples\", \"sugar\" }");
+        compile(false, KITCHEN, PICK, unfed);
+    }
+
+    private Path compile(final boolean expectSuccess, final String... sources) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final Path src = temporaryFolder.newFolder("src").toPath();
+        final Path out = temporaryFolder.newFolder("out").toPath();
+        final List<File> files = new ArrayList<>();
+        for (String source : sources) {
+            final String name = source.substring(source.indexOf("public ") + 7).split(" ")[1];
+            final Path file = src.resolve(name + ".java");
+            Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+            files.add(file.toFile());
+        }
+        final String classPath = new File(Deployer.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+        final StringWriter diagnostics = new StringWriter();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            final Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(files);
+            final JavaCompiler.CompilationTask task = compiler.getTask(diagnostics, fileManager, null, Arrays.asList("-classpath", classPath, "-d", out.toString(), "-s", src.toString()), null, units);
+            task.setProcessors(Collections.singletonList(new DeployerChainProcessor()));
+            final boolean success = task.call().booleanValue();
+            if (expectSuccess) {
+                assertTrue(diagnostics.toString(), success);
+            } else {
+                assertFalse(success);
+                assertTrue(diagnostics.toString(), diagnostics.toString().contains("WFDPLY00137"));
+            }
+        }
+        return out;
+    }
+
+    @AfterClass
+    public static void teardown() throws InterruptedException {
+        executorService.shutdown();
+        executorService.awaitTermination(10L, TimeUnit.MINUTES);
+    }
+}